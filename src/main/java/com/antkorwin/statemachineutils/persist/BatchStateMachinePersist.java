@@ -0,0 +1,30 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+
+import java.util.Map;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * StateMachinePersist which is able to write a few contexts at once,
+ * for example in one transaction or in one batch statement.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface BatchStateMachinePersist<StatesT, EventsT, IdentifierT>
+        extends StateMachinePersist<StatesT, EventsT, IdentifierT> {
+
+    /**
+     * Write all contexts, by default one by one.
+     *
+     * @param contexts contexts of state machines by their identifiers
+     * @throws Exception if unable to write contexts
+     */
+    default void writeAll(Map<IdentifierT, StateMachineContext<StatesT, EventsT>> contexts) throws Exception {
+        for (Map.Entry<IdentifierT, StateMachineContext<StatesT, EventsT>> entry : contexts.entrySet()) {
+            write(entry.getValue(), entry.getKey());
+        }
+    }
+}
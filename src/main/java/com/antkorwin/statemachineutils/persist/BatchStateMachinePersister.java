@@ -0,0 +1,30 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.persist.StateMachinePersister;
+
+import java.util.Map;
+
+/**
+ * Created on 18.10.2026.
+ *
+ * StateMachinePersister which is able to persist a few state machines at once,
+ * for example through the {@link BatchStateMachinePersist#writeAll}.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface BatchStateMachinePersister<StatesT, EventsT, IdentifierT>
+        extends StateMachinePersister<StatesT, EventsT, IdentifierT> {
+
+    /**
+     * Persist all state machines, by default one by one.
+     *
+     * @param stateMachines state machines by their identifiers
+     * @throws Exception if unable to persist state machines
+     */
+    default void persistAll(Map<IdentifierT, StateMachine<StatesT, EventsT>> stateMachines) throws Exception {
+        for (Map.Entry<IdentifierT, StateMachine<StatesT, EventsT>> entry : stateMachines.entrySet()) {
+            persist(entry.getValue(), entry.getKey());
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Compact binary codec for state machines with enum states and events.
+ * <p>
+ * States and events are written by ordinal, lengths and integers as var-ints,
+ * values of common types (strings, numbers, booleans, UUIDs, enums, byte arrays)
+ * are written natively and only other values fall back to the java serialization.
+ * Child contexts and history states are supported, a decoded context
+ * is equal to the encoded one (including the difference between null and empty maps).
+ * Malformed or truncated input is rejected with an IOException.
+ *
+ * @author Korovin Anatoliy
+ */
+public class BinaryContextCodec<StatesT extends Enum<StatesT>, EventsT extends Enum<EventsT>>
+        implements StateMachineContextCodec<StatesT, EventsT> {
+
+    private static final byte FORMAT_VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte TRUE = 4;
+    private static final byte FALSE = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte UUID_VALUE = 7;
+    private static final byte STATE = 8;
+    private static final byte EVENT = 9;
+    private static final byte BYTES = 10;
+    private static final byte ENUM = 11;
+    private static final byte SERIALIZED = 12;
+
+    private final Class<StatesT> statesType;
+    private final Class<EventsT> eventsType;
+    private final StatesT[] states;
+    private final EventsT[] events;
+
+    /**
+     * @param statesType type of states
+     * @param eventsType type of events
+     */
+    public BinaryContextCodec(Class<StatesT> statesType, Class<EventsT> eventsType) {
+        this.statesType = statesType;
+        this.eventsType = eventsType;
+        this.states = statesType.getEnumConstants();
+        this.events = eventsType.getEnumConstants();
+    }
+
+    @Override
+    public byte[] encode(StateMachineContext<StatesT, EventsT> context) throws IOException {
+        Output out = new Output();
+        out.writeByte(FORMAT_VERSION);
+        writeContext(context, out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public StateMachineContext<StatesT, EventsT> decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        Input in = new Input(bytes);
+        byte version = in.readByte();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported format version: " + version);
+        }
+        try {
+            return readContext(in);
+        } catch (RuntimeException e) {
+            // e.g. a wrong name of an enum constant, or a wrong type of a serialized value
+            throw new IOException("Malformed context at the position: " + in.position, e);
+        }
+    }
+
+    private void writeContext(StateMachineContext<StatesT, EventsT> context, Output out) throws IOException {
+        out.writeString(context.getId());
+        out.writeVarInt(context.getState() == null ? 0 : context.getState().ordinal() + 1);
+        out.writeVarInt(context.getEvent() == null ? 0 : context.getEvent().ordinal() + 1);
+
+        Map<String, Object> eventHeaders = StateMachineVersion.withoutVersion(context.getEventHeaders());
+        out.writeSize(eventHeaders);
+        if (eventHeaders != null) {
+            for (Map.Entry<String, Object> entry : eventHeaders.entrySet()) {
+                out.writeString(entry.getKey());
+                writeValue(entry.getValue(), out);
+            }
+        }
+
+        Map<Object, Object> variables = context.getExtendedState() == null
+                                        ? null
+                                        : context.getExtendedState().getVariables();
+        out.writeSize(variables);
+        if (variables != null) {
+            for (Map.Entry<Object, Object> entry : variables.entrySet()) {
+                writeValue(entry.getKey(), out);
+                writeValue(entry.getValue(), out);
+            }
+        }
+
+        Map<StatesT, StatesT> historyStates = context.getHistoryStates();
+        out.writeSize(historyStates);
+        if (historyStates != null) {
+            for (Map.Entry<StatesT, StatesT> entry : historyStates.entrySet()) {
+                out.writeVarInt(entry.getKey() == null ? 0 : entry.getKey().ordinal() + 1);
+                out.writeVarInt(entry.getValue() == null ? 0 : entry.getValue().ordinal() + 1);
+            }
+        }
+
+        List<StateMachineContext<StatesT, EventsT>> childs = context.getChilds();
+        out.writeSize(childs == null ? null : childs.size());
+        if (childs != null) {
+            for (StateMachineContext<StatesT, EventsT> child : childs) {
+                writeContext(child, out);
+            }
+        }
+    }
+
+    private StateMachineContext<StatesT, EventsT> readContext(Input in) throws IOException, ClassNotFoundException {
+        String id = in.readString();
+        StatesT state = readState(in);
+        EventsT event = readEvent(in);
+
+        int size = in.readSize();
+        Map<String, Object> eventHeaders = null;
+        if (size >= 0) {
+            eventHeaders = new HashMap<>(capacity(size));
+            for (int i = 0; i < size; i++) {
+                eventHeaders.put(in.readString(), readValue(in));
+            }
+        }
+
+        size = in.readSize();
+        DefaultExtendedState extendedState = null;
+        if (size >= 0) {
+            Map<Object, Object> variables = new HashMap<>(capacity(size));
+            for (int i = 0; i < size; i++) {
+                variables.put(readValue(in), readValue(in));
+            }
+            extendedState = new DefaultExtendedState(variables);
+        }
+
+        size = in.readSize();
+        Map<StatesT, StatesT> historyStates = null;
+        if (size >= 0) {
+            historyStates = new HashMap<>(capacity(size));
+            for (int i = 0; i < size; i++) {
+                historyStates.put(readState(in), readState(in));
+            }
+        }
+
+        size = in.readSize();
+        List<StateMachineContext<StatesT, EventsT>> childs = null;
+        if (size >= 0) {
+            childs = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                childs.add(readContext(in));
+            }
+        }
+
+        return new DefaultStateMachineContext<>(childs, state, event, eventHeaders, extendedState, historyStates, id);
+    }
+
+    private StatesT readState(Input in) throws IOException {
+        int ordinal = in.readVarInt();
+        return ordinal == 0 ? null : constant(states, ordinal - 1);
+    }
+
+    private EventsT readEvent(Input in) throws IOException {
+        int ordinal = in.readVarInt();
+        return ordinal == 0 ? null : constant(events, ordinal - 1);
+    }
+
+    private static <T> T constant(T[] constants, int ordinal) throws IOException {
+        if (ordinal < 0 || ordinal >= constants.length) {
+            throw new IOException("Unknown ordinal of an enum constant: " + ordinal);
+        }
+        return constants[ordinal];
+    }
+
+    private void writeValue(Object value, Output out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeVarLong(zigZag((Integer) value));
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeVarLong(zigZag((Long) value));
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeLong(Double.doubleToRawLongBits((Double) value));
+        } else if (value instanceof UUID) {
+            out.writeByte(UUID_VALUE);
+            out.writeLong(((UUID) value).getMostSignificantBits());
+            out.writeLong(((UUID) value).getLeastSignificantBits());
+        } else if (value.getClass() == statesType) {
+            out.writeByte(STATE);
+            out.writeVarInt(((Enum<?>) value).ordinal());
+        } else if (value.getClass() == eventsType) {
+            out.writeByte(EVENT);
+            out.writeVarInt(((Enum<?>) value).ordinal());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeBytes((byte[]) value);
+        } else if (value instanceof Enum) {
+            out.writeByte(ENUM);
+            out.writeString(((Enum<?>) value).getDeclaringClass().getName());
+            out.writeString(((Enum<?>) value).name());
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            out.writeBytes(serialize(value));
+        } else {
+            throw new IOException("Unable to encode a value of type: " + value.getClass().getName());
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readValue(Input in) throws IOException, ClassNotFoundException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return in.readString();
+            case INTEGER:
+                return (int) unZigZag(in.readVarLong());
+            case LONG:
+                return unZigZag(in.readVarLong());
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case UUID_VALUE:
+                return new UUID(in.readLong(), in.readLong());
+            case STATE:
+                return constant(states, in.readVarInt());
+            case EVENT:
+                return constant(events, in.readVarInt());
+            case BYTES:
+                return in.readBytes();
+            case ENUM:
+                Class enumType = Class.forName(in.readString(), false, classLoader());
+                return Enum.valueOf(enumType, in.readString());
+            case SERIALIZED:
+                return deserialize(in.readBytes());
+            default:
+                throw new IOException("Unknown type of a value: " + tag);
+        }
+    }
+
+    private static byte[] serialize(Object value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private ClassLoader classLoader() {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        return classLoader != null ? classLoader : statesType.getClassLoader();
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int capacity(int size) {
+        return size < 3 ? size + 1 : (int) (size / 0.75f + 1.0f);
+    }
+
+    /**
+     * Growable byte buffer with var-int encoding.
+     */
+    private static class Output {
+
+        private byte[] buffer = new byte[64];
+        private int position;
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        void writeVarInt(int value) {
+            writeVarLong(value & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[position++] = (byte) (value >>> shift);
+            }
+        }
+
+        /**
+         * Writes size + 1, zero stands for null.
+         */
+        void writeSize(Map<?, ?> map) {
+            writeSize(map == null ? null : map.size());
+        }
+
+        void writeSize(Integer size) {
+            writeVarInt(size == null ? 0 : size + 1);
+        }
+
+        void writeString(String value) {
+            writeBytes(value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writeBytes(byte[] value) {
+            writeSize(value == null ? null : value.length);
+            if (value != null) {
+                ensureCapacity(value.length);
+                System.arraycopy(value, 0, buffer, position, value.length);
+                position += value.length;
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, position);
+        }
+
+        private void ensureCapacity(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+    }
+
+    /**
+     * Reader of the buffer, which checks bounds of the buffer
+     * and throws an EOFException for truncated input.
+     */
+    private static class Input {
+
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        byte readByte() throws IOException {
+            require(1);
+            return buffer[position++];
+        }
+
+        int readVarInt() throws IOException {
+            long value = readVarLong();
+            if (value < 0 || value > 0xFFFFFFFFL) {
+                throw new IOException("Malformed var-int");
+            }
+            return (int) value;
+        }
+
+        long readVarLong() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed var-long");
+        }
+
+        long readLong() throws IOException {
+            require(8);
+            long result = 0;
+            for (int i = 0; i < 8; i++) {
+                result = (result << 8) | (buffer[position++] & 0xFF);
+            }
+            return result;
+        }
+
+        /**
+         * @return size, or -1 for null
+         */
+        int readSize() throws IOException {
+            int size = readVarInt() - 1;
+            if (size < -1) {
+                throw new IOException("Malformed size: " + size);
+            }
+            // each element takes one byte at least:
+            if (size > buffer.length - position) {
+                throw new EOFException("Size " + size + " is out of the input");
+            }
+            return size;
+        }
+
+        String readString() throws IOException {
+            int length = readSize();
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        byte[] readBytes() throws IOException {
+            int length = readSize();
+            if (length < 0) {
+                return null;
+            }
+            byte[] value = Arrays.copyOfRange(buffer, position, position + length);
+            position += length;
+            return value;
+        }
+
+        private void require(int length) throws EOFException {
+            if (length > buffer.length - position) {
+                throw new EOFException("Unexpected end of the input at the position: " + position);
+            }
+        }
+    }
+}
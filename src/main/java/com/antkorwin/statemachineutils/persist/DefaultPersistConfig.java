@@ -1,11 +1,18 @@
 package com.antkorwin.statemachineutils.persist;
 
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.statemachine.StateMachinePersist;
 import org.springframework.statemachine.persist.StateMachinePersister;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.UUID;
 
 /**
@@ -14,10 +21,104 @@ import java.util.UUID;
  * This is a configuration with a StateMachinePersister for the XStateMachineService,
  * and a default in-memory StateMachinePersist(if missing others)
  *
+ * Writes of the persister can be grouped in batches
+ * by the {@link GroupCommitStateMachinePersist}.
+ *
+ * With the `statemachine-utils.persist.jdbc.enabled` property
+ * state machines are stored in a database by the {@link JdbcStateMachinePersist}
+ * (only changes of machines with the `statemachine-utils.persist.jdbc.delta.enabled`),
+ * with the `statemachine-utils.persist.file.enabled` property state machines are
+ * stored in local files by the {@link MappedFileStateMachinePersist}.
+ * Tables are created by the `statemachine-utils.persist.jdbc.create-table` property,
+ * scripts of tables are in the `statemachine-utils/schema-*.sql` resources.
+ *
+ * With the `statemachine-utils.persist.event-sourcing.enabled` property the persister
+ * appends events of machines to the {@link StateMachineEventLog} (in a database if the
+ * jdbc persist is enabled) and the persist keeps only periodic snapshots of machines,
+ * see the {@link EventSourcedStateMachinePersister}.
+ *
+ * Contexts are encoded by the {@link StateMachineContextCodec} bean of the application,
+ * e.g. the {@link BinaryContextCodec}, or by the {@link JavaSerializationContextCodec} if missing.
+ *
  * @author Korovin Anatoliy
  */
 @Configuration
-public class DefaultPersistConfig {
+public class DefaultPersistConfig implements DisposableBean {
+
+    private GroupCommitStateMachinePersist<?, ?, UUID> groupCommitPersist;
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "statemachine-utils.persist.jdbc.enabled", havingValue = "true")
+    public <StatesT, EventsT> StateMachinePersist<StatesT, EventsT, UUID> jdbcPersist(
+            JdbcTemplate jdbcTemplate,
+            ObjectProvider<StateMachineContextCodec<StatesT, EventsT>> codecs,
+            @Value("${statemachine-utils.persist.jdbc.table-name:" + JdbcStateMachinePersist.DEFAULT_TABLE_NAME + "}") String tableName,
+            @Value("${statemachine-utils.persist.jdbc.create-table:false}") boolean createTable,
+            @Value("${statemachine-utils.persist.jdbc.delta.enabled:false}") boolean delta,
+            @Value("${statemachine-utils.persist.jdbc.delta.table-name:" + JdbcStateMachineDeltaLog.DEFAULT_TABLE_NAME + "}") String deltaTableName,
+            @Value("${statemachine-utils.persist.jdbc.delta.snapshot-interval:" + DeltaStateMachinePersist.DEFAULT_SNAPSHOT_INTERVAL + "}") int snapshotInterval) {
+
+        StateMachineContextCodec<StatesT, EventsT> codec = codecOf(codecs);
+        JdbcStateMachinePersist<StatesT, EventsT> persist = new JdbcStateMachinePersist<>(jdbcTemplate, codec, tableName);
+        if (createTable) {
+            persist.createTableIfNotExists();
+        }
+        if (!delta) {
+            return persist;
+        }
+
+        JdbcStateMachineDeltaLog deltaLog = new JdbcStateMachineDeltaLog(jdbcTemplate, deltaTableName);
+        if (createTable) {
+            deltaLog.createTableIfNotExists();
+        }
+        return new DeltaStateMachinePersist<>(persist,
+                                              deltaLog,
+                                              codec,
+                                              snapshotInterval,
+                                              DeltaStateMachinePersist.DEFAULT_MAX_TRACKED_MACHINES);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "statemachine-utils.persist.file.enabled", havingValue = "true")
+    public <StatesT, EventsT> StateMachinePersist<StatesT, EventsT, UUID> filePersist(
+            ObjectProvider<StateMachineContextCodec<StatesT, EventsT>> codecs,
+            @Value("${statemachine-utils.persist.file.directory:statemachines}") String directory,
+            @Value("${statemachine-utils.persist.file.segment-size:" + MappedFileStateMachinePersist.DEFAULT_SEGMENT_SIZE + "}") int segmentSize,
+            @Value("${statemachine-utils.persist.file.force-on-write:false}") boolean forceOnWrite,
+            @Value("${statemachine-utils.persist.file.compaction-interval-ms:" + MappedFileStateMachinePersist.DEFAULT_COMPACTION_INTERVAL_MILLIS + "}") long compactionIntervalMillis) throws IOException {
+
+        return new MappedFileStateMachinePersist<>(Paths.get(directory),
+                                                   codecOf(codecs),
+                                                   segmentSize,
+                                                   forceOnWrite,
+                                                   compactionIntervalMillis);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = {"statemachine-utils.persist.event-sourcing.enabled",
+                                   "statemachine-utils.persist.jdbc.enabled"},
+                           havingValue = "true")
+    public StateMachineEventLog jdbcEventLog(
+            JdbcTemplate jdbcTemplate,
+            @Value("${statemachine-utils.persist.event-sourcing.table-name:" + JdbcStateMachineEventLog.DEFAULT_TABLE_NAME + "}") String tableName,
+            @Value("${statemachine-utils.persist.jdbc.create-table:false}") boolean createTable) {
+
+        JdbcStateMachineEventLog eventLog = new JdbcStateMachineEventLog(jdbcTemplate, tableName);
+        if (createTable) {
+            eventLog.createTableIfNotExists();
+        }
+        return eventLog;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(name = "statemachine-utils.persist.event-sourcing.enabled", havingValue = "true")
+    public StateMachineEventLog eventLog() {
+        return new InMemoryStateMachineEventLog();
+    }
 
     @Bean
     @ConditionalOnMissingBean
@@ -27,8 +128,43 @@ public class DefaultPersistConfig {
 
     @Bean
     public <StatesT, EventsT> StateMachinePersister<StatesT, EventsT, UUID> persister(
-            StateMachinePersist<StatesT, EventsT, UUID> defaultPersist) throws Exception {
+            StateMachinePersist<StatesT, EventsT, UUID> defaultPersist,
+            @Value("${statemachine-utils.persist.group-commit.enabled:false}") boolean groupCommit,
+            @Value("${statemachine-utils.persist.group-commit.max-batch-size:64}") int maxBatchSize,
+            @Value("${statemachine-utils.persist.group-commit.max-delay-ms:5}") long maxDelayMillis,
+            ObjectProvider<StateMachineEventLog> eventLog,
+            ObjectProvider<StateMachineContextCodec<StatesT, EventsT>> codecs,
+            @Value("${statemachine-utils.persist.event-sourcing.snapshot-interval:" + EventSourcedStateMachinePersister.DEFAULT_SNAPSHOT_INTERVAL + "}") int snapshotInterval) throws Exception {
+
+        StateMachinePersist<StatesT, EventsT, UUID> persist = defaultPersist;
+        if (groupCommit) {
+            GroupCommitStateMachinePersist<StatesT, EventsT, UUID> groupCommitDecorator =
+                    new GroupCommitStateMachinePersist<>(defaultPersist, maxBatchSize, maxDelayMillis);
+            groupCommitPersist = groupCommitDecorator;
+            persist = groupCommitDecorator;
+        }
+        StateMachineEventLog log = eventLog.getIfAvailable();
+        if (log != null) {
+            return new EventSourcedStateMachinePersister<>(persist,
+                                                           log,
+                                                           codecOf(codecs),
+                                                           snapshotInterval);
+        }
+        return new DefaultStateMachinePersisterDecorator<>(persist);
+    }
+
+    private static <StatesT, EventsT> StateMachineContextCodec<StatesT, EventsT> codecOf(
+            ObjectProvider<StateMachineContextCodec<StatesT, EventsT>> codecs) {
+        return codecs.getIfAvailable(JavaSerializationContextCodec::new);
+    }
 
-        return new DefaultStateMachinePersisterDecorator<>(defaultPersist);
+    /**
+     * The group commit persist isn't a bean, so the config closes it.
+     */
+    @Override
+    public void destroy() {
+        if (groupCommitPersist != null) {
+            groupCommitPersist.close();
+        }
     }
 }
@@ -5,36 +5,132 @@ import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.StateMachineContext;
 import org.springframework.statemachine.StateMachinePersist;
 import org.springframework.statemachine.persist.DefaultStateMachinePersister;
-import org.springframework.statemachine.persist.StateMachinePersister;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * Created on 12.07.2018.
  *
  * A decorator under the {@link DefaultStateMachinePersister} class,
  * append a validating logic while restore object from store.
+ * If the persist is a {@link BatchStateMachinePersist} then
+ * a few machines are persisted through the one writeAll call.
+ *
+ * If the persist is a {@link VersionedStateMachinePersist} then the
+ * {@link StateMachineVersion} of the context read by the restore is passed
+ * with each next context written from the same machine, so the persist
+ * rejects a write over a write of another machine.
  *
  * @author Korovin Anatoliy
  */
-public class DefaultStateMachinePersisterDecorator<StatesT, EventsT, IdentifierT> implements StateMachinePersister<StatesT, EventsT, IdentifierT> {
+public class DefaultStateMachinePersisterDecorator<StatesT, EventsT, IdentifierT> implements BatchStateMachinePersister<StatesT, EventsT, IdentifierT>,
+                                                                                         StateMachineContextReader<StatesT, EventsT, IdentifierT> {
 
-    private final StateMachinePersister<StatesT, EventsT, IdentifierT> stateMachinePersister;
+    private final ContextBuildingPersister<StatesT, EventsT, IdentifierT> stateMachinePersister;
     private final StateMachinePersist<StatesT, EventsT, IdentifierT> stateMachinePersist;
+    private final boolean versioned;
+    private final Map<StateMachine<StatesT, EventsT>, ReadVersion> versions;
 
     public DefaultStateMachinePersisterDecorator(StateMachinePersist<StatesT, EventsT, IdentifierT> stateMachinePersist) {
         this.stateMachinePersist = stateMachinePersist;
         // Decorated object:
-        this.stateMachinePersister = new DefaultStateMachinePersister<>(stateMachinePersist);
+        this.stateMachinePersister = new ContextBuildingPersister<>(stateMachinePersist);
+        this.versioned = StateMachineVersion.isSupportedBy(stateMachinePersist);
+        // a version doesn't refer to its machine, so machines can be collected:
+        this.versions = Collections.synchronizedMap(new WeakHashMap<>());
     }
 
     @Override
     public void persist(StateMachine<StatesT, EventsT> stateMachine, IdentifierT contextObj) throws Exception {
-        stateMachinePersister.persist(stateMachine, contextObj);
+        stateMachinePersist.write(buildContext(stateMachine, contextObj), contextObj);
+    }
+
+    @Override
+    public void persistAll(Map<IdentifierT, StateMachine<StatesT, EventsT>> stateMachines) throws Exception {
+        if (!(stateMachinePersist instanceof BatchStateMachinePersist)) {
+            BatchStateMachinePersister.super.persistAll(stateMachines);
+            return;
+        }
+        Map<IdentifierT, StateMachineContext<StatesT, EventsT>> contexts = new LinkedHashMap<>();
+        stateMachines.forEach((id, machine) -> contexts.put(id, buildContext(machine, id)));
+        ((BatchStateMachinePersist<StatesT, EventsT, IdentifierT>) stateMachinePersist).writeAll(contexts);
     }
 
     @Override
     public StateMachine<StatesT, EventsT> restore(StateMachine<StatesT, EventsT> stateMachine, IdentifierT contextObj) throws Exception {
         final StateMachineContext<StatesT, EventsT> context = stateMachinePersist.read(contextObj);
         Guard.checkEntityExist(context, PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
-        return stateMachinePersister.restore(stateMachine, contextObj);
+        if (versioned) {
+            StateMachineVersion version = StateMachineVersion.of(context);
+            versions.put(stateMachine, new ReadVersion(contextObj, version != null ? version : new StateMachineVersion()));
+        }
+        // the same as the restore of the decorated persister, without the second read of the context:
+        stateMachine.stop();
+        stateMachine.getStateMachineAccessor().doWithAllRegions(access -> access.resetStateMachine(context));
+        stateMachine.start();
+        return stateMachine;
+    }
+
+    @Override
+    public StateMachineContext<StatesT, EventsT> readContext(IdentifierT contextObj) throws Exception {
+        return stateMachinePersist.read(contextObj);
+    }
+
+    /**
+     * Build a context of the machine with the version of its last read,
+     * a machine which wasn't restored with this identifier gets a new version.
+     */
+    private StateMachineContext<StatesT, EventsT> buildContext(StateMachine<StatesT, EventsT> stateMachine,
+                                                               IdentifierT contextObj) {
+
+        StateMachineContext<StatesT, EventsT> context = stateMachinePersister.build(stateMachine);
+        if (!versioned) {
+            return context;
+        }
+        ReadVersion read;
+        synchronized (versions) {
+            read = versions.get(stateMachine);
+            if (read == null || !read.id.equals(contextObj)) {
+                read = new ReadVersion(contextObj, new StateMachineVersion());
+                versions.put(stateMachine, read);
+            }
+        }
+        return new DefaultStateMachineContext<>(context.getChilds(),
+                                                context.getState(),
+                                                context.getEvent(),
+                                                StateMachineVersion.withVersion(context.getEventHeaders(), read.version),
+                                                context.getExtendedState(),
+                                                context.getHistoryStates(),
+                                                context.getId());
+    }
+
+    private static class ReadVersion {
+
+        private final Object id;
+        private final StateMachineVersion version;
+
+        private ReadVersion(Object id, StateMachineVersion version) {
+            this.id = id;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Builds a context of the machine in the same way as the {@link DefaultStateMachinePersister}.
+     */
+    private static class ContextBuildingPersister<StatesT, EventsT, IdentifierT>
+            extends DefaultStateMachinePersister<StatesT, EventsT, IdentifierT> {
+
+        private ContextBuildingPersister(StateMachinePersist<StatesT, EventsT, IdentifierT> stateMachinePersist) {
+            super(stateMachinePersist);
+        }
+
+        private StateMachineContext<StatesT, EventsT> build(StateMachine<StatesT, EventsT> stateMachine) {
+            return buildStateMachineContext(stateMachine);
+        }
     }
 }
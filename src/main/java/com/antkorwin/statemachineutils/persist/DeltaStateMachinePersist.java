@@ -0,0 +1,256 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+import static com.antkorwin.statemachineutils.persist.ImmutableValues.isImmutable;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * StateMachinePersist which writes only changes of a machine: active states
+ * and changed or removed extended state variables, instead of the whole context.
+ * <p>
+ * Deltas are appended to the {@link StateMachineDeltaLog}, every snapshotInterval
+ * writes the whole context is written to the snapshot persist, with the sequence number
+ * of the last folded delta in the {@link #SEQUENCE_HEADER}, and then folded deltas are removed.
+ * A machine is read as the last snapshot with deltas after its sequence number, so deltas
+ * which weren't removed after the snapshot (e.g. after a crash) are never applied again.
+ * <p>
+ * In order to build a delta the persist keeps variables and the last sequence number
+ * of recently used machines, the first write of a machine which isn't known
+ * (or was evicted) is a snapshot. A variable of a type that can be changed
+ * in place (see {@link ImmutableValues}) is written in each delta.
+ * <p>
+ * Only snapshots are checked by the {@link StateMachineVersion} of a versioned persist,
+ * deltas are checked by their sequence numbers: concurrent writers of the same machine
+ * append the same sequence number and one of them fails, but a writer with a stale
+ * machine, which appends a delta after another writer folded newer deltas in a snapshot,
+ * isn't rejected and its delta is ignored. So the persist expects one writer of a machine
+ * at a time, e.g. the service on one node with a lock or a mailbox of the machine.
+ *
+ * @author Korovin Anatoliy
+ */
+public class DeltaStateMachinePersist<StatesT, EventsT> implements StateMachinePersist<StatesT, EventsT, UUID>,
+                                                                  VersionedStateMachinePersist {
+
+    public static final String SEQUENCE_HEADER = "statemachine-utils.delta-sequence";
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 32;
+    public static final int DEFAULT_MAX_TRACKED_MACHINES = 10_000;
+
+    private final StateMachinePersist<StatesT, EventsT, UUID> snapshots;
+    private final StateMachineDeltaLog deltaLog;
+    private final StateMachineContextCodec<StatesT, EventsT> codec;
+    private final int snapshotInterval;
+    private final Map<UUID, Tracked> tracked;
+
+    /**
+     * @param snapshots           persist of snapshots
+     * @param deltaLog            log of deltas
+     * @param codec               codec of deltas
+     * @param snapshotInterval    max number of deltas between snapshots
+     * @param maxTrackedMachines  max number of machines whose variables are kept to build deltas
+     */
+    public DeltaStateMachinePersist(StateMachinePersist<StatesT, EventsT, UUID> snapshots,
+                                    StateMachineDeltaLog deltaLog,
+                                    StateMachineContextCodec<StatesT, EventsT> codec,
+                                    int snapshotInterval,
+                                    int maxTrackedMachines) {
+        this.snapshots = snapshots;
+        this.deltaLog = deltaLog;
+        this.codec = codec;
+        this.snapshotInterval = snapshotInterval;
+        this.tracked = Collections.synchronizedMap(new LinkedHashMap<UUID, Tracked>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Tracked> eldest) {
+                return size() > maxTrackedMachines;
+            }
+        });
+    }
+
+    @Override
+    public boolean isVersioned() {
+        return StateMachineVersion.isSupportedBy(snapshots);
+    }
+
+    @Override
+    public void write(StateMachineContext<StatesT, EventsT> context, UUID id) throws Exception {
+        Map<Object, Object> variables = variablesOf(context);
+        Tracked previous = tracked.get(id);
+
+        if (previous == null || previous.deltas >= snapshotInterval) {
+            long sequence = previous == null ? deltaLog.lastSequence(id) : previous.sequence;
+            snapshots.write(withSequence(context, sequence), id);
+            deltaLog.clear(id, sequence);
+            tracked.put(id, new Tracked(variables, sequence, 0));
+            return;
+        }
+
+        long sequence = previous.sequence + 1;
+        deltaLog.append(id, sequence, encodeDelta(context, previous.variables, variables));
+        tracked.put(id, new Tracked(variables, sequence, previous.deltas + 1));
+    }
+
+    @Override
+    public StateMachineContext<StatesT, EventsT> read(UUID id) throws Exception {
+        StateMachineContext<StatesT, EventsT> context = snapshots.read(id);
+        if (context == null) {
+            tracked.remove(id);
+            return null;
+        }
+        StateMachineVersion version = StateMachineVersion.of(context);
+        long sequence = sequenceOf(context);
+        List<byte[]> deltas = deltaLog.read(id, sequence);
+        for (byte[] delta : deltas) {
+            context = applyDelta(context, delta);
+        }
+        tracked.put(id, new Tracked(variablesOf(context), sequence + deltas.size(), deltas.size()));
+        if (version == null || deltas.isEmpty()) {
+            return context;
+        }
+        // the next snapshot is written over the read one:
+        return new DefaultStateMachineContext<>(context.getChilds(),
+                                                context.getState(),
+                                                context.getEvent(),
+                                                StateMachineVersion.withVersion(context.getEventHeaders(), version),
+                                                context.getExtendedState(),
+                                                context.getHistoryStates(),
+                                                context.getId());
+    }
+
+    private byte[] encodeDelta(StateMachineContext<StatesT, EventsT> context,
+                               Map<Object, Object> previous,
+                               Map<Object, Object> current) throws Exception {
+
+        Map<Object, Object> changed = new HashMap<>();
+        for (Map.Entry<Object, Object> entry : current.entrySet()) {
+            Object value = entry.getValue();
+            if (!isImmutable(value) ||
+                !previous.containsKey(entry.getKey()) ||
+                !Objects.equals(previous.get(entry.getKey()), value)) {
+                changed.put(entry.getKey(), value);
+            }
+        }
+        Map<Object, Object> removed = new HashMap<>();
+        for (Object key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                removed.put(key, Boolean.TRUE);
+            }
+        }
+
+        // active states are written as is, they are small:
+        StateMachineContext<StatesT, EventsT> changes =
+                new DefaultStateMachineContext<>(context.getChilds(),
+                                                 context.getState(),
+                                                 context.getEvent(),
+                                                 context.getEventHeaders(),
+                                                 new DefaultExtendedState(changed),
+                                                 context.getHistoryStates(),
+                                                 context.getId());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeBlock(out, codec.encode(changes));
+            writeBlock(out, removed.isEmpty()
+                            ? new byte[0]
+                            : codec.encode(new DefaultStateMachineContext<>(null, null, null,
+                                                                            new DefaultExtendedState(removed),
+                                                                            null, null)));
+        }
+        return bytes.toByteArray();
+    }
+
+    private StateMachineContext<StatesT, EventsT> applyDelta(StateMachineContext<StatesT, EventsT> base,
+                                                             byte[] delta) throws Exception {
+
+        StateMachineContext<StatesT, EventsT> changes;
+        byte[] removed;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(delta))) {
+            changes = codec.decode(readBlock(in));
+            removed = readBlock(in);
+        }
+
+        Map<Object, Object> variables = variablesOf(base);
+        variables.putAll(changes.getExtendedState().getVariables());
+        if (removed.length > 0) {
+            variables.keySet().removeAll(codec.decode(removed).getExtendedState().getVariables().keySet());
+        }
+
+        return new DefaultStateMachineContext<>(changes.getChilds(),
+                                                changes.getState(),
+                                                changes.getEvent(),
+                                                changes.getEventHeaders(),
+                                                new DefaultExtendedState(variables),
+                                                changes.getHistoryStates(),
+                                                changes.getId());
+    }
+
+    private StateMachineContext<StatesT, EventsT> withSequence(StateMachineContext<StatesT, EventsT> context,
+                                                               long sequence) {
+
+        Map<String, Object> headers = context.getEventHeaders() == null
+                                      ? new HashMap<>()
+                                      : new HashMap<>(context.getEventHeaders());
+        headers.put(SEQUENCE_HEADER, sequence);
+        return new DefaultStateMachineContext<>(context.getChilds(),
+                                                context.getState(),
+                                                context.getEvent(),
+                                                headers,
+                                                context.getExtendedState(),
+                                                context.getHistoryStates(),
+                                                context.getId());
+    }
+
+    private static long sequenceOf(StateMachineContext<?, ?> snapshot) {
+        Map<String, Object> headers = snapshot.getEventHeaders();
+        Object sequence = headers == null ? null : headers.get(SEQUENCE_HEADER);
+        return sequence instanceof Number ? ((Number) sequence).longValue() : 0;
+    }
+
+    private static Map<Object, Object> variablesOf(StateMachineContext<?, ?> context) {
+        return context.getExtendedState() == null
+               ? new HashMap<>()
+               : new HashMap<>(context.getExtendedState().getVariables());
+    }
+
+    private static void writeBlock(DataOutputStream out, byte[] block) throws IOException {
+        out.writeInt(block.length);
+        out.write(block);
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        byte[] block = new byte[in.readInt()];
+        in.readFully(block);
+        return block;
+    }
+
+    private static class Tracked {
+
+        private final Map<Object, Object> variables;
+        // the last sequence number of the machine:
+        private final long sequence;
+        // number of deltas after the last snapshot:
+        private final int deltas;
+
+        private Tracked(Map<Object, Object> variables, long sequence, int deltas) {
+            this.variables = variables;
+            this.sequence = sequence;
+            this.deltas = deltas;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.commonutils.validation.Guard;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+import org.springframework.statemachine.listener.StateMachineListenerAdapter;
+import org.springframework.statemachine.persist.DefaultStateMachinePersister;
+import org.springframework.statemachine.persist.StateMachinePersister;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.statemachine.support.StateMachineInterceptorAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * StateMachinePersister which appends accepted events of a machine (with their headers)
+ * to the {@link StateMachineEventLog} instead of overwriting the context of the machine,
+ * so each write is a sequential append and the log is an audit trail of the machine.
+ * <p>
+ * Every snapshotInterval events the context of the machine is written to the snapshot
+ * persist, with the sequence number of the last event in the {@link #SEQUENCE_HEADER}
+ * (and the {@link StateMachineVersion} of the snapshot which was read by the restore,
+ * if the persist is a {@link VersionedStateMachinePersist}).
+ * A machine is restored from the last snapshot and then the events after the snapshot
+ * are sent to the machine again, so the time of the restore is bounded by the interval.
+ * Actions of a replayed event are executed again, they should change only the machine.
+ * <p>
+ * Events are recorded by an interceptor, which the persister adds to each restored machine.
+ * The persister writes a snapshot instead of events if it can't replay changes of the machine:
+ * the machine was not restored by this persister, extended state variables were changed
+ * outside of transitions (e.g. by a processing function) or the machine was reset
+ * (e.g. roll-backed by a wrapper, in this case not persisted events are dropped).
+ *
+ * @author Korovin Anatoliy
+ */
+public class EventSourcedStateMachinePersister<StatesT, EventsT> implements StateMachinePersister<StatesT, EventsT, UUID> {
+
+    public static final String SEQUENCE_HEADER = "statemachine-utils.sequence";
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 32;
+
+    private final StateMachinePersist<StatesT, EventsT, UUID> snapshots;
+    private final StateMachineEventLog eventLog;
+    private final StateMachineContextCodec<StatesT, EventsT> codec;
+    private final int snapshotInterval;
+    private final boolean versioned;
+    private final ContextBuilder<StatesT, EventsT> contextBuilder;
+    private final Map<StateMachine<StatesT, EventsT>, Recorder> recorders;
+
+    /**
+     * @param snapshots        persist of snapshots
+     * @param eventLog         log of events
+     * @param codec            codec of events
+     * @param snapshotInterval max number of events between snapshots
+     */
+    public EventSourcedStateMachinePersister(StateMachinePersist<StatesT, EventsT, UUID> snapshots,
+                                             StateMachineEventLog eventLog,
+                                             StateMachineContextCodec<StatesT, EventsT> codec,
+                                             int snapshotInterval) {
+        this.snapshots = snapshots;
+        this.eventLog = eventLog;
+        this.codec = codec;
+        this.snapshotInterval = snapshotInterval;
+        this.versioned = StateMachineVersion.isSupportedBy(snapshots);
+        this.contextBuilder = new ContextBuilder<>(snapshots);
+        // a recorder doesn't refer to its machine, so machines can be collected:
+        this.recorders = Collections.synchronizedMap(new WeakHashMap<>());
+    }
+
+    @Override
+    public void persist(StateMachine<StatesT, EventsT> stateMachine, UUID contextObj) throws Exception {
+        Recorder recorder = recorders.get(stateMachine);
+        if (recorder == null || !contextObj.equals(recorder.machineId)) {
+            writeSnapshot(stateMachine, contextObj, eventLog.lastSequence(contextObj), new StateMachineVersion());
+            return;
+        }
+
+        synchronized (recorder) {
+            if (!recorder.events.isEmpty()) {
+                List<byte[]> events = new ArrayList<>(recorder.events.size());
+                for (Message<EventsT> message : recorder.events) {
+                    events.add(encode(message));
+                }
+                eventLog.append(contextObj, recorder.lastSequence + 1, events);
+                recorder.lastSequence += events.size();
+                recorder.events.clear();
+            }
+            if (recorder.dirty || recorder.lastSequence - recorder.snapshotSequence >= snapshotInterval) {
+                writeSnapshot(stateMachine, contextObj, recorder.lastSequence, recorder.snapshotVersion);
+                recorder.snapshotSequence = recorder.lastSequence;
+                recorder.dirty = false;
+            }
+        }
+    }
+
+    @Override
+    public StateMachine<StatesT, EventsT> restore(StateMachine<StatesT, EventsT> stateMachine,
+                                                  UUID contextObj) throws Exception {
+
+        StateMachineContext<StatesT, EventsT> snapshot = snapshots.read(contextObj);
+        Guard.checkEntityExist(snapshot, PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+        long snapshotSequence = sequenceOf(snapshot);
+
+        Recorder recorder = recorderOf(stateMachine);
+        synchronized (recorder) {
+            recorder.replaying = true;
+            try {
+                stateMachine.stop();
+                stateMachine.getStateMachineAccessor().doWithAllRegions(access -> access.resetStateMachine(snapshot));
+                stateMachine.start();
+
+                List<byte[]> events = eventLog.read(contextObj, snapshotSequence);
+                for (byte[] event : events) {
+                    stateMachine.sendEvent(decode(event));
+                }
+                StateMachineVersion version = StateMachineVersion.of(snapshot);
+                recorder.reset(contextObj,
+                               version != null ? version : new StateMachineVersion(),
+                               snapshotSequence,
+                               snapshotSequence + events.size());
+            } finally {
+                recorder.replaying = false;
+            }
+        }
+        return stateMachine;
+    }
+
+    private void writeSnapshot(StateMachine<StatesT, EventsT> stateMachine,
+                               UUID id,
+                               long sequence,
+                               StateMachineVersion version) throws Exception {
+
+        StateMachineContext<StatesT, EventsT> context = contextBuilder.build(stateMachine);
+        Map<String, Object> headers = new HashMap<>();
+        headers.put(SEQUENCE_HEADER, sequence);
+        if (versioned) {
+            headers.put(StateMachineVersion.HEADER, version);
+        }
+        snapshots.write(new DefaultStateMachineContext<>(context.getChilds(),
+                                                         context.getState(),
+                                                         context.getEvent(),
+                                                         headers,
+                                                         context.getExtendedState(),
+                                                         context.getHistoryStates(),
+                                                         context.getId()),
+                        id);
+    }
+
+    private long sequenceOf(StateMachineContext<StatesT, EventsT> snapshot) {
+        Map<String, Object> headers = snapshot.getEventHeaders();
+        Object sequence = headers == null ? null : headers.get(SEQUENCE_HEADER);
+        return sequence == null ? 0 : ((Number) sequence).longValue();
+    }
+
+    private byte[] encode(Message<EventsT> message) {
+        try {
+            return codec.encode(new DefaultStateMachineContext<>(null,
+                                                                 message.getPayload(),
+                                                                 new HashMap<>(message.getHeaders()),
+                                                                 null));
+        } catch (Exception e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.UNABLE_TO_ENCODE_STATE_MACHINE_CONTEXT, e);
+        }
+    }
+
+    private Message<EventsT> decode(byte[] event) {
+        StateMachineContext<StatesT, EventsT> context;
+        try {
+            context = codec.decode(event);
+        } catch (Exception e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.UNABLE_TO_DECODE_STATE_MACHINE_CONTEXT, e);
+        }
+        return MessageBuilder.withPayload(context.getEvent())
+                             .copyHeaders(context.getEventHeaders())
+                             .build();
+    }
+
+    private Recorder recorderOf(StateMachine<StatesT, EventsT> stateMachine) {
+        synchronized (recorders) {
+            Recorder recorder = recorders.get(stateMachine);
+            if (recorder == null) {
+                recorder = new Recorder(stateMachine.getUuid());
+                Recorder interceptor = recorder;
+                stateMachine.getStateMachineAccessor()
+                            .doWithAllRegions(access -> access.addStateMachineInterceptor(interceptor));
+                stateMachine.addStateListener(recorder.listener);
+                recorders.put(stateMachine, recorder);
+            }
+            return recorder;
+        }
+    }
+
+    /**
+     * Records accepted events of a machine since the last persist.
+     * An event is recorded once after its first transition, even if
+     * the event triggers transitions in a few regions of the machine.
+     */
+    private class Recorder extends StateMachineInterceptorAdapter<StatesT, EventsT> {
+
+        private final UUID rootUuid;
+        private final List<Message<EventsT>> events = new ArrayList<>();
+        private final StateMachineListenerAdapter<StatesT, EventsT> listener = new StateMachineListenerAdapter<StatesT, EventsT>() {
+            @Override
+            public void extendedStateChanged(Object key, Object value) {
+                synchronized (Recorder.this) {
+                    if (!replaying && transitions == 0) {
+                        dirty = true;
+                    }
+                }
+            }
+
+            @Override
+            public void stateMachineStopped(StateMachine<StatesT, EventsT> stateMachine) {
+                synchronized (Recorder.this) {
+                    if (!replaying && rootUuid.equals(stateMachine.getUuid())) {
+                        events.clear();
+                        dirty = true;
+                    }
+                }
+            }
+        };
+
+        private UUID machineId;
+        private StateMachineVersion snapshotVersion;
+        private long snapshotSequence;
+        private long lastSequence;
+        private boolean dirty;
+        private boolean replaying;
+        private int transitions;
+        private Message<EventsT> lastMessage;
+
+        private Recorder(UUID rootUuid) {
+            this.rootUuid = rootUuid;
+        }
+
+        private void reset(UUID machineId, StateMachineVersion snapshotVersion, long snapshotSequence, long lastSequence) {
+            this.machineId = machineId;
+            this.snapshotVersion = snapshotVersion;
+            this.snapshotSequence = snapshotSequence;
+            this.lastSequence = lastSequence;
+            this.events.clear();
+            this.dirty = false;
+            this.transitions = 0;
+            this.lastMessage = null;
+        }
+
+        @Override
+        public synchronized Message<EventsT> preEvent(Message<EventsT> message, StateMachine<StatesT, EventsT> stateMachine) {
+            if (rootUuid.equals(stateMachine.getUuid())) {
+                lastMessage = null;
+                transitions = 0;
+            }
+            return message;
+        }
+
+        @Override
+        public synchronized StateContext<StatesT, EventsT> preTransition(StateContext<StatesT, EventsT> stateContext) {
+            transitions++;
+            return stateContext;
+        }
+
+        @Override
+        public synchronized StateContext<StatesT, EventsT> postTransition(StateContext<StatesT, EventsT> stateContext) {
+            transitions--;
+            Message<EventsT> message = stateContext.getMessage();
+            if (!replaying && message != null && message != lastMessage) {
+                events.add(message);
+                lastMessage = message;
+            }
+            return stateContext;
+        }
+
+        @Override
+        public synchronized Exception stateMachineError(StateMachine<StatesT, EventsT> stateMachine, Exception exception) {
+            transitions = 0;
+            dirty = true;
+            return exception;
+        }
+    }
+
+    /**
+     * Builds a context of the machine in the same way as the {@link DefaultStateMachinePersister}.
+     */
+    private static class ContextBuilder<StatesT, EventsT> extends DefaultStateMachinePersister<StatesT, EventsT, UUID> {
+
+        private ContextBuilder(StateMachinePersist<StatesT, EventsT, UUID> stateMachinePersist) {
+            super(stateMachinePersist);
+        }
+
+        private StateMachineContext<StatesT, EventsT> build(StateMachine<StatesT, EventsT> stateMachine) {
+            return buildStateMachineContext(stateMachine);
+        }
+    }
+}
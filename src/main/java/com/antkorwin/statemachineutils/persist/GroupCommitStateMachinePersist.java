@@ -0,0 +1,221 @@
+package com.antkorwin.statemachineutils.persist;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Group commit decorator of the StateMachinePersist. Writes from
+ * concurrent threads are collected in a batch, which is flushed
+ * when it reaches the max size or after the max delay from the first
+ * write. A writing thread returns only after its batch is written,
+ * so a write stays durable for the caller.
+ * <p>
+ * If the decorated persist is a {@link BatchStateMachinePersist}
+ * then a batch is written by the one call of the writeAll method.
+ * <p>
+ * A batch holds one write of each machine, a second write of the same machine
+ * waits until the batch with the first one is written and goes to the next batch,
+ * so both writes are written in order (and a versioned persist checks both of them).
+ * <p>
+ * A batch is written in another thread, outside of the transaction of the caller,
+ * so a write inside of an active transaction isn't grouped, it's written directly
+ * by the calling thread and takes part in the transaction.
+ * <p>
+ * The close method writes the current batch and stops the thread
+ * of the decorator, writes after the close aren't grouped.
+ *
+ * @author Korovin Anatoliy
+ */
+@Slf4j
+public class GroupCommitStateMachinePersist<StatesT, EventsT, IdentifierT>
+        implements StateMachinePersist<StatesT, EventsT, IdentifierT>, VersionedStateMachinePersist, AutoCloseable {
+
+    private final StateMachinePersist<StatesT, EventsT, IdentifierT> persist;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    private Batch current;
+    // batches which aren't written yet, with the current one:
+    private final List<Batch> unwritten = new ArrayList<>();
+    private boolean closed;
+
+    /**
+     * @param persist        decorated persist
+     * @param maxBatchSize   max number of contexts in one batch
+     * @param maxDelayMillis max time to wait for other writes since the first write in a batch
+     */
+    public GroupCommitStateMachinePersist(StateMachinePersist<StatesT, EventsT, IdentifierT> persist,
+                                          int maxBatchSize,
+                                          long maxDelayMillis) {
+        this.persist = persist;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "state-machine-group-commit");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // the close flushes the current batch, other scheduled flushes aren't needed after it:
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = executor;
+    }
+
+    @Override
+    public boolean isVersioned() {
+        return StateMachineVersion.isSupportedBy(persist);
+    }
+
+    @Override
+    public void write(StateMachineContext<StatesT, EventsT> context, IdentifierT contextObj) throws Exception {
+
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            persist.write(context, contextObj);
+            return;
+        }
+
+        Batch batch;
+        Batch previous;
+        boolean full = false;
+        do {
+            synchronized (lock) {
+                batch = null;
+                previous = unwrittenBatchOf(contextObj);
+                if (previous != null) {
+                    // the batch has a write of this machine, it's written before this one:
+                    if (current == previous) {
+                        current = null;
+                    }
+                } else if (!closed) {
+                    if (current == null) {
+                        Batch created = new Batch();
+                        scheduler.schedule(() -> flush(created), maxDelayMillis, TimeUnit.MILLISECONDS);
+                        current = created;
+                        unwritten.add(created);
+                    }
+                    batch = current;
+                    batch.contexts.put(contextObj, context);
+                    if (batch.contexts.size() >= maxBatchSize) {
+                        current = null;
+                        full = true;
+                    }
+                }
+            }
+            if (previous != null) {
+                flush(previous);
+                // a failure of the previous batch belongs to its writers:
+                previous.done.exceptionally(e -> null).join();
+            }
+        } while (previous != null);
+
+        if (batch == null) {
+            persist.write(context, contextObj);
+            return;
+        }
+        if (full) {
+            flush(batch);
+        }
+        awaitFlush(batch);
+    }
+
+    @Override
+    public StateMachineContext<StatesT, EventsT> read(IdentifierT contextObj) throws Exception {
+        return persist.read(contextObj);
+    }
+
+    /**
+     * Write the current batch and stop the thread of the decorator.
+     */
+    @Override
+    public void close() {
+        Batch batch;
+        synchronized (lock) {
+            closed = true;
+            batch = current;
+            current = null;
+        }
+        if (batch != null) {
+            flush(batch);
+        }
+        scheduler.shutdown();
+    }
+
+    private void flush(Batch batch) {
+        if (!batch.flushed.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (lock) {
+            if (current == batch) {
+                current = null;
+            }
+        }
+        try {
+            writeBatch(batch.contexts);
+            batch.done.complete(null);
+        } catch (Throwable e) {
+            log.error("Unable to write a batch of state machines", e);
+            batch.done.completeExceptionally(e);
+        } finally {
+            synchronized (lock) {
+                unwritten.remove(batch);
+            }
+        }
+    }
+
+    /**
+     * @return a batch with a write of the machine, which isn't written yet
+     */
+    private Batch unwrittenBatchOf(IdentifierT contextObj) {
+        for (Batch batch : unwritten) {
+            if (batch.contexts.containsKey(contextObj)) {
+                return batch;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void writeBatch(Map<IdentifierT, StateMachineContext<StatesT, EventsT>> contexts) throws Exception {
+        if (persist instanceof BatchStateMachinePersist) {
+            ((BatchStateMachinePersist<StatesT, EventsT, IdentifierT>) persist).writeAll(contexts);
+            return;
+        }
+        for (Map.Entry<IdentifierT, StateMachineContext<StatesT, EventsT>> entry : contexts.entrySet()) {
+            persist.write(entry.getValue(), entry.getKey());
+        }
+    }
+
+    private void awaitFlush(Batch batch) throws Exception {
+        try {
+            batch.done.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private class Batch {
+        // changed only under the lock, before the batch is flushed:
+        private final Map<IdentifierT, StateMachineContext<StatesT, EventsT>> contexts = new LinkedHashMap<>();
+        private final AtomicBoolean flushed = new AtomicBoolean();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+    }
+}
@@ -0,0 +1,39 @@
+package com.antkorwin.statemachineutils.persist;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.temporal.TemporalAccessor;
+import java.util.UUID;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Well-known immutable types of extended state variables. A value of other types
+ * can be changed in place, so a shallow copy of variables isn't enough
+ * to find out whether such value was changed.
+ *
+ * @author Korovin Anatoliy
+ */
+public final class ImmutableValues {
+
+    private ImmutableValues() {
+    }
+
+    public static boolean isImmutable(Object value) {
+        return value == null ||
+               value instanceof String ||
+               value instanceof Integer ||
+               value instanceof Long ||
+               value instanceof Boolean ||
+               value instanceof Double ||
+               value instanceof Float ||
+               value instanceof Short ||
+               value instanceof Byte ||
+               value instanceof Character ||
+               value instanceof Enum ||
+               value instanceof UUID ||
+               value instanceof BigDecimal ||
+               value instanceof BigInteger ||
+               (value instanceof TemporalAccessor && value.getClass().getName().startsWith("java.time."));
+    }
+}
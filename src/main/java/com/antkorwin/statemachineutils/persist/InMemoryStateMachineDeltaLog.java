@@ -0,0 +1,58 @@
+package com.antkorwin.statemachineutils.persist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class InMemoryStateMachineDeltaLog implements StateMachineDeltaLog {
+
+    private final ConcurrentHashMap<UUID, TreeMap<Long, byte[]>> storage = new ConcurrentHashMap<>();
+
+    @Override
+    public void append(UUID id, long sequence, byte[] delta) {
+        storage.compute(id, (key, deltas) -> {
+            TreeMap<Long, byte[]> result = deltas == null ? new TreeMap<>() : deltas;
+            if (result.containsKey(sequence)) {
+                throw new StateMachinePersistException(PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+            }
+            result.put(sequence, delta);
+            return result;
+        });
+    }
+
+    @Override
+    public List<byte[]> read(UUID id, long afterSequence) {
+        List<byte[]> result = new ArrayList<>();
+        storage.computeIfPresent(id, (key, deltas) -> {
+            result.addAll(deltas.tailMap(afterSequence, false).values());
+            return deltas;
+        });
+        return result.isEmpty() ? Collections.emptyList() : result;
+    }
+
+    @Override
+    public long lastSequence(UUID id) {
+        long[] result = new long[1];
+        storage.computeIfPresent(id, (key, deltas) -> {
+            result[0] = deltas.isEmpty() ? 0 : deltas.lastKey();
+            return deltas;
+        });
+        return result[0];
+    }
+
+    @Override
+    public void clear(UUID id, long toSequence) {
+        storage.computeIfPresent(id, (key, deltas) -> {
+            deltas.headMap(toSequence, true).clear();
+            return deltas.isEmpty() ? null : deltas;
+        });
+    }
+}
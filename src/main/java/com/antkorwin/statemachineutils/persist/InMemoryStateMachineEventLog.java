@@ -0,0 +1,51 @@
+package com.antkorwin.statemachineutils.persist;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class InMemoryStateMachineEventLog implements StateMachineEventLog {
+
+    private final ConcurrentHashMap<UUID, List<byte[]>> storage = new ConcurrentHashMap<>();
+
+    @Override
+    public void append(UUID id, long firstSequence, List<byte[]> events) {
+        storage.compute(id, (key, log) -> {
+            List<byte[]> result = log == null ? new ArrayList<>() : log;
+            if (firstSequence != result.size() + 1) {
+                throw new StateMachinePersistException(PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+            }
+            result.addAll(events);
+            return result;
+        });
+    }
+
+    @Override
+    public List<byte[]> read(UUID id, long afterSequence) {
+        List<byte[]> result = new ArrayList<>();
+        storage.computeIfPresent(id, (key, log) -> {
+            if (afterSequence < log.size()) {
+                result.addAll(log.subList((int) afterSequence, log.size()));
+            }
+            return log;
+        });
+        return result.isEmpty() ? Collections.emptyList() : result;
+    }
+
+    @Override
+    public long lastSequence(UUID id) {
+        long[] result = new long[1];
+        storage.computeIfPresent(id, (key, log) -> {
+            result[0] = log.size();
+            return log;
+        });
+        return result[0];
+    }
+}
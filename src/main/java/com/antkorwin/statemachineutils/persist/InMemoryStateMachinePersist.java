@@ -3,20 +3,35 @@ package com.antkorwin.statemachineutils.persist;
 import org.springframework.statemachine.StateMachineContext;
 import org.springframework.statemachine.StateMachinePersist;
 
-import java.util.HashMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Created by Korovin A. on 05.06.2018.
  *
- * Untyped statemachine persist implementation, based on the HashMap
+ * Untyped statemachine persist implementation, based on the ConcurrentHashMap,
+ * so it's safe to share one instance between threads which work
+ * with different state machines.
  *
  * @author Korovin Anatoliy
- * @version 1.0
+ * @version 1.1
  */
 public class InMemoryStateMachinePersist implements StateMachinePersist {
 
-    private HashMap<UUID, StateMachineContext> storage = new HashMap<>();
+    private static final int DEFAULT_INITIAL_CAPACITY = 4096;
+
+    private final ConcurrentHashMap<UUID, StateMachineContext> storage;
+
+    public InMemoryStateMachinePersist() {
+        this(DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity expected number of stored state machines
+     */
+    public InMemoryStateMachinePersist(int initialCapacity) {
+        this.storage = new ConcurrentHashMap<>(initialCapacity);
+    }
 
     @Override
     public void write(StateMachineContext context, Object contextObj) throws Exception {
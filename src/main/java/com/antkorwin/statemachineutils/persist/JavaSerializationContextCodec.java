@@ -0,0 +1,90 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Codec based on the java serialization, the context itself isn't
+ * serializable so the codec writes its fields one by one. States, events
+ * and values of extended state variables must be serializable.
+ *
+ * @author Korovin Anatoliy
+ */
+public class JavaSerializationContextCodec<StatesT, EventsT> implements StateMachineContextCodec<StatesT, EventsT> {
+
+    @Override
+    public byte[] encode(StateMachineContext<StatesT, EventsT> context) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            write(context, out);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public StateMachineContext<StatesT, EventsT> decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return read(in);
+        }
+    }
+
+    private void write(StateMachineContext<StatesT, EventsT> context, ObjectOutputStream out) throws IOException {
+        out.writeObject(context.getId());
+        out.writeObject(context.getState());
+        out.writeObject(context.getEvent());
+        out.writeObject(copyOf(StateMachineVersion.withoutVersion(context.getEventHeaders())));
+        out.writeObject(context.getExtendedState() == null
+                        ? null
+                        : copyOf(context.getExtendedState().getVariables()));
+        out.writeObject(copyOf(context.getHistoryStates()));
+
+        List<StateMachineContext<StatesT, EventsT>> childs = context.getChilds();
+        out.writeInt(childs == null ? 0 : childs.size());
+        if (childs != null) {
+            for (StateMachineContext<StatesT, EventsT> child : childs) {
+                write(child, out);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private StateMachineContext<StatesT, EventsT> read(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        String id = (String) in.readObject();
+        StatesT state = (StatesT) in.readObject();
+        EventsT event = (EventsT) in.readObject();
+        Map<String, Object> eventHeaders = (Map<String, Object>) in.readObject();
+        Map<Object, Object> variables = (Map<Object, Object>) in.readObject();
+        Map<StatesT, StatesT> historyStates = (Map<StatesT, StatesT>) in.readObject();
+
+        int childsNumber = in.readInt();
+        List<StateMachineContext<StatesT, EventsT>> childs = new ArrayList<>(childsNumber);
+        for (int i = 0; i < childsNumber; i++) {
+            childs.add(read(in));
+        }
+
+        return new DefaultStateMachineContext<>(childs,
+                                                state,
+                                                event,
+                                                eventHeaders,
+                                                variables == null ? null : new DefaultExtendedState(variables),
+                                                historyStates,
+                                                id);
+    }
+
+    private static <K, V> HashMap<K, V> copyOf(Map<K, V> map) {
+        return map == null ? null : new HashMap<>(map);
+    }
+}
@@ -0,0 +1,38 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Created on 18.10.2026.
+ * <p>
+ * Column types of the tables created by the JDBC persist and logs,
+ * ready-made scripts of tables for production databases are in the
+ * `statemachine-utils/schema-*.sql` resources.
+ *
+ * @author Korovin Anatoliy
+ */
+final class JdbcSchema {
+
+    private JdbcSchema() {
+    }
+
+    /**
+     * @return type of a binary column in the database of the jdbc template
+     */
+    static String binaryType(JdbcTemplate jdbcTemplate) {
+        String database = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+
+        if ("PostgreSQL".equals(database)) {
+            return "BYTEA";
+        }
+        if ("MySQL".equals(database) || "MariaDB".equals(database)) {
+            return "LONGBLOB";
+        }
+        if ("Microsoft SQL Server".equals(database)) {
+            return "VARBINARY(MAX)";
+        }
+        return "BLOB";
+    }
+}
@@ -0,0 +1,75 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Delta log based on the JDBC, each delta is one row of the table.
+ * The primary key rejects a second delta with the same sequence number,
+ * so concurrent writers of the same machine fail as with the version
+ * check of the {@link JdbcStateMachinePersist}.
+ *
+ * @author Korovin Anatoliy
+ */
+public class JdbcStateMachineDeltaLog implements StateMachineDeltaLog {
+
+    public static final String DEFAULT_TABLE_NAME = "state_machine_delta";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String tableName;
+
+    public JdbcStateMachineDeltaLog(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, DEFAULT_TABLE_NAME);
+    }
+
+    public JdbcStateMachineDeltaLog(JdbcTemplate jdbcTemplate, String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.tableName = tableName;
+    }
+
+    /**
+     * Create the table of deltas if it doesn't exist.
+     */
+    public void createTableIfNotExists() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+                             "id VARCHAR(36) NOT NULL, " +
+                             "seq BIGINT NOT NULL, " +
+                             "delta " + JdbcSchema.binaryType(jdbcTemplate) + " NOT NULL, " +
+                             "PRIMARY KEY (id, seq))");
+    }
+
+    @Override
+    public void append(UUID id, long sequence, byte[] delta) {
+        try {
+            jdbcTemplate.update("INSERT INTO " + tableName + " (id, seq, delta) VALUES (?, ?, ?)",
+                                id.toString(), sequence, delta);
+        } catch (DuplicateKeyException e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.STALE_STATE_MACHINE_VERSION, e);
+        }
+    }
+
+    @Override
+    public List<byte[]> read(UUID id, long afterSequence) {
+        return jdbcTemplate.query("SELECT delta FROM " + tableName + " WHERE id = ? AND seq > ? ORDER BY seq",
+                                  (rs, rowNum) -> rs.getBytes("delta"),
+                                  id.toString(), afterSequence);
+    }
+
+    @Override
+    public long lastSequence(UUID id) {
+        Long result = jdbcTemplate.queryForObject("SELECT MAX(seq) FROM " + tableName + " WHERE id = ?",
+                                                  Long.class,
+                                                  id.toString());
+        return result == null ? 0 : result;
+    }
+
+    @Override
+    public void clear(UUID id, long toSequence) {
+        jdbcTemplate.update("DELETE FROM " + tableName + " WHERE id = ? AND seq <= ?", id.toString(), toSequence);
+    }
+}
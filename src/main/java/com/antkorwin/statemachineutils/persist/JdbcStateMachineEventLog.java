@@ -0,0 +1,82 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Event log based on the JDBC, each event is one row of the table.
+ * Rows are only inserted, never updated, and events of one write
+ * are sent in a single batch in one transaction. The primary key rejects a second event
+ * with the same sequence number, so concurrent writers of the same
+ * machine fail as with the version check of the {@link JdbcStateMachinePersist}.
+ *
+ * @author Korovin Anatoliy
+ */
+public class JdbcStateMachineEventLog implements StateMachineEventLog {
+
+    public static final String DEFAULT_TABLE_NAME = "state_machine_event";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final String tableName;
+
+    public JdbcStateMachineEventLog(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, DEFAULT_TABLE_NAME);
+    }
+
+    public JdbcStateMachineEventLog(JdbcTemplate jdbcTemplate, String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate =
+                new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.tableName = tableName;
+    }
+
+    /**
+     * Create the table of events if it doesn't exist.
+     */
+    public void createTableIfNotExists() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+                             "id VARCHAR(36) NOT NULL, " +
+                             "seq BIGINT NOT NULL, " +
+                             "event " + JdbcSchema.binaryType(jdbcTemplate) + " NOT NULL, " +
+                             "PRIMARY KEY (id, seq))");
+    }
+
+    @Override
+    public void append(UUID id, long firstSequence, List<byte[]> events) {
+        List<Object[]> rows = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            rows.add(new Object[]{id.toString(), firstSequence + i, events.get(i)});
+        }
+        try {
+            transactionTemplate.execute(status -> jdbcTemplate.batchUpdate("INSERT INTO " + tableName +
+                                                                           " (id, seq, event) VALUES (?, ?, ?)",
+                                                                           rows));
+        } catch (DuplicateKeyException e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.STALE_STATE_MACHINE_VERSION, e);
+        }
+    }
+
+    @Override
+    public List<byte[]> read(UUID id, long afterSequence) {
+        return jdbcTemplate.query("SELECT event FROM " + tableName + " WHERE id = ? AND seq > ? ORDER BY seq",
+                                  (rs, rowNum) -> rs.getBytes("event"),
+                                  id.toString(), afterSequence);
+    }
+
+    @Override
+    public long lastSequence(UUID id) {
+        Long result = jdbcTemplate.queryForObject("SELECT MAX(seq) FROM " + tableName + " WHERE id = ?",
+                                                  Long.class,
+                                                  id.toString());
+        return result == null ? 0 : result;
+    }
+}
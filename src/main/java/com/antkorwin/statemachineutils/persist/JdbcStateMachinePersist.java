@@ -0,0 +1,247 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * StateMachinePersist based on the JDBC. Each state machine is stored in one row
+ * with an encoded context and a version of the row.
+ * <p>
+ * Writes are guarded by a compare-and-set on the version: a read context carries
+ * the version of the row in the {@link StateMachineVersion#HEADER}, a written context
+ * with this version updates the row only if nobody changed it since the read,
+ * otherwise the write is rejected with the {@link PersisterErrorInfo#STALE_STATE_MACHINE_VERSION}.
+ * After the write the version of the context is advanced, a write in a transaction
+ * advances it after the commit of the transaction. A context without
+ * a version is inserted, so it's rejected if the machine already exists.
+ * <p>
+ * {@link #writeAll(Map)} sends all inserts and updates by JDBC batches in one transaction.
+ * If the driver doesn't report counts of updated rows in a batch ({@link Statement#SUCCESS_NO_INFO}),
+ * a stale machine can't be found in the batch, so updates are sent one by one.
+ *
+ * @author Korovin Anatoliy
+ */
+public class JdbcStateMachinePersist<StatesT, EventsT> implements BatchStateMachinePersist<StatesT, EventsT, UUID>,
+                                                                      VersionedStateMachinePersist {
+
+    public static final String DEFAULT_TABLE_NAME = "state_machine_context";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final StateMachineContextCodec<StatesT, EventsT> codec;
+    private final String tableName;
+
+    private final String selectSql;
+    private final String insertSql;
+    private final String updateSql;
+
+    /**
+     * Whether the driver reports counts of updated rows in a batch, null until the first batch.
+     */
+    private volatile Boolean batchCounts;
+
+    public JdbcStateMachinePersist(JdbcTemplate jdbcTemplate) {
+        this(jdbcTemplate, new JavaSerializationContextCodec<>(), DEFAULT_TABLE_NAME);
+    }
+
+    /**
+     * @param jdbcTemplate jdbc template
+     * @param codec        codec of the state machine context
+     * @param tableName    name of the table with state machines
+     */
+    public JdbcStateMachinePersist(JdbcTemplate jdbcTemplate,
+                                   StateMachineContextCodec<StatesT, EventsT> codec,
+                                   String tableName) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate =
+                new TransactionTemplate(new DataSourceTransactionManager(jdbcTemplate.getDataSource()));
+        this.codec = codec;
+        this.tableName = tableName;
+        this.selectSql = "SELECT context, version FROM " + tableName + " WHERE id = ?";
+        this.insertSql = "INSERT INTO " + tableName + " (id, context, version) VALUES (?, ?, ?)";
+        this.updateSql = "UPDATE " + tableName + " SET context = ?, version = ? WHERE id = ? AND version = ?";
+    }
+
+    /**
+     * Create the table of state machines if it doesn't exist.
+     */
+    public void createTableIfNotExists() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + tableName + " (" +
+                             "id VARCHAR(36) PRIMARY KEY, " +
+                             "context " + JdbcSchema.binaryType(jdbcTemplate) + " NOT NULL, " +
+                             "version BIGINT NOT NULL)");
+    }
+
+    @Override
+    public boolean isVersioned() {
+        return true;
+    }
+
+    @Override
+    public void write(StateMachineContext<StatesT, EventsT> context, UUID id) {
+        StateMachineVersion version = StateMachineVersion.of(context);
+        Long expected = version == null ? null : version.get();
+        byte[] bytes = encode(context);
+        try {
+            if (expected == null) {
+                jdbcTemplate.update(insertSql, id.toString(), bytes, 0L);
+            } else if (jdbcTemplate.update(updateSql, bytes, expected + 1, id.toString(), expected) == 0) {
+                throw staleVersion();
+            }
+        } catch (DuplicateKeyException e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.STALE_STATE_MACHINE_VERSION, e);
+        }
+        if (version != null) {
+            advanceAfterCommit(Collections.singletonMap(version, expected));
+        }
+    }
+
+    @Override
+    public void writeAll(Map<UUID, StateMachineContext<StatesT, EventsT>> contexts) {
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        Map<StateMachineVersion, Long> written = new IdentityHashMap<>();
+
+        for (Map.Entry<UUID, StateMachineContext<StatesT, EventsT>> entry : contexts.entrySet()) {
+            UUID id = entry.getKey();
+            StateMachineVersion version = StateMachineVersion.of(entry.getValue());
+            Long expected = version == null ? null : version.get();
+            byte[] bytes = encode(entry.getValue());
+            if (expected == null) {
+                inserts.add(new Object[]{id.toString(), bytes, 0L});
+            } else {
+                updates.add(new Object[]{bytes, expected + 1, id.toString(), expected});
+            }
+            if (version != null) {
+                written.put(version, expected);
+            }
+        }
+
+        try {
+            transactionTemplate.execute(status -> {
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate(insertSql, inserts);
+                }
+                if (!updates.isEmpty()) {
+                    updateAll(updates, status);
+                }
+                return null;
+            });
+        } catch (DuplicateKeyException e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.STALE_STATE_MACHINE_VERSION, e);
+        }
+
+        advanceAfterCommit(written);
+    }
+
+    @Override
+    public StateMachineContext<StatesT, EventsT> read(UUID id) {
+        List<StateMachineContext<StatesT, EventsT>> result = jdbcTemplate.query(selectSql, (rs, rowNum) -> {
+            StateMachineContext<StatesT, EventsT> context = decode(rs.getBytes("context"));
+            StateMachineVersion version = new StateMachineVersion(rs.getLong("version"));
+            return new DefaultStateMachineContext<>(context.getChilds(),
+                                                    context.getState(),
+                                                    context.getEvent(),
+                                                    StateMachineVersion.withVersion(context.getEventHeaders(), version),
+                                                    context.getExtendedState(),
+                                                    context.getHistoryStates(),
+                                                    context.getId());
+        }, id.toString());
+
+        return result.isEmpty() ? null : result.get(0);
+    }
+
+    /**
+     * The first batch is sent after a savepoint, if the driver doesn't report
+     * counts of this batch it's rolled back to the savepoint and rows are updated one by one.
+     */
+    private void updateAll(List<Object[]> updates, TransactionStatus status) {
+        if (Boolean.FALSE.equals(batchCounts)) {
+            updateEach(updates);
+            return;
+        }
+        Object savepoint = batchCounts == null ? status.createSavepoint() : null;
+        int[] counts = jdbcTemplate.batchUpdate(updateSql, updates);
+        if (savepoint != null) {
+            batchCounts = Arrays.stream(counts).noneMatch(count -> count == Statement.SUCCESS_NO_INFO);
+            if (!batchCounts) {
+                status.rollbackToSavepoint(savepoint);
+                updateEach(updates);
+                return;
+            }
+            status.releaseSavepoint(savepoint);
+        }
+        for (int count : counts) {
+            if (count != 1) {
+                throw staleVersion();
+            }
+        }
+    }
+
+    private void updateEach(List<Object[]> updates) {
+        for (Object[] update : updates) {
+            if (jdbcTemplate.update(updateSql, update) != 1) {
+                throw staleVersion();
+            }
+        }
+    }
+
+    /**
+     * A rolled back write must keep the version of the context, otherwise
+     * the next write of the same context is rejected as stale.
+     */
+    private void advanceAfterCommit(Map<StateMachineVersion, Long> written) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            written.forEach(this::advance);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                written.forEach(JdbcStateMachinePersist.this::advance);
+            }
+        });
+    }
+
+    private void advance(StateMachineVersion version, Long written) {
+        version.set(written == null ? 0L : written + 1);
+    }
+
+    private byte[] encode(StateMachineContext<StatesT, EventsT> context) {
+        try {
+            return codec.encode(context);
+        } catch (Exception e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.UNABLE_TO_ENCODE_STATE_MACHINE_CONTEXT, e);
+        }
+    }
+
+    private StateMachineContext<StatesT, EventsT> decode(byte[] bytes) {
+        try {
+            return codec.decode(bytes);
+        } catch (Exception e) {
+            throw new StateMachinePersistException(PersisterErrorInfo.UNABLE_TO_DECODE_STATE_MACHINE_CONTEXT, e);
+        }
+    }
+
+    private StateMachinePersistException staleVersion() {
+        return new StateMachinePersistException(PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+    }
+}
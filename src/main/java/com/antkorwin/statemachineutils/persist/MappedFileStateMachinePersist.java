@@ -0,0 +1,410 @@
+package com.antkorwin.statemachineutils.persist;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Durable StateMachinePersist without a database, based on append-only
+ * segment files which are mapped in memory.
+ * <p>
+ * Each write appends a record (length, machine id, checksum and the encoded context)
+ * to the active segment and moves the machine in the in-memory index to the new
+ * record, so a write costs the encoding and a memory copy. A record is in the page
+ * cache when the write returns, so it survives a crash of the process, use the
+ * `forceOnWrite` to flush each write to the disk.
+ * <p>
+ * A segment is flushed to the disk when it's sealed, so a sealed segment is never
+ * lost with the page cache after its records are copied by the compaction.
+ * <p>
+ * On startup the index is rebuilt by a scan of all segments with the verification
+ * of checksums, a torn or corrupted record and the rest of its segment are dropped.
+ * <p>
+ * A background task compacts sealed segments with less than a half of live records:
+ * live records are copied to the active segment, which is flushed to the disk,
+ * and the old segment is deleted. A deleted segment isn't unmapped explicitly,
+ * because a concurrent read may still copy a record from it, its mapping
+ * (and the disk space of the file) is released when the buffer is garbage collected.
+ * <p>
+ * After {@link #close()} writes are rejected with the
+ * {@link PersisterErrorInfo#STATE_MACHINE_PERSIST_IS_CLOSED}.
+ *
+ * @author Korovin Anatoliy
+ */
+@Slf4j
+public class MappedFileStateMachinePersist<StatesT, EventsT>
+        implements StateMachinePersist<StatesT, EventsT, UUID>, Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final long DEFAULT_COMPACTION_INTERVAL_MILLIS = 10_000;
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+    private static final double COMPACTION_THRESHOLD = 0.5;
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 4;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final StateMachineContextCodec<StatesT, EventsT> codec;
+    private final int segmentSize;
+    private final boolean forceOnWrite;
+
+    private final ConcurrentHashMap<UUID, Location> index = new ConcurrentHashMap<>();
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ScheduledExecutorService compactor;
+    // changed and read only under the write lock:
+    private Segment active;
+    private boolean closed;
+
+    public MappedFileStateMachinePersist(Path directory) throws IOException {
+        this(directory, new JavaSerializationContextCodec<>(), DEFAULT_SEGMENT_SIZE,
+             false, DEFAULT_COMPACTION_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param directory                 directory of segment files
+     * @param codec                     codec of the state machine context
+     * @param segmentSize               size of one segment file in bytes
+     * @param forceOnWrite              flush each write to the disk
+     * @param compactionIntervalMillis  interval between compactions, zero to disable the background compaction
+     * @throws IOException if unable to open segment files
+     */
+    public MappedFileStateMachinePersist(Path directory,
+                                         StateMachineContextCodec<StatesT, EventsT> codec,
+                                         int segmentSize,
+                                         boolean forceOnWrite,
+                                         long compactionIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.codec = codec;
+        this.segmentSize = segmentSize;
+        this.forceOnWrite = forceOnWrite;
+
+        Files.createDirectories(directory);
+        recover();
+
+        if (compactionIntervalMillis > 0) {
+            this.compactor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "state-machine-file-compaction");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.compactor.scheduleWithFixedDelay(this::compactSafely,
+                                                  compactionIntervalMillis,
+                                                  compactionIntervalMillis,
+                                                  TimeUnit.MILLISECONDS);
+        } else {
+            this.compactor = null;
+        }
+    }
+
+    @Override
+    public void write(StateMachineContext<StatesT, EventsT> context, UUID id) throws Exception {
+        byte[] payload = codec.encode(context);
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new StateMachinePersistException(PersisterErrorInfo.STATE_MACHINE_PERSIST_IS_CLOSED);
+            }
+            append(id, payload, (int) crc.getValue());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public StateMachineContext<StatesT, EventsT> read(UUID id) throws Exception {
+        Location location = index.get(id);
+        if (location == null) {
+            return null;
+        }
+        return codec.decode(location.segment.read(location.offset + HEADER_SIZE, location.length));
+    }
+
+    /**
+     * Copy live records from sealed segments with a lot of garbage
+     * to the active segment and delete these segments.
+     *
+     * @throws IOException if unable to write or delete segment files
+     */
+    public synchronized void compact() throws IOException {
+        for (Segment segment : sealedSegments()) {
+            if (segment.liveBytes.get() >= segment.size * COMPACTION_THRESHOLD) {
+                continue;
+            }
+            int offset = 0;
+            while (offset < segment.size) {
+                int length = segment.buffer.getInt(offset);
+                UUID id = new UUID(segment.buffer.getLong(offset + 4), segment.buffer.getLong(offset + 12));
+                writeLock.lock();
+                try {
+                    if (closed) {
+                        return;
+                    }
+                    Location location = index.get(id);
+                    if (location != null && location.segment == segment && location.offset == offset) {
+                        append(id,
+                               segment.read(offset + HEADER_SIZE, length),
+                               segment.buffer.getInt(offset + 20));
+                    }
+                } finally {
+                    writeLock.unlock();
+                }
+                offset += HEADER_SIZE + length;
+            }
+            writeLock.lock();
+            try {
+                if (closed) {
+                    return;
+                }
+                active.buffer.force();
+                segments.remove(segment);
+            } finally {
+                writeLock.unlock();
+            }
+            Files.delete(segment.path);
+            log.debug("segment {} is compacted", segment.path);
+        }
+    }
+
+    /**
+     * Reject next writes, wait for the end of a running compaction
+     * and flush all segments to the disk.
+     */
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (compactor != null) {
+            compactor.shutdownNow();
+            awaitCompaction();
+        }
+    }
+
+    /**
+     * @return number of segment files
+     */
+    public int getSegmentsNumber() {
+        return segments.size();
+    }
+
+    /**
+     * The size of a sealed segment isn't changed, so it's read without the write lock.
+     */
+    private List<Segment> sealedSegments() {
+        writeLock.lock();
+        try {
+            List<Segment> sealed = new ArrayList<>(segments);
+            sealed.remove(active);
+            return sealed;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void awaitCompaction() {
+        try {
+            if (!compactor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                log.warn("the compaction of segments in {} isn't finished on close", directory);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(UUID id, byte[] payload, int crc) throws IOException {
+        int recordSize = HEADER_SIZE + payload.length;
+        if (active == null || active.size + recordSize > active.capacity) {
+            roll(recordSize);
+        }
+
+        int offset = active.size;
+        ByteBuffer buffer = active.buffer;
+        buffer.putLong(offset + 4, id.getMostSignificantBits());
+        buffer.putLong(offset + 12, id.getLeastSignificantBits());
+        buffer.putInt(offset + 20, crc);
+        ByteBuffer target = buffer.duplicate();
+        target.position(offset + HEADER_SIZE);
+        target.put(payload);
+        // the length is written last, a record without the length isn't visible on recovery:
+        buffer.putInt(offset, payload.length);
+        active.size += recordSize;
+        if (forceOnWrite) {
+            active.buffer.force();
+        }
+
+        Location previous = index.put(id, new Location(active, offset, payload.length));
+        active.liveBytes.addAndGet(recordSize);
+        if (previous != null) {
+            previous.segment.liveBytes.addAndGet(-(HEADER_SIZE + previous.length));
+        }
+    }
+
+    private void roll(int recordSize) throws IOException {
+        if (active != null) {
+            // seal the segment:
+            active.buffer.force();
+        }
+        long id = active == null ? 0 : active.id + 1;
+        Segment segment = Segment.open(directory.resolve(segmentName(id)), id, Math.max(segmentSize, recordSize + 4));
+        segments.add(segment);
+        active = segment;
+    }
+
+    private void recover() throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                                                                     SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null);
+
+        for (Path path : paths) {
+            Segment segment = Segment.open(path, segmentId(path), (int) Files.size(path));
+            scan(segment);
+            segments.add(segment);
+            active = segment;
+        }
+    }
+
+    private void scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        boolean torn = false;
+        while (offset + HEADER_SIZE <= segment.capacity) {
+            int length = buffer.getInt(offset);
+            if (length == 0) {
+                break;
+            }
+            if (length < 0 || offset + HEADER_SIZE + length > segment.capacity ||
+                !isValid(segment, offset, length)) {
+                log.warn("invalid record in {} at {}, the tail of the segment is dropped", segment.path, offset);
+                torn = true;
+                break;
+            }
+            UUID id = new UUID(buffer.getLong(offset + 4), buffer.getLong(offset + 12));
+            Location previous = index.put(id, new Location(segment, offset, length));
+            segment.liveBytes.addAndGet(HEADER_SIZE + length);
+            if (previous != null) {
+                previous.segment.liveBytes.addAndGet(-(HEADER_SIZE + previous.length));
+            }
+            offset += HEADER_SIZE + length;
+        }
+        segment.size = offset;
+        if (torn) {
+            // clean the tail, so it can't be mistaken for a record after next writes:
+            for (int i = offset; i < segment.capacity; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            segment.buffer.force();
+        }
+    }
+
+    private boolean isValid(Segment segment, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(segment.read(offset + HEADER_SIZE, length));
+        return (int) crc.getValue() == segment.buffer.getInt(offset + 20);
+    }
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (Exception e) {
+            log.error("unable to compact segments in " + directory, e);
+        }
+    }
+
+    private static String segmentName(long id) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX);
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Segment {
+
+        private final long id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private final int capacity;
+        private final AtomicLong liveBytes = new AtomicLong();
+        // changed only under the write lock:
+        private int size;
+
+        private Segment(long id, Path path, MappedByteBuffer buffer, int capacity) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+            this.capacity = capacity;
+        }
+
+        static Segment open(Path path, long id, int capacity) throws IOException {
+            try (FileChannel channel = FileChannel.open(path,
+                                                        StandardOpenOption.CREATE,
+                                                        StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                // the mapping stays valid after the channel is closed:
+                return new Segment(id, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity), capacity);
+            }
+        }
+
+        byte[] read(int offset, int length) {
+            byte[] bytes = new byte[length];
+            ByteBuffer source = buffer.duplicate();
+            source.position(offset);
+            source.get(bytes);
+            return bytes;
+        }
+    }
+
+    private static class Location {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        private Location(Segment segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
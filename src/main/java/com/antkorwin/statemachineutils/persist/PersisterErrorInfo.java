@@ -10,7 +10,11 @@ import com.antkorwin.statemachineutils.service.ErrorInfoUnique;
  */
 @ErrorInfoUnique
 public enum PersisterErrorInfo implements ErrorInfo{
-    COULD_NOT_READ_STATEMACHINE_FROM_PERSIST("could not read the StateMachine form the Persist");
+    COULD_NOT_READ_STATEMACHINE_FROM_PERSIST("could not read the StateMachine form the Persist"),
+    STALE_STATE_MACHINE_VERSION("the StateMachine was changed by another writer since it was read"),
+    UNABLE_TO_ENCODE_STATE_MACHINE_CONTEXT("unable to encode the StateMachine context"),
+    UNABLE_TO_DECODE_STATE_MACHINE_CONTEXT("unable to decode the StateMachine context"),
+    STATE_MACHINE_PERSIST_IS_CLOSED("the StateMachinePersist is closed");
 
     private static final int BASE = 2000;
     private String msg;
@@ -0,0 +1,18 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachineContext;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * Converts a state machine context to bytes
+ * in order to store it in a database.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface StateMachineContextCodec<StatesT, EventsT> {
+
+    byte[] encode(StateMachineContext<StatesT, EventsT> context) throws Exception;
+
+    StateMachineContext<StatesT, EventsT> decode(byte[] bytes) throws Exception;
+}
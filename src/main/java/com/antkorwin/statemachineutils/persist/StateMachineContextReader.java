@@ -0,0 +1,21 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachineContext;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * A persister which can read the persisted context of a state machine
+ * without a restore of the machine, the machine restored by the persister
+ * is equal to the machine reset to this context.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface StateMachineContextReader<StatesT, EventsT, IdentifierT> {
+
+    /**
+     * @param contextObj identifier of the state machine
+     * @return persisted context of the state machine, or null if it's not found
+     */
+    StateMachineContext<StatesT, EventsT> readContext(IdentifierT contextObj) throws Exception;
+}
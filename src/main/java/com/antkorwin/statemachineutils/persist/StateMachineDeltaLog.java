@@ -0,0 +1,48 @@
+package com.antkorwin.statemachineutils.persist;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Storage of encoded deltas of state machines, used by the {@link DeltaStateMachinePersist}.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface StateMachineDeltaLog {
+
+    /**
+     * Append a delta to the log of the machine.
+     * Throws the {@link StateMachinePersistException} with the
+     * {@link PersisterErrorInfo#STALE_STATE_MACHINE_VERSION} if the log
+     * already has a delta with this sequence number.
+     *
+     * @param id       identifier of the machine
+     * @param sequence number of the delta, numbers of the machine start from one and grow by one,
+     *                 also through snapshots
+     * @param delta    encoded delta
+     */
+    void append(UUID id, long sequence, byte[] delta);
+
+    /**
+     * @param id            identifier of the machine
+     * @param afterSequence sequence number of the last delta folded in the snapshot
+     * @return deltas of the machine after the sequence number, in the order of their sequence numbers
+     */
+    List<byte[]> read(UUID id, long afterSequence);
+
+    /**
+     * @param id identifier of the machine
+     * @return sequence number of the last delta of the machine, or zero if the log is empty
+     */
+    long lastSequence(UUID id);
+
+    /**
+     * Remove deltas of the machine, after they are folded in a snapshot.
+     *
+     * @param id         identifier of the machine
+     * @param toSequence sequence number of the last delta folded in the snapshot
+     */
+    void clear(UUID id, long toSequence);
+}
@@ -0,0 +1,40 @@
+package com.antkorwin.statemachineutils.persist;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Append-only storage of encoded events of state machines,
+ * used by the {@link EventSourcedStateMachinePersister}.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface StateMachineEventLog {
+
+    /**
+     * Append events to the log of the machine.
+     * Throws the {@link StateMachinePersistException} with the
+     * {@link PersisterErrorInfo#STALE_STATE_MACHINE_VERSION} if the log
+     * already has an event with one of these sequence numbers.
+     *
+     * @param id            identifier of the machine
+     * @param firstSequence sequence number of the first event, numbers of the log start from one
+     * @param events        encoded events
+     */
+    void append(UUID id, long firstSequence, List<byte[]> events);
+
+    /**
+     * @param id            identifier of the machine
+     * @param afterSequence sequence number of the last already known event
+     * @return events of the machine after the sequence number, in the order of their sequence numbers
+     */
+    List<byte[]> read(UUID id, long afterSequence);
+
+    /**
+     * @param id identifier of the machine
+     * @return sequence number of the last event of the machine, or zero if the log is empty
+     */
+    long lastSequence(UUID id);
+}
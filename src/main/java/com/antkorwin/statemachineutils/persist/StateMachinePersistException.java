@@ -0,0 +1,20 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.commonutils.exceptions.BaseException;
+import com.antkorwin.commonutils.validation.ErrorInfo;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachinePersistException extends BaseException {
+
+    public StateMachinePersistException(ErrorInfo errorInfo) {
+        super(errorInfo);
+    }
+
+    public StateMachinePersistException(ErrorInfo errorInfo, Throwable cause) {
+        super(errorInfo, cause);
+    }
+}
@@ -0,0 +1,89 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.springframework.statemachine.StateMachineContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Created on 18.10.2026.
+ * <p>
+ * Version of the persisted context of a state machine. A versioned persist
+ * (e.g. the {@link JdbcStateMachinePersist}) returns it in the {@link #HEADER}
+ * of the read context, a persister passes the same object in the headers of
+ * the next written context of this machine. The persist compares the stored
+ * version with it and advances it after the write, so each reader of the machine
+ * keeps its own version and a write after a write of another reader is rejected.
+ * <p>
+ * A version without a value belongs to a machine which isn't persisted yet.
+ * Versions are passed only to a {@link VersionedStateMachinePersist},
+ * codecs don't write this header, it isn't a part of the machine.
+ *
+ * @author Korovin Anatoliy
+ */
+public final class StateMachineVersion {
+
+    public static final String HEADER = "statemachine-utils.version";
+
+    private volatile Long value;
+
+    /**
+     * Version of a machine which isn't persisted yet.
+     */
+    public StateMachineVersion() {
+    }
+
+    public StateMachineVersion(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @return the version, or null if the machine isn't persisted yet
+     */
+    public Long get() {
+        return value;
+    }
+
+    public void set(long value) {
+        this.value = value;
+    }
+
+    /**
+     * @return true if the persist checks versions of written contexts
+     */
+    public static boolean isSupportedBy(Object persist) {
+        return persist instanceof VersionedStateMachinePersist &&
+               ((VersionedStateMachinePersist) persist).isVersioned();
+    }
+
+    /**
+     * @param context context of a state machine
+     * @return version from headers of the context, or null if the context hasn't it
+     */
+    public static StateMachineVersion of(StateMachineContext<?, ?> context) {
+        Map<String, Object> headers = context.getEventHeaders();
+        Object version = headers == null ? null : headers.get(HEADER);
+        return version instanceof StateMachineVersion ? (StateMachineVersion) version : null;
+    }
+
+    /**
+     * @return a copy of headers with the version
+     */
+    public static Map<String, Object> withVersion(Map<String, Object> headers, StateMachineVersion version) {
+        Map<String, Object> result = headers == null ? new HashMap<>() : new HashMap<>(headers);
+        result.put(HEADER, version);
+        return result;
+    }
+
+    /**
+     * @return headers without the version, the same map if it hasn't the version
+     */
+    public static Map<String, Object> withoutVersion(Map<String, Object> headers) {
+        if (headers == null || !headers.containsKey(HEADER)) {
+            return headers;
+        }
+        Map<String, Object> result = new HashMap<>(headers);
+        result.remove(HEADER);
+        return result;
+    }
+}
@@ -0,0 +1,18 @@
+package com.antkorwin.statemachineutils.persist;
+
+/**
+ * Created on 18.10.2026.
+ * <p>
+ * StateMachinePersist which checks the {@link StateMachineVersion} of written
+ * contexts, persisters pass versions only to such persists.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface VersionedStateMachinePersist {
+
+    /**
+     * @return true if written contexts should carry versions of the read ones,
+     * a decorator returns the value of the decorated persist
+     */
+    boolean isVersioned();
+}
@@ -0,0 +1,81 @@
+package com.antkorwin.statemachineutils.resolver;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.listener.StateMachineListenerAdapter;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.transition.Transition;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Results of guards of one state machine. The listener of the machine increments
+ * the version on each change of states or extended state variables, results
+ * of guards are valid only for the version in which they were evaluated.
+ * <p>
+ * A change of a variable value in place (e.g. adding an item to a list
+ * in the extended state) isn't visible for the listener, so results
+ * are valid only for guards which depend on immutable values.
+ *
+ * @author Korovin Anatoliy
+ */
+class GuardResults<StatesT, EventsT> extends StateMachineListenerAdapter<StatesT, EventsT> {
+
+    private final Map<Transition<StatesT, EventsT>, Boolean> results = new IdentityHashMap<>();
+    private long version;
+    private long resultsVersion;
+
+    /**
+     * @return current version of the machine
+     */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param transition transition of the machine
+     * @return result of the guard of the transition in the current version, or null if unknown
+     */
+    synchronized Boolean get(Transition<StatesT, EventsT> transition) {
+        if (resultsVersion != version) {
+            results.clear();
+            resultsVersion = version;
+        }
+        return results.get(transition);
+    }
+
+    /**
+     * Keep the result of the guard, unless the machine was changed after the evaluation started.
+     *
+     * @param transition transition of the machine
+     * @param result     result of the guard
+     * @param version    version of the machine at the start of the evaluation
+     */
+    synchronized void put(Transition<StatesT, EventsT> transition, boolean result, long version) {
+        if (version == this.version && resultsVersion == this.version) {
+            results.put(transition, result);
+        }
+    }
+
+    @Override
+    public synchronized void stateChanged(State<StatesT, EventsT> from, State<StatesT, EventsT> to) {
+        version++;
+    }
+
+    @Override
+    public synchronized void extendedStateChanged(Object key, Object value) {
+        version++;
+    }
+
+    @Override
+    public synchronized void stateMachineStarted(StateMachine<StatesT, EventsT> stateMachine) {
+        version++;
+    }
+
+    @Override
+    public synchronized void stateMachineStopped(StateMachine<StatesT, EventsT> stateMachine) {
+        version++;
+    }
+}
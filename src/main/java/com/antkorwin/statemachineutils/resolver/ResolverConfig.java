@@ -1,5 +1,6 @@
 package com.antkorwin.statemachineutils.resolver;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -12,7 +13,8 @@ import org.springframework.context.annotation.Configuration;
 public class ResolverConfig {
 
     @Bean
-    public <S,E> StateMachineResolver<S,E> stateMachineResolver(){
-        return new StateMachineResolverImpl<>();
+    public <S,E> StateMachineResolver<S,E> stateMachineResolver(
+            @Value("${statemachine-utils.resolver.memoize-guards:false}") boolean memoizeGuards){
+        return new StateMachineResolverImpl<>(memoizeGuards);
     }
 }
@@ -0,0 +1,125 @@
+package com.antkorwin.statemachineutils.resolver;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.statemachine.ExtendedState;
+import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.transition.Transition;
+
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Mutable StateContext which is passed to guards by the resolver. The same instance
+ * is reused for all guards evaluated by a thread, so a guard must not keep the context.
+ * Like the context built by the resolver before, it has no message, event and headers.
+ * <p>
+ * While the resolver works with a persisted context, the machine is restored
+ * only on the first call of the {@link #getStateMachine()}.
+ *
+ * @author Korovin Anatoliy
+ */
+final class ResolverStateContext<StatesT, EventsT> implements StateContext<StatesT, EventsT> {
+
+    private StateMachine<StatesT, EventsT> stateMachine;
+    private ExtendedState extendedState;
+    private Supplier<StateMachine<StatesT, EventsT>> stateMachineSupplier;
+    private Transition<StatesT, EventsT> transition;
+
+    void setStateMachine(StateMachine<StatesT, EventsT> stateMachine) {
+        this.stateMachine = stateMachine;
+        this.extendedState = stateMachine.getExtendedState();
+    }
+
+    /**
+     * @param extendedState        extended state of a machine which isn't restored yet
+     * @param stateMachineSupplier restores the machine if a guard asks for it
+     */
+    void setStateMachine(ExtendedState extendedState, Supplier<StateMachine<StatesT, EventsT>> stateMachineSupplier) {
+        this.extendedState = extendedState;
+        this.stateMachineSupplier = stateMachineSupplier;
+    }
+
+    void setTransition(Transition<StatesT, EventsT> transition) {
+        this.transition = transition;
+    }
+
+    void clear() {
+        this.stateMachine = null;
+        this.extendedState = null;
+        this.stateMachineSupplier = null;
+        this.transition = null;
+    }
+
+    @Override
+    public Stage getStage() {
+        return Stage.TRANSITION;
+    }
+
+    @Override
+    public Message<EventsT> getMessage() {
+        return null;
+    }
+
+    @Override
+    public EventsT getEvent() {
+        return null;
+    }
+
+    @Override
+    public MessageHeaders getMessageHeaders() {
+        return null;
+    }
+
+    @Override
+    public Object getMessageHeader(Object header) {
+        return null;
+    }
+
+    @Override
+    public ExtendedState getExtendedState() {
+        return extendedState;
+    }
+
+    @Override
+    public Transition<StatesT, EventsT> getTransition() {
+        return transition;
+    }
+
+    @Override
+    public StateMachine<StatesT, EventsT> getStateMachine() {
+        if (stateMachine == null && stateMachineSupplier != null) {
+            setStateMachine(stateMachineSupplier.get());
+        }
+        return stateMachine;
+    }
+
+    @Override
+    public State<StatesT, EventsT> getSource() {
+        return transition.getSource();
+    }
+
+    @Override
+    public Collection<State<StatesT, EventsT>> getSources() {
+        return null;
+    }
+
+    @Override
+    public State<StatesT, EventsT> getTarget() {
+        return transition.getTarget();
+    }
+
+    @Override
+    public Collection<State<StatesT, EventsT>> getTargets() {
+        return null;
+    }
+
+    @Override
+    public Exception getException() {
+        return null;
+    }
+}
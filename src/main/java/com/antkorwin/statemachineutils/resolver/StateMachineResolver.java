@@ -1,8 +1,10 @@
 package com.antkorwin.statemachineutils.resolver;
 
 import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 /**
  * Created on 02.06.2018.
@@ -12,11 +14,31 @@ import java.util.List;
 public interface StateMachineResolver<S, E> {
 
     /**
-     * Evaluate available events from a current state of the state-machine
+     * Evaluate available events from a current state of the state-machine,
+     * with events of transitions from parent states of the current state and
+     * from current states of all orthogonal regions. Each event is returned once.
      *
      * @param stateMachine state machine
      *
      * @return available events collection
      */
     List<E> getAvailableEvents(StateMachine<S, E> stateMachine);
+
+    /**
+     * Evaluate available events of a persisted state-machine from its context,
+     * without a restore of the machine if it's possible.
+     *
+     * @param context              persisted context of the state-machine
+     * @param prototype            a state-machine built by the same factory, which is used
+     *                             as a model of transitions, its own state isn't used
+     * @param stateMachineSupplier restores the state-machine from the context,
+     *                             if guards can't be evaluated without the machine
+     *
+     * @return available events collection
+     */
+    default List<E> getAvailableEvents(StateMachineContext<S, E> context,
+                                       StateMachine<S, E> prototype,
+                                       Supplier<StateMachine<S, E>> stateMachineSupplier) {
+        return getAvailableEvents(stateMachineSupplier.get());
+    }
 }
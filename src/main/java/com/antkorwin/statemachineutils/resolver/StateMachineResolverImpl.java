@@ -2,71 +2,255 @@ package com.antkorwin.statemachineutils.resolver;
 
 
 
-import org.springframework.statemachine.StateContext;
+import org.springframework.statemachine.ExtendedState;
 import org.springframework.statemachine.StateMachine;
-import org.springframework.statemachine.support.DefaultStateContext;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.listener.StateMachineListenerAdapter;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.DefaultExtendedState;
 import org.springframework.statemachine.transition.Transition;
-import org.springframework.statemachine.trigger.Trigger;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
-
-import static java.util.stream.Collectors.toList;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Supplier;
 
 /**
  * Created on 02.06.2018.
+ * <p>
+ * Transitions of a machine are indexed by source states once per machine
+ * instance (see {@link TransitionIndex}), so the resolver checks only
+ * outgoing transitions of active states instead of all transitions.
+ * Active states are current states of all regions and sub-machines with their
+ * ancestors, the ancestry of nested states is also precomputed in the index.
+ * An index is held by a listener of its machine, the resolver keeps only weak
+ * references to machines and their indexes (transitions of sub-machines refer
+ * to the machine), so a machine is collected with its index. A machine reused
+ * by the pool or the cache of the service is indexed once.
+ * <p>
+ * The resolver doesn't allocate anything but the result list on a machine
+ * in a simple state: guards get a reusable {@link ResolverStateContext}
+ * of the calling thread, and the result is sized by the number of candidate transitions.
+ * <p>
+ * With the memoizeGuards option results of guards are kept per machine and transition
+ * until the machine changes its states or extended state variables (see {@link GuardResults}),
+ * so guards which depend only on variables aren't evaluated again on each call.
+ * <p>
+ * Available events of a persisted machine are resolved from its context and
+ * the index of a prototype machine, guards get variables of the context and
+ * the machine is restored only if a guard asks the context for the machine.
  *
  * @author Korovin Anatoliy
  */
 public class StateMachineResolverImpl<StatesT, EventsT> implements StateMachineResolver<StatesT, EventsT> {
 
+    private final Map<StateMachine<StatesT, EventsT>, WeakReference<TransitionIndex<StatesT, EventsT>>> indexes =
+            new WeakHashMap<>();
+
+    private final Map<StateMachine<StatesT, EventsT>, WeakReference<GuardResults<StatesT, EventsT>>> guardResults =
+            new WeakHashMap<>();
+
+    private final ThreadLocal<Workspace<StatesT, EventsT>> workspaces = ThreadLocal.withInitial(Workspace::new);
+
+    private final boolean memoizeGuards;
+
+    public StateMachineResolverImpl() {
+        this(false);
+    }
+
+    /**
+     * @param memoizeGuards keep results of guards until the machine is changed
+     */
+    public StateMachineResolverImpl(boolean memoizeGuards) {
+        this.memoizeGuards = memoizeGuards;
+    }
+
     @Override
     public List<EventsT> getAvailableEvents(StateMachine<StatesT, EventsT> stateMachine) {
 
-        return stateMachine.getTransitions()
-                           .stream()
-                           .filter(t -> isTransitionSourceFromCurrentState(t, stateMachine))
-                           .filter(t -> evaluateGuardCondition(stateMachine, t))
-                           .map(Transition::getTrigger)
-                           .map(Trigger::getEvent)
-                           .collect(toList());
+        TransitionIndex<StatesT, EventsT> index = indexOf(stateMachine);
+        State<StatesT, EventsT> current = stateMachine.getState();
+        if (current == null) {
+            return new ArrayList<>(0);
+        }
+
+        Workspace<StatesT, EventsT> workspace = acquireWorkspace();
+        try {
+            workspace.context.setStateMachine(stateMachine);
+            if (!current.isSubmachineState() && !current.isOrthogonal() && !index.isNested(current.getId())) {
+                List<Transition<StatesT, EventsT>> transitions = index.getTransitions(current.getId());
+                List<EventsT> events = new ArrayList<>(transitions.size());
+                collectEvents(stateMachine, transitions, workspace.context, events);
+                return events;
+            }
+
+            index.collectActiveStates(stateMachine, workspace.activeStates);
+            return collectEvents(stateMachine, index, workspace);
+        } finally {
+            releaseWorkspace(workspace);
+        }
     }
 
+    @Override
+    public List<EventsT> getAvailableEvents(StateMachineContext<StatesT, EventsT> context,
+                                            StateMachine<StatesT, EventsT> prototype,
+                                            Supplier<StateMachine<StatesT, EventsT>> stateMachineSupplier) {
 
-    private boolean isTransitionSourceFromCurrentState(Transition<StatesT, EventsT> transition,
-                                                       StateMachine<StatesT, EventsT> stateMachine) {
+        if (context.getState() == null) {
+            // the machine wasn't started before the persist, it starts in the initial state after a restore:
+            return getAvailableEvents(stateMachineSupplier.get());
+        }
 
-        return stateMachine.getState().getId() == transition.getSource().getId();
+        TransitionIndex<StatesT, EventsT> index = indexOf(prototype);
+        Workspace<StatesT, EventsT> workspace = acquireWorkspace();
+        try {
+            ExtendedState extendedState = context.getExtendedState() == null
+                                          ? new DefaultExtendedState()
+                                          : context.getExtendedState();
+            workspace.context.setStateMachine(extendedState, stateMachineSupplier);
+            index.collectActiveStates(context, workspace.activeStates);
+            return collectEvents(null, index, workspace);
+        } finally {
+            releaseWorkspace(workspace);
+        }
+    }
+
+
+    private Workspace<StatesT, EventsT> acquireWorkspace() {
+        Workspace<StatesT, EventsT> workspace = workspaces.get();
+        if (workspace.inUse) {
+            workspace = new Workspace<>(); // a guard calls the resolver
+        }
+        workspace.inUse = true;
+        return workspace;
+    }
+
+
+    private void releaseWorkspace(Workspace<StatesT, EventsT> workspace) {
+        workspace.activeStates.clear();
+        workspace.context.clear();
+        workspace.inUse = false;
+    }
+
+
+    private List<EventsT> collectEvents(StateMachine<StatesT, EventsT> stateMachine,
+                                        TransitionIndex<StatesT, EventsT> index,
+                                        Workspace<StatesT, EventsT> workspace) {
+
+        List<StatesT> activeStates = workspace.activeStates;
+        int candidates = 0;
+        for (int i = 0; i < activeStates.size(); i++) {
+            candidates += index.getTransitions(activeStates.get(i)).size();
+        }
+        List<EventsT> events = new ArrayList<>(candidates);
+        for (int i = 0; i < activeStates.size(); i++) {
+            collectEvents(stateMachine, index.getTransitions(activeStates.get(i)), workspace.context, events);
+        }
+        return events;
+    }
+
+
+    private TransitionIndex<StatesT, EventsT> indexOf(StateMachine<StatesT, EventsT> stateMachine) {
+        synchronized (indexes) {
+            WeakReference<TransitionIndex<StatesT, EventsT>> reference = indexes.get(stateMachine);
+            TransitionIndex<StatesT, EventsT> index = reference == null ? null : reference.get();
+            if (index == null) {
+                index = TransitionIndex.of(stateMachine);
+                stateMachine.addStateListener(new IndexHolder<>(index));
+                indexes.put(stateMachine, new WeakReference<>(index));
+            }
+            return index;
+        }
+    }
+
+
+    private void collectEvents(StateMachine<StatesT, EventsT> stateMachine,
+                               List<Transition<StatesT, EventsT>> transitions,
+                               ResolverStateContext<StatesT, EventsT> context,
+                               List<EventsT> events) {
+
+        for (int i = 0; i < transitions.size(); i++) {
+            Transition<StatesT, EventsT> transition = transitions.get(i);
+            EventsT event = transition.getTrigger().getEvent();
+            if (!events.contains(event) && evaluateGuardCondition(stateMachine, transition, context)) {
+                events.add(event);
+            }
+        }
     }
 
 
     private boolean evaluateGuardCondition(StateMachine<StatesT, EventsT> stateMachine,
-                                           Transition<StatesT, EventsT> transition) {
+                                           Transition<StatesT, EventsT> transition,
+                                           ResolverStateContext<StatesT, EventsT> context) {
 
         if (transition.getGuard() == null) {
             return true;
         }
 
-        StateContext<StatesT, EventsT> context = makeStateContext(stateMachine, transition);
+        // guards are memoized only for a machine, a listener of the machine invalidates results:
+        GuardResults<StatesT, EventsT> results = memoizeGuards && stateMachine != null
+                                                 ? guardResultsOf(stateMachine)
+                                                 : null;
+        long version = 0;
+        if (results != null) {
+            Boolean result = results.get(transition);
+            if (result != null) {
+                return result;
+            }
+            version = results.getVersion();
+        }
+
+        context.setTransition(transition);
 
+        boolean result;
         try {
-            return transition.getGuard().evaluate(context);
+            result = transition.getGuard().evaluate(context);
         } catch (Exception e) {
-            return false;
+            return false; // isn't memoized, the error can be temporary
+        }
+        if (results != null) {
+            results.put(transition, result, version);
+        }
+        return result;
+    }
+
+
+    private GuardResults<StatesT, EventsT> guardResultsOf(StateMachine<StatesT, EventsT> stateMachine) {
+        synchronized (guardResults) {
+            WeakReference<GuardResults<StatesT, EventsT>> reference = guardResults.get(stateMachine);
+            GuardResults<StatesT, EventsT> results = reference == null ? null : reference.get();
+            if (results == null) {
+                results = new GuardResults<>();
+                stateMachine.addStateListener(results);
+                guardResults.put(stateMachine, new WeakReference<>(results));
+            }
+            return results;
+        }
+    }
+
+
+    /**
+     * Listener which does nothing, it holds the index as long as the machine is used.
+     */
+    private static class IndexHolder<StatesT, EventsT> extends StateMachineListenerAdapter<StatesT, EventsT> {
+
+        private final TransitionIndex<StatesT, EventsT> index;
+
+        private IndexHolder(TransitionIndex<StatesT, EventsT> index) {
+            this.index = index;
         }
     }
 
 
-    private DefaultStateContext<StatesT, EventsT> makeStateContext(StateMachine<StatesT, EventsT> stateMachine,
-                                                                   Transition<StatesT, EventsT> transition) {
+    /**
+     * Objects of the calling thread, which are reused by all calls of the resolver.
+     */
+    private static class Workspace<StatesT, EventsT> {
 
-        return new DefaultStateContext<>(StateContext.Stage.TRANSITION,
-                                         null,
-                                         null,
-                                         stateMachine.getExtendedState(),
-                                         transition,
-                                         stateMachine,
-                                         stateMachine.getState(),
-                                         transition.getTarget(),
-                                         null);
+        private final ResolverStateContext<StatesT, EventsT> context = new ResolverStateContext<>();
+        private final List<StatesT> activeStates = new ArrayList<>();
+        private boolean inUse;
     }
 }
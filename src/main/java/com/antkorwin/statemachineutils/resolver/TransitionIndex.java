@@ -0,0 +1,132 @@
+package com.antkorwin.statemachineutils.resolver;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.region.Region;
+import org.springframework.statemachine.state.AbstractState;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.transition.Transition;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Outgoing transitions of a state machine grouped by identifiers of their source states,
+ * with transitions of sub-machines and regions, and a table of parents of nested states.
+ *
+ * @author Korovin Anatoliy
+ */
+class TransitionIndex<StatesT, EventsT> {
+
+    private final Map<StatesT, List<Transition<StatesT, EventsT>>> transitionsBySource;
+    private final Map<StatesT, StatesT> parents;
+
+    private TransitionIndex(Map<StatesT, List<Transition<StatesT, EventsT>>> transitionsBySource,
+                            Map<StatesT, StatesT> parents) {
+        this.transitionsBySource = transitionsBySource;
+        this.parents = parents;
+    }
+
+    static <StatesT, EventsT> TransitionIndex<StatesT, EventsT> of(StateMachine<StatesT, EventsT> stateMachine) {
+        TransitionIndex<StatesT, EventsT> index = new TransitionIndex<>(new HashMap<>(), new HashMap<>());
+        // a machine built from one configuration keeps transitions of nested states as well as
+        // its sub-machines, so the same transition can be found on a few levels:
+        index.add(stateMachine, null, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return index;
+    }
+
+    /**
+     * @param stateId identifier of the state
+     * @return transitions from the state, in the order of the machine configuration
+     */
+    List<Transition<StatesT, EventsT>> getTransitions(StatesT stateId) {
+        List<Transition<StatesT, EventsT>> transitions = transitionsBySource.get(stateId);
+        return transitions == null ? Collections.emptyList() : transitions;
+    }
+
+    /**
+     * @param stateId identifier of the state
+     * @return true if the state is a state of a sub-machine or a region
+     */
+    boolean isNested(StatesT stateId) {
+        return parents.containsKey(stateId);
+    }
+
+    /**
+     * Active states of the machine: identifiers of current states in all regions
+     * and identifiers of all their ancestors, each only once.
+     *
+     * @param stateMachine state machine
+     * @param result       list to add identifiers of states
+     */
+    void collectActiveStates(StateMachine<StatesT, EventsT> stateMachine, List<StatesT> result) {
+        State<StatesT, EventsT> current = stateMachine.getState();
+        if (current == null) {
+            return;
+        }
+        for (StatesT id : current.getIds()) {
+            for (StatesT state = id; state != null && !result.contains(state); state = parents.get(state)) {
+                result.add(state);
+            }
+        }
+    }
+
+    /**
+     * Active states of a persisted machine: states of the context and its childs
+     * (sub-machines and regions) and identifiers of all their ancestors, each only once.
+     *
+     * @param context context of the machine
+     * @param result  list to add identifiers of states
+     */
+    void collectActiveStates(StateMachineContext<StatesT, EventsT> context, List<StatesT> result) {
+        for (StatesT state = context.getState(); state != null && !result.contains(state); state = parents.get(state)) {
+            result.add(state);
+        }
+        List<StateMachineContext<StatesT, EventsT>> childs = context.getChilds();
+        if (childs != null) {
+            for (StateMachineContext<StatesT, EventsT> child : childs) {
+                collectActiveStates(child, result);
+            }
+        }
+    }
+
+    private void add(StateMachine<StatesT, EventsT> stateMachine,
+                     StatesT parent,
+                     Set<Transition<StatesT, EventsT>> indexed) {
+
+        for (Transition<StatesT, EventsT> transition : stateMachine.getTransitions()) {
+            if (transition.getSource() == null
+                || transition.getTrigger() == null
+                || transition.getTrigger().getEvent() == null) {
+                continue; // triggerless and timer transitions can't be fired by an event
+            }
+            if (!indexed.add(transition)) {
+                continue;
+            }
+            transitionsBySource.computeIfAbsent(transition.getSource().getId(), id -> new ArrayList<>())
+                               .add(transition);
+        }
+
+        for (State<StatesT, EventsT> state : stateMachine.getStates()) {
+            if (parent != null) {
+                parents.put(state.getId(), parent);
+            }
+            if (state.isSubmachineState()) {
+                add(((AbstractState<StatesT, EventsT>) state).getSubmachine(), state.getId(), indexed);
+            } else if (state.isOrthogonal()) {
+                Collection<Region<StatesT, EventsT>> regions = ((AbstractState<StatesT, EventsT>) state).getRegions();
+                for (Region<StatesT, EventsT> region : regions) {
+                    add((StateMachine<StatesT, EventsT>) region, state.getId(), indexed);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.antkorwin.statemachineutils.service;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * How the XStateMachineService executes processing functions
+ * of the same state machine.
+ *
+ * @author Korovin Anatoliy
+ */
+public enum ExecutionMode {
+
+    /**
+     * A processing function is executed in the calling thread,
+     * which waits for a lock of the state machine.
+     */
+    LOCKING,
+
+    /**
+     * A processing function is put in the mailbox of the state machine
+     * and executed by the {@link MailboxExecutor}, the calling thread
+     * just waits for a result.
+     */
+    MAILBOX
+}
@@ -0,0 +1,324 @@
+package com.antkorwin.statemachineutils.service;
+
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapperException;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static com.antkorwin.statemachineutils.service.XServiceErrorInfo.STATE_MACHINE_MAILBOX_IS_FULL;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Executor with a mailbox per state machine: tasks of the same machine
+ * are executed strictly one after another (single writer), tasks of
+ * different machines are executed in parallel on the shared pool.
+ * A mailbox exists only while it has tasks, and a thread of the pool
+ * is never blocked waiting for a busy machine.
+ * <p>
+ * Mailboxes are bounded, if the mailbox of a machine is full then a new
+ * task is rejected with the {@link XStateMachineException}. If the pool
+ * rejects a drain of the mailbox, then waiting tasks of the mailbox fail
+ * with the {@link RejectedExecutionException}.
+ * <p>
+ * The evaluateExclusively method runs a task in the caller thread with exclusive
+ * access to a few machines: it waits while their mailboxes reach its turn
+ * and holds them until the task is done, without blocking threads of the pool.
+ *
+ * @author Korovin Anatoliy
+ */
+public class MailboxExecutor {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    /**
+     * Max number of tasks executed from one mailbox before
+     * the thread is given back to the pool (fairness between machines).
+     */
+    private static final int THROUGHPUT = 32;
+
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final int capacity;
+    private final ConcurrentHashMap<UUID, Mailbox> mailboxes = new ConcurrentHashMap<>();
+    private final ThreadLocal<Boolean> insideMailbox = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * @param poolSize number of threads in the own pool of this executor
+     * @param capacity max number of waiting tasks in the mailbox of one machine
+     */
+    public MailboxExecutor(int poolSize, int capacity) {
+        this(Executors.newFixedThreadPool(poolSize), capacity, true);
+    }
+
+    /**
+     * @param executor shared executor, it isn't stopped by this mailbox executor
+     * @param capacity max number of waiting tasks in the mailbox of one machine
+     */
+    public MailboxExecutor(Executor executor, int capacity) {
+        this(executor, capacity, false);
+    }
+
+    private MailboxExecutor(Executor executor, int capacity, boolean ownExecutor) {
+        this.executor = executor;
+        this.capacity = capacity;
+        this.ownExecutor = ownExecutor ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * Put the task in the mailbox of the state machine.
+     *
+     * @param machineId identifier of the state machine
+     * @param task      task to execute
+     * @param <ResultT> type of the task result
+     * @return future which completes with the result of the task
+     * @throws XStateMachineException if the mailbox of this machine is full
+     */
+    public <ResultT> CompletableFuture<ResultT> submit(UUID machineId, Supplier<ResultT> task) {
+
+        CompletableFuture<ResultT> result = new CompletableFuture<>();
+        enqueue(machineId, new Task() {
+            @Override
+            void run() {
+                try {
+                    result.complete(task.get());
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            void reject(Throwable cause) {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Evaluate the task in the current thread, while mailboxes of the state machines are held:
+     * tasks submitted before are done and next tasks wait until this task is done.
+     * Mailboxes are acquired in the order of identifiers, so concurrent calls don't deadlock.
+     *
+     * @param machineIds identifiers of the state machines
+     * @param timeout    max time to wait for mailboxes, or null to wait as long as necessary
+     * @param task       task to evaluate
+     * @param <ResultT>  type of the task result
+     * @return result of the task
+     * @throws StateMachineWrapperException if mailboxes are not acquired in time
+     */
+    public <ResultT> ResultT evaluateExclusively(Collection<UUID> machineIds, Duration timeout, Supplier<ResultT> task) {
+
+        List<UUID> ids = machineIds.stream().distinct().sorted().collect(toList());
+        long deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+        List<UUID> held = new ArrayList<>(ids.size());
+        boolean inside = insideMailbox.get();
+        try {
+            for (UUID id : ids) {
+                hold(id, timeout == null ? -1 : Math.max(0, deadline - System.nanoTime()));
+                held.add(id);
+            }
+            insideMailbox.set(true);
+            return task.get();
+        } finally {
+            insideMailbox.set(inside);
+            for (UUID id : held) {
+                schedule(id); // the mailbox continues with next tasks
+            }
+        }
+    }
+
+    /**
+     * @return true if the current thread executes a task of a mailbox or holds mailboxes,
+     * in this case it shouldn't wait for mailboxes, because its own mailbox waits for it
+     */
+    public boolean isInsideMailbox() {
+        return insideMailbox.get();
+    }
+
+    /**
+     * @param machineId identifier of the state machine
+     * @return number of tasks waiting in the mailbox of this machine
+     */
+    public int getQueueDepth(UUID machineId) {
+        Mailbox mailbox = mailboxes.get(machineId);
+        return mailbox == null ? 0 : mailbox.depth;
+    }
+
+    /**
+     * @return number of tasks waiting in all mailboxes
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Mailbox mailbox : mailboxes.values()) {
+            depth += mailbox.depth;
+        }
+        return depth;
+    }
+
+    /**
+     * Stop the own thread pool of this executor,
+     * already submitted tasks will be completed.
+     */
+    public void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private void enqueue(UUID machineId, Task task) {
+        // a mailbox is in the map only while its drain is scheduled or it's held,
+        // so we need to start a drain only for a new mailbox:
+        boolean[] created = new boolean[1];
+        mailboxes.compute(machineId, (id, current) -> {
+            Mailbox box = current == null ? new Mailbox() : current;
+            if (box.tasks.size() >= capacity) {
+                throw new XStateMachineException(STATE_MACHINE_MAILBOX_IS_FULL);
+            }
+            box.tasks.add(task);
+            box.depth = box.tasks.size();
+            created[0] = current == null;
+            return box;
+        });
+
+        if (created[0]) {
+            schedule(machineId);
+        }
+    }
+
+    private void schedule(UUID machineId) {
+        try {
+            executor.execute(() -> drain(machineId));
+        } catch (RejectedExecutionException e) {
+            // nobody drains the mailbox, so its tasks would never complete:
+            Mailbox box = mailboxes.remove(machineId);
+            if (box != null) {
+                box.tasks.forEach(task -> task.reject(e));
+            }
+        }
+    }
+
+    /**
+     * Wait until all previous tasks of the mailbox are done, then the mailbox
+     * doesn't run next tasks until the next drain is scheduled.
+     *
+     * @param timeoutNanos max time to wait, or a negative value to wait as long as necessary
+     */
+    private void hold(UUID machineId, long timeoutNanos) {
+        Hold hold = new Hold();
+        enqueue(machineId, hold);
+        try {
+            if (timeoutNanos < 0) {
+                hold.acquired.get();
+            } else {
+                hold.acquired.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        } catch (TimeoutException e) {
+            if (hold.acquired.cancel(false)) {
+                throw new StateMachineWrapperException(UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME);
+            }
+            // the mailbox is acquired at the same moment
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            if (hold.acquired.cancel(false)) {
+                throw new XStateMachineException(e);
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause(); // the pool rejected the drain
+            }
+            throw new XStateMachineException(e.getCause());
+        }
+    }
+
+    private void drain(UUID machineId) {
+        boolean inside = insideMailbox.get();
+        insideMailbox.set(true);
+        try {
+            for (int i = 0; i < THROUGHPUT; i++) {
+                Task task = poll(machineId);
+                if (task == null) {
+                    return;
+                }
+                if (task instanceof Hold) {
+                    if (((Hold) task).acquired.complete(null)) {
+                        return; // the holder schedules the next drain
+                    }
+                    continue; // the holder didn't wait for its turn
+                }
+                task.run();
+            }
+        } finally {
+            insideMailbox.set(inside);
+        }
+        // give other mailboxes a chance to run:
+        schedule(machineId);
+    }
+
+    /**
+     * Take the next task of the mailbox, or remove the empty mailbox.
+     */
+    private Task poll(UUID machineId) {
+        Task[] next = new Task[1];
+        mailboxes.computeIfPresent(machineId, (id, box) -> {
+            next[0] = box.tasks.poll();
+            box.depth = box.tasks.size();
+            return next[0] == null ? null : box;
+        });
+        return next[0];
+    }
+
+    /**
+     * Queue of one state machine, it is changed only inside
+     * of the compute functions of the mailboxes map.
+     */
+    private static class Mailbox {
+
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private volatile int depth;
+    }
+
+    private abstract static class Task {
+
+        abstract void run();
+
+        /**
+         * The task will never run, because the pool rejected the drain of its mailbox.
+         */
+        abstract void reject(Throwable cause);
+    }
+
+    /**
+     * A turn of the caller thread in the mailbox.
+     */
+    private static class Hold extends Task {
+
+        private final CompletableFuture<Void> acquired = new CompletableFuture<>();
+
+        @Override
+        void run() {
+            // the drain completes the acquired future instead
+        }
+
+        @Override
+        void reject(Throwable cause) {
+            acquired.completeExceptionally(cause);
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.antkorwin.statemachineutils.service;
+
+import org.springframework.statemachine.StateMachine;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Bounded cache of restored state machines, which are equal to their persisted versions.
+ * <p>
+ * The service borrows a machine from the cache, applies a processing function
+ * and releases the machine back after the machine is persisted. While a machine is
+ * borrowed nobody else can get the same instance, if somebody borrows the same
+ * machine concurrently (it's restored from the persist in this case) or the machine
+ * is changed directly through the update method, then the entry is invalidated,
+ * so the cache stays coherent with writes done through the service.
+ * <p>
+ * The least recently used machines are evicted when the cache exceeds the max size,
+ * and machines are evicted after the idle timeout.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachineCache<StatesT, EventsT> {
+
+    private final int maxSize;
+    private final long idleTimeoutNanos;
+
+    // in access order, so the eldest entry is the least recently used:
+    private final LinkedHashMap<UUID, Entry<StatesT, EventsT>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+
+    /**
+     * @param maxSize           max number of cached machines, zero to disable the cache
+     * @param idleTimeoutMillis time after the last access, when a machine is evicted,
+     *                          zero to keep machines until they're evicted by the size
+     */
+    public StateMachineCache(int maxSize, long idleTimeoutMillis) {
+        this.maxSize = maxSize;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+    }
+
+    /**
+     * @return cache which doesn't keep machines
+     */
+    public static <StatesT, EventsT> StateMachineCache<StatesT, EventsT> disabled() {
+        return new StateMachineCache<>(0, 0);
+    }
+
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Borrow a cached machine, each call must be followed
+     * by the {@link #release(UUID, StateMachine)}.
+     *
+     * @param id identifier of the machine
+     * @return cached machine, or null if the machine should be restored from the persist
+     */
+    public synchronized StateMachine<StatesT, EventsT> borrow(UUID id) {
+        if (!isEnabled()) {
+            return null;
+        }
+        long now = System.nanoTime();
+        evictIdle(now);
+
+        Entry<StatesT, EventsT> entry = entries.get(id);
+        if (entry == null) {
+            entry = new Entry<>();
+            entries.put(id, entry);
+        } else if (entry.borrowers > 0) {
+            entry.contended = true;
+        }
+        entry.borrowers++;
+        entry.lastAccess = now;
+        return takeMachine(entry);
+    }
+
+    /**
+     * Return a borrowed machine to the cache.
+     *
+     * @param id      identifier of the machine
+     * @param machine machine which is equal to the persisted version, or null
+     *                if the state of the machine is unknown
+     * @return true if the machine is kept in the cache
+     */
+    public synchronized boolean release(UUID id, StateMachine<StatesT, EventsT> machine) {
+        if (!isEnabled()) {
+            return false;
+        }
+        Entry<StatesT, EventsT> entry = entries.get(id);
+        if (entry == null) {
+            return false;
+        }
+        entry.borrowers--;
+        boolean kept = false;
+        if (!entry.contended && machine != null) {
+            entry.machine = machine;
+            entry.lastAccess = System.nanoTime();
+            kept = true;
+        }
+        if (entry.borrowers == 0) {
+            entry.contended = false;
+            if (entry.machine == null) {
+                entries.remove(id);
+            }
+        }
+        evictOverSize();
+        return kept;
+    }
+
+    /**
+     * Take a cached machine out of the cache, the machine isn't returned back.
+     *
+     * @param id identifier of the machine
+     * @return cached machine or null
+     */
+    public synchronized StateMachine<StatesT, EventsT> take(UUID id) {
+        if (!isEnabled()) {
+            return null;
+        }
+        evictIdle(System.nanoTime());
+        Entry<StatesT, EventsT> entry = entries.get(id);
+        if (entry == null) {
+            missCount++;
+            return null;
+        }
+        StateMachine<StatesT, EventsT> machine = takeMachine(entry);
+        if (entry.borrowers == 0) {
+            entries.remove(id);
+        }
+        return machine;
+    }
+
+    /**
+     * Remove a cached machine, because its persisted version is changed.
+     *
+     * @param id identifier of the machine
+     */
+    public synchronized void invalidate(UUID id) {
+        if (!isEnabled()) {
+            return;
+        }
+        Entry<StatesT, EventsT> entry = entries.get(id);
+        if (entry == null) {
+            return;
+        }
+        entry.machine = null;
+        if (entry.borrowers > 0) {
+            entry.contended = true;
+        } else {
+            entries.remove(id);
+        }
+    }
+
+    public synchronized StateMachineCacheStats getStats() {
+        int size = 0;
+        for (Entry<StatesT, EventsT> entry : entries.values()) {
+            if (entry.machine != null) {
+                size++;
+            }
+        }
+        return new StateMachineCacheStats(hitCount, missCount, evictionCount, size);
+    }
+
+    private StateMachine<StatesT, EventsT> takeMachine(Entry<StatesT, EventsT> entry) {
+        StateMachine<StatesT, EventsT> machine = entry.machine;
+        if (machine == null) {
+            missCount++;
+            return null;
+        }
+        entry.machine = null;
+        hitCount++;
+        return machine;
+    }
+
+    private void evictIdle(long now) {
+        if (idleTimeoutNanos <= 0) {
+            return;
+        }
+        Iterator<Entry<StatesT, EventsT>> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry<StatesT, EventsT> entry = iterator.next();
+            if (now - entry.lastAccess < idleTimeoutNanos) {
+                // other entries were accessed later
+                return;
+            }
+            if (entry.machine != null && entry.borrowers == 0) {
+                iterator.remove();
+                evictionCount++;
+            }
+        }
+    }
+
+    private void evictOverSize() {
+        int excess = entries.size() - maxSize;
+        Iterator<Entry<StatesT, EventsT>> iterator = entries.values().iterator();
+        while (excess > 0 && iterator.hasNext()) {
+            Entry<StatesT, EventsT> entry = iterator.next();
+            if (entry.borrowers == 0) {
+                iterator.remove();
+                evictionCount++;
+                excess--;
+            }
+        }
+    }
+
+    private static class Entry<StatesT, EventsT> {
+        private StateMachine<StatesT, EventsT> machine;
+        private long lastAccess = System.nanoTime();
+        private int borrowers;
+        private boolean contended;
+    }
+}
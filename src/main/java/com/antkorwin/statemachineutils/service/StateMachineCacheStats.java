@@ -0,0 +1,57 @@
+package com.antkorwin.statemachineutils.service;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Statistics of the {@link StateMachineCache}.
+ *
+ * @author Korovin Anatoliy
+ */
+public final class StateMachineCacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final int size;
+
+    public StateMachineCacheStats(long hitCount, long missCount, long evictionCount, int size) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return number of cached machines
+     */
+    public int getSize() {
+        return size;
+    }
+
+    public double getHitRate() {
+        long requestCount = hitCount + missCount;
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    @Override
+    public String toString() {
+        return "StateMachineCacheStats{" +
+               "hitCount=" + hitCount +
+               ", missCount=" + missCount +
+               ", evictionCount=" + evictionCount +
+               ", size=" + size +
+               '}';
+    }
+}
@@ -0,0 +1,65 @@
+package com.antkorwin.statemachineutils.service;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.state.State;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.antkorwin.statemachineutils.persist.ImmutableValues.isImmutable;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Active states and extended state variables of a machine at some moment,
+ * used to find out whether an evaluation changed the machine.
+ * <p>
+ * A value of a variable can be changed in place (e.g. a list), which we can't see
+ * by a shallow copy of variables, so if any key or value of variables isn't
+ * a well-known immutable type (see {@link com.antkorwin.statemachineutils.persist.ImmutableValues})
+ * then the machine is always considered changed.
+ *
+ * @author Korovin Anatoliy
+ */
+final class StateMachineFingerprint {
+
+    private final List<Object> stateIds;
+    private final Map<Object, Object> variables;
+
+    private StateMachineFingerprint(List<Object> stateIds, Map<Object, Object> variables) {
+        this.stateIds = stateIds;
+        this.variables = variables;
+    }
+
+    static StateMachineFingerprint of(StateMachine<?, ?> machine) {
+        Map<Object, Object> variables = machine.getExtendedState().getVariables();
+        for (Map.Entry<Object, Object> entry : variables.entrySet()) {
+            if (!isImmutable(entry.getKey()) || !isImmutable(entry.getValue())) {
+                return new StateMachineFingerprint(stateIdsOf(machine), null);
+            }
+        }
+        return new StateMachineFingerprint(stateIdsOf(machine), new HashMap<>(variables));
+    }
+
+    /**
+     * @param machine the same machine, which was used to take this fingerprint
+     * @return true if the machine may differ from this fingerprint
+     */
+    boolean isChanged(StateMachine<?, ?> machine) {
+        return variables == null ||
+               !stateIds.equals(stateIdsOf(machine)) ||
+               !variables.equals(machine.getExtendedState().getVariables());
+    }
+
+    private static List<Object> stateIdsOf(StateMachine<?, ?> machine) {
+        State<?, ?> state = machine.getState();
+        if (state == null) {
+            return new ArrayList<>();
+        }
+        Collection<?> ids = state.getIds();
+        return new ArrayList<>(ids);
+    }
+}
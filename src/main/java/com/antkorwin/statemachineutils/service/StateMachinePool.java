@@ -0,0 +1,143 @@
+package com.antkorwin.statemachineutils.service;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.config.StateMachineFactory;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Pool of pre-built state machines, so the service doesn't build a new
+ * machine by the factory (states, transitions, regions) for each request.
+ * <p>
+ * An acquired machine is reset to a restored context by the persister,
+ * and a released machine is reset to the initial state (without extended state
+ * variables and an identifier) before it returns to the pool. Listeners and
+ * interceptors added to a machine stay with the pooled machine, so a processing
+ * function shouldn't change the configuration of a machine or keep a reference
+ * to the machine after the call, when the pool is used.
+ * <p>
+ * The service doesn't return to the pool a machine which is exposed by the result
+ * of a processing function (see {@link #isExposedBy(Object, StateMachine)}),
+ * but it can't find a reference to the machine hidden in another object.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachinePool<StatesT, EventsT> {
+
+    private final StateMachineFactory<StatesT, EventsT> factory;
+    private final BlockingQueue<StateMachine<StatesT, EventsT>> idle;
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
+
+    /**
+     * @param factory    factory of state machines
+     * @param maxSize    max number of idle machines, zero to disable pooling
+     * @param prewarm    number of machines which are built right now
+     */
+    public StateMachinePool(StateMachineFactory<StatesT, EventsT> factory, int maxSize, int prewarm) {
+        this.factory = factory;
+        this.idle = maxSize > 0 ? new ArrayBlockingQueue<>(maxSize) : null;
+        for (int i = 0; i < Math.min(prewarm, maxSize); i++) {
+            idle.offer(reset(factory.getStateMachine()));
+        }
+    }
+
+    /**
+     * @return pool which builds a new machine for each request
+     */
+    public static <StatesT, EventsT> StateMachinePool<StatesT, EventsT> disabled(StateMachineFactory<StatesT, EventsT> factory) {
+        return new StateMachinePool<>(factory, 0, 0);
+    }
+
+    /**
+     * Take an idle machine or build a new one.
+     *
+     * @param machineId identifier of the machine, which is going to be restored in the acquired machine
+     * @return state machine
+     */
+    public StateMachine<StatesT, EventsT> acquire(UUID machineId) {
+        StateMachine<StatesT, EventsT> machine = idle == null ? null : idle.poll();
+        if (machine != null) {
+            reusedCount.incrementAndGet();
+            return machine;
+        }
+        createdCount.incrementAndGet();
+        return factory.getStateMachine(machineId.toString());
+    }
+
+    /**
+     * Return a machine to the pool, the caller must not use it after that.
+     *
+     * @param machine state machine
+     */
+    public void release(StateMachine<StatesT, EventsT> machine) {
+        if (idle == null || idle.remainingCapacity() == 0) {
+            return;
+        }
+        idle.offer(reset(machine));
+    }
+
+    /**
+     * @return number of machines which were built by the factory
+     */
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    /**
+     * @return number of acquired machines which were taken from the pool
+     */
+    public long getReusedCount() {
+        return reusedCount.get();
+    }
+
+    public int getIdleCount() {
+        return idle == null ? 0 : idle.size();
+    }
+
+    /**
+     * Check if the result of a processing function refers to the machine:
+     * it's the machine, its extended state, variables or the current state,
+     * or a collection or a map which contains one of them.
+     *
+     * @param result  result of a processing function
+     * @param machine state machine
+     * @return true if the machine mustn't be reset after the processing function
+     */
+    public static boolean isExposedBy(Object result, StateMachine<?, ?> machine) {
+        if (result == null) {
+            return false;
+        }
+        if (isPartOf(result, machine)) {
+            return true;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).stream().anyMatch(item -> isPartOf(item, machine));
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>) result).values().stream().anyMatch(item -> isPartOf(item, machine));
+        }
+        return false;
+    }
+
+    private static boolean isPartOf(Object object, StateMachine<?, ?> machine) {
+        return object != null &&
+               (object == machine ||
+                object == machine.getExtendedState() ||
+                object == machine.getExtendedState().getVariables() ||
+                object == machine.getState());
+    }
+
+    private StateMachine<StatesT, EventsT> reset(StateMachine<StatesT, EventsT> machine) {
+        machine.stop();
+        machine.getStateMachineAccessor().doWithAllRegions(access -> access.resetStateMachine(null));
+        return machine;
+    }
+}
@@ -5,7 +5,9 @@ import com.antkorwin.statemachineutils.resolver.EnableStateMachineResolver;
 import com.antkorwin.statemachineutils.resolver.StateMachineResolver;
 import com.antkorwin.statemachineutils.wrapper.EnableStateMachineWrapper;
 import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.TransactionalStateMachineWrapper;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
@@ -25,21 +27,65 @@ import java.util.UUID;
 @Import(DefaultPersistConfig.class)
 public class XServiceConfig {
 
+    @Bean
+    public MailboxExecutor xStateMachineMailboxExecutor(
+            @Value("${statemachine-utils.service.mailbox.pool-size:4}") int poolSize,
+            @Value("${statemachine-utils.service.mailbox.capacity:" + MailboxExecutor.DEFAULT_CAPACITY + "}") int capacity) {
+
+        return new MailboxExecutor(poolSize, capacity);
+    }
+
+    @Bean
+    public <StatesT, EventsT> StateMachineCache<StatesT, EventsT> xStateMachineCache(
+            @Value("${statemachine-utils.service.cache.max-size:0}") int maxSize,
+            @Value("${statemachine-utils.service.cache.idle-timeout-ms:60000}") long idleTimeoutMillis) {
+
+        return new StateMachineCache<>(maxSize, idleTimeoutMillis);
+    }
+
+    /**
+     * With statemachine-utils.service.pool.max-size &gt; 0 machines are reset
+     * and reused after evaluate methods, so a result of a processing function
+     * mustn't keep a reference to the machine (see {@link XStateMachineServiceImpl}).
+     */
+    @Bean
+    public <StatesT, EventsT> StateMachinePool<StatesT, EventsT> xStateMachinePool(
+            StateMachineFactory<StatesT, EventsT> stateMachineFactory,
+            @Value("${statemachine-utils.service.pool.max-size:0}") int maxSize,
+            @Value("${statemachine-utils.service.pool.prewarm:0}") int prewarm) {
+
+        return new StateMachinePool<>(stateMachineFactory, maxSize, prewarm);
+    }
+
     @Bean
     public <StatesT, EventsT> XStateMachineService<StatesT, EventsT> xStateMachineService(
             @Qualifier("stateMachineRollbackWrapper")
                     StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper,
             @Qualifier("stateMachineTransactionalWrapper")
-                    StateMachineWrapper<StatesT, EventsT> stateMachineTransactionalWrapper,
+                    TransactionalStateMachineWrapper<StatesT, EventsT> stateMachineTransactionalWrapper,
             StateMachineFactory<StatesT, EventsT> stateMachineFactory,
             StateMachinePersister<StatesT, EventsT, UUID> persister,
-            StateMachineResolver<StatesT, EventsT> resolver) {
+            StateMachineResolver<StatesT, EventsT> resolver,
+            MailboxExecutor xStateMachineMailboxExecutor,
+            @Value("${statemachine-utils.service.execution-mode:LOCKING}") ExecutionMode executionMode,
+            @Value("${statemachine-utils.service.persist-in-transaction:false}") boolean persistInTransaction,
+            StateMachineCache<StatesT, EventsT> xStateMachineCache,
+            StateMachinePool<StatesT, EventsT> xStateMachinePool,
+            @Value("${statemachine-utils.service.skip-unchanged-persist:true}") boolean skipUnchangedPersist) {
 
-        return new XStateMachineServiceImpl<>(stateMachineRollbackWrapper,
-                                              stateMachineTransactionalWrapper,
-                                              persister,
-                                              stateMachineFactory,
-                                              resolver);
+        return XStateMachineServiceImpl.<StatesT, EventsT>builder()
+                .rollbackWrapper(stateMachineRollbackWrapper)
+                .transactionalWrapper(stateMachineTransactionalWrapper)
+                .persister(persister)
+                .factory(stateMachineFactory)
+                .resolver(resolver)
+                .mailboxExecutor(xStateMachineMailboxExecutor)
+                .executionMode(executionMode)
+                .persistInTransaction(persistInTransaction)
+                .cache(xStateMachineCache)
+                .pool(xStateMachinePool)
+                .skipUnchangedPersist(skipUnchangedPersist)
+                .build();
     }
 
 }
@@ -1,9 +1,14 @@
 package com.antkorwin.statemachineutils.service;
 
+import com.antkorwin.statemachineutils.wrapper.TxOptions;
 import org.springframework.statemachine.StateMachine;
 
+import java.time.Duration;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Function;
 
 /**
@@ -80,6 +85,69 @@ public interface XStateMachineService<StatesT, EventsT> {
     <ResultT> ResultT evaluateTransactional(UUID stateMachineId,
                                             Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction);
 
+    /**
+     * Same as evaluateTransactional method, but with options of the transaction:
+     * propagation, isolation, timeout or read-only.
+     *
+     * @param stateMachineId     identifier of the state machine
+     * @param processingFunction function that need to applies on the S.M.
+     * @param txOptions          options of the transaction
+     * @param <ResultT>          result of the function
+     * @return result of the function
+     */
+    <ResultT> ResultT evaluateTransactional(UUID stateMachineId,
+                                            Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                            TxOptions txOptions);
+
+    /**
+     * Same as evaluate method, but waits for a lock
+     * of the state machine no longer than the timeout.
+     *
+     * Throws an exception if doesn't acquire the lock in time,
+     * in this case the S.M. in storage stays unchanged.
+     *
+     * @param stateMachineId     identifier of the state machine
+     * @param processingFunction function that need to applies on the S.M.
+     * @param timeout            max time to wait for the lock of the S.M.
+     * @param <ResultT>          result of the function
+     * @return result of the function
+     */
+    <ResultT> ResultT tryEvaluate(UUID stateMachineId,
+                                  Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                  Duration timeout);
+
+    /**
+     * Evaluate a processing function on a few state machines together,
+     * with all-or-nothing semantic: if the function throws an exception
+     * then all machines roll back to previous states.
+     *
+     * Locks of machines are acquired in a canonical order, so it's safe
+     * to call this method concurrently with the same machines
+     * in a different order, unlike nested calls of the evaluate.
+     *
+     * @param stateMachineIds    identifiers of state machines
+     * @param processingFunction function that need to applies on machines (by their identifiers)
+     * @param <ResultT>          result of the function
+     * @return result of the function
+     */
+    <ResultT> ResultT evaluateAll(Collection<UUID> stateMachineIds,
+                                  Function<Map<UUID, StateMachine<StatesT, EventsT>>, ResultT> processingFunction);
+
+    /**
+     * Same as evaluate method, but doesn't block the calling thread.
+     * A processing function is put in the mailbox of the state machine,
+     * all functions of the same S.M. are executed one after another.
+     *
+     * Throws an exception if the mailbox of the S.M. is full.
+     *
+     * @param stateMachineId     identifier of the state machine
+     * @param processingFunction function that need to applies on the S.M.
+     * @param <ResultT>          result of the function
+     * @return future result of the function
+     */
+    <ResultT> CompletableFuture<ResultT> evaluateAsync(UUID stateMachineId,
+                                                       Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction);
+
     /**
      * Retrieve all available events from a current state of a state machine.
      *
@@ -1,44 +1,136 @@
 package com.antkorwin.statemachineutils.service;
 
 import com.antkorwin.commonutils.exceptions.BaseException;
+import com.antkorwin.commonutils.validation.Guard;
+import com.antkorwin.statemachineutils.persist.BatchStateMachinePersister;
+import com.antkorwin.statemachineutils.persist.PersisterErrorInfo;
+import com.antkorwin.statemachineutils.persist.StateMachineContextReader;
 import com.antkorwin.statemachineutils.resolver.StateMachineResolver;
 import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapperException;
+import com.antkorwin.statemachineutils.wrapper.TransactionalStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.TxOptions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
 import org.springframework.statemachine.config.StateMachineFactory;
 import org.springframework.statemachine.persist.StateMachinePersister;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.antkorwin.statemachineutils.service.XServiceErrorInfo.*;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.WRAPPER_DOES_NOT_SUPPORT_TX_OPTIONS;
 
 /**
  * Created on 09.07.2018.
  *
+ * With the {@link ExecutionMode#MAILBOX} the evaluate method puts
+ * a processing function in the mailbox of the state machine, so the whole
+ * cycle of loading, processing and saving of the same machine
+ * runs in a single writer without a lock contention. The evaluateTransactional,
+ * tryEvaluate and evaluateAll methods run in the caller thread, while it holds
+ * mailboxes of their machines.
+ * <p>
+ * With the persistInTransaction option the evaluateTransactional method
+ * saves the state machine inside of the transaction of a processing
+ * function, so business data and the state of the machine are committed
+ * together, in one transaction instead of two.
+ * <p>
+ * With the {@link StateMachineCache} evaluate methods borrow restored machines
+ * from the cache instead of building them by the factory and restoring from
+ * the persist, a machine returns to the cache after it's persisted.
+ * <p>
+ * With the {@link StateMachinePool} machines are not built by the factory
+ * for each request, machines used inside of the service return to the pool
+ * and are reset there. So a result of a processing function must not keep
+ * a reference to the machine: a result which is the machine, its extended state,
+ * variables or the current state (or a collection or a map of them) is detected,
+ * and such a machine is left to the caller instead of the pool and the cache,
+ * but a reference hidden in another object is changed by the next request.
+ * <p>
+ * With the skipUnchangedPersist option the service doesn't persist a machine
+ * after a successful evaluation, which didn't change active states or extended
+ * state variables of the machine (see {@link StateMachineFingerprint}). After
+ * a failed evaluation the roll-backed machine is always persisted, because
+ * a processing function could persist the machine by itself. Only if the wrapper
+ * fails before it applies a processing function (e.g. a lock timeout),
+ * the machine isn't changed and it isn't persisted.
+ * <p>
+ * If the persister is a {@link StateMachineContextReader} then the retrieveAvailableEvents
+ * method resolves events of a machine, which isn't cached, from its persisted context
+ * and transitions of a prototype machine, the machine is restored only if a guard needs it.
+ *
  * @author Korovin Anatoliy
  */
 @Slf4j
 public class XStateMachineServiceImpl<StatesT, EventsT> implements XStateMachineService<StatesT, EventsT> {
 
     private final StateMachineWrapper<StatesT, EventsT> rollbackWrapper;
-    private final StateMachineWrapper<StatesT, EventsT> transactionalWrapper;
+    private final TransactionalStateMachineWrapper<StatesT, EventsT> transactionalWrapper;
     private final StateMachinePersister<StatesT, EventsT, UUID> persister;
     private final StateMachineFactory<StatesT, EventsT> factory;
     private final StateMachineResolver<StatesT, EventsT> resolver;
+    private final MailboxExecutor mailboxExecutor;
+    private final ExecutionMode executionMode;
+    private final boolean persistInTransaction;
+    private final StateMachineCache<StatesT, EventsT> cache;
+    private final StateMachinePool<StatesT, EventsT> pool;
+    private final boolean skipUnchangedPersist;
+    private volatile StateMachine<StatesT, EventsT> prototype;
 
+    /**
+     * @deprecated use the {@link #builder()} with the {@link TransactionalStateMachineWrapper},
+     * the evaluateTransactional with options of the transaction fails on a plain wrapper.
+     */
+    @Deprecated
     public XStateMachineServiceImpl(
             StateMachineWrapper<StatesT, EventsT> rollbackWrapper,
             StateMachineWrapper<StatesT, EventsT> transactionalWrapper,
             StateMachinePersister<StatesT, EventsT, UUID> persister,
             StateMachineFactory<StatesT, EventsT> factory,
             StateMachineResolver<StatesT, EventsT> resolver) {
-        this.rollbackWrapper = rollbackWrapper;
-        this.transactionalWrapper = transactionalWrapper;
-        this.persister = persister;
-        this.factory = factory;
-        this.resolver = resolver;
+        this(XStateMachineServiceImpl.<StatesT, EventsT>builder()
+                     .rollbackWrapper(rollbackWrapper)
+                     .transactionalWrapper(transactional(transactionalWrapper))
+                     .persister(persister)
+                     .factory(factory)
+                     .resolver(resolver));
+    }
+
+    private XStateMachineServiceImpl(Builder<StatesT, EventsT> builder) {
+        this.rollbackWrapper = builder.rollbackWrapper;
+        this.transactionalWrapper = builder.transactionalWrapper;
+        this.persister = builder.persister;
+        this.factory = builder.factory;
+        this.resolver = builder.resolver;
+        this.mailboxExecutor = builder.mailboxExecutor != null
+                               ? builder.mailboxExecutor
+                               : new MailboxExecutor(ForkJoinPool.commonPool(), MailboxExecutor.DEFAULT_CAPACITY);
+        this.executionMode = builder.executionMode;
+        this.persistInTransaction = builder.persistInTransaction;
+        this.cache = builder.cache;
+        this.pool = builder.pool != null ? builder.pool : StateMachinePool.disabled(builder.factory);
+        this.skipUnchangedPersist = builder.skipUnchangedPersist;
+    }
+
+    public static <StatesT, EventsT> Builder<StatesT, EventsT> builder() {
+        return new Builder<>();
     }
 
     @Override
@@ -47,6 +139,7 @@ public class XStateMachineServiceImpl<StatesT, EventsT> implements XStateMachine
         StateMachine<StatesT, EventsT> machine = factory.getStateMachine(machineId.toString());
         try {
             persister.persist(machine, machineId);
+            cache.invalidate(machineId);
             return machine;
         } catch (Exception e) {
             log.error("Unable to persist new state machine : " + machineId.toString(), e);
@@ -56,60 +149,621 @@ public class XStateMachineServiceImpl<StatesT, EventsT> implements XStateMachine
 
     @Override
     public StateMachine<StatesT, EventsT> get(UUID machineId) {
+        StateMachine<StatesT, EventsT> cached = cache.take(machineId);
+        if (cached != null) {
+            return cached;
+        }
+        return restore(machineId);
+    }
+
+    @Override
+    public StateMachine<StatesT, EventsT> update(UUID machineId, StateMachine<StatesT, EventsT> machine) {
+        store(machineId, machine);
+        // the caller keeps a reference to the machine, so we can't cache it:
+        cache.invalidate(machineId);
+        return machine;
+    }
+
+    @Override
+    public <ResultT> ResultT evaluate(UUID stateMachineId,
+                                      Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction) {
+
+        if (useMailbox()) {
+            return waitResult(evaluateAsync(stateMachineId, processingFunction));
+        }
+        return internalEvaluate(stateMachineId, processingFunction, rollbackWrapper);
+    }
+
+    @Override
+    public <ResultT> ResultT evaluateTransactional(UUID stateMachineId,
+                                                   Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction) {
+
+        return evaluateTransactional(stateMachineId, processingFunction, TxOptions.DEFAULT);
+    }
+
+    @Override
+    public <ResultT> ResultT evaluateTransactional(UUID stateMachineId,
+                                                   Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                                   TxOptions txOptions) {
+
+        if (useMailbox()) {
+            // in the caller thread, to take part in its transaction:
+            return mailboxExecutor.evaluateExclusively(Collections.singletonList(stateMachineId),
+                                                       null,
+                                                       () -> internalEvaluateTransactional(stateMachineId,
+                                                                                           processingFunction,
+                                                                                           txOptions));
+        }
+        return internalEvaluateTransactional(stateMachineId, processingFunction, txOptions);
+    }
+
+    @Override
+    public <ResultT> ResultT tryEvaluate(UUID stateMachineId,
+                                         Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                         Duration timeout) {
+
+        if (useMailbox()) {
+            // the timeout limits the wait for the turn in the mailbox:
+            return mailboxExecutor.evaluateExclusively(Collections.singletonList(stateMachineId),
+                                                       timeout,
+                                                       () -> internalEvaluate(stateMachineId,
+                                                                              processingFunction,
+                                                                              rollbackWrapper));
+        }
+        return internalEvaluate(stateMachineId,
+                                processingFunction,
+                                (machine, function) -> rollbackWrapper.tryEvaluateWithRollback(machine, function, timeout));
+    }
+
+    @Override
+    public <ResultT> ResultT evaluateAll(Collection<UUID> stateMachineIds,
+                                         Function<Map<UUID, StateMachine<StatesT, EventsT>>, ResultT> processingFunction) {
+
+        if (useMailbox()) {
+            return mailboxExecutor.evaluateExclusively(stateMachineIds,
+                                                       null,
+                                                       () -> internalEvaluateAll(stateMachineIds, processingFunction));
+        }
+        return internalEvaluateAll(stateMachineIds, processingFunction);
+    }
+
+    private <ResultT> ResultT internalEvaluateTransactional(UUID stateMachineId,
+                                                            Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                                            TxOptions txOptions) {
+
+        if (persistInTransaction) {
+            return internalEvaluateWithPersistInTransaction(stateMachineId, processingFunction, txOptions);
+        }
+        return internalEvaluate(stateMachineId,
+                                processingFunction,
+                                (machine, function) -> transactionalWrapper.evaluateWithRollback(machine, function, txOptions));
+    }
+
+    private <ResultT> ResultT internalEvaluateAll(Collection<UUID> stateMachineIds,
+                                                  Function<Map<UUID, StateMachine<StatesT, EventsT>>, ResultT> processingFunction) {
+
+        Map<UUID, StateMachine<StatesT, EventsT>> machines = new LinkedHashMap<>();
+        Map<UUID, StateMachineFingerprint> fingerprints = new HashMap<>();
+        boolean persisted = false;
+        ResultT result = null;
+        try {
+            for (UUID machineId : stateMachineIds) {
+                if (!machines.containsKey(machineId)) {
+                    StateMachine<StatesT, EventsT> machine = load(machineId);
+                    machines.put(machineId, machine);
+                    fingerprints.put(machineId, fingerprint(machine));
+                }
+            }
+            Map<UUID, StateMachine<StatesT, EventsT>> machinesView = Collections.unmodifiableMap(machines);
+
+            AtomicBoolean applied = new AtomicBoolean();
+            try {
+                result = rollbackWrapper.evaluateAllWithRollback(new ArrayList<>(machines.values()), list -> {
+                    applied.set(true);
+                    return processingFunction.apply(machinesView);
+                });
+            } catch (Exception e) {
+                if (!applied.get()) {
+                    persisted = true;
+                    throw e; // the wrapper didn't apply a processing function (e.g. lock timeout)
+                }
+                try {
+                    storeAll(machines); // persist old versions of roll-backed machines
+                    persisted = true;
+                } catch (RuntimeException persistError) {
+                    e.addSuppressed(persistError);
+                }
+                throw e;
+            }
+
+            Map<UUID, StateMachine<StatesT, EventsT>> changed = new LinkedHashMap<>();
+            machines.forEach((machineId, machine) -> {
+                StateMachineFingerprint fingerprint = fingerprints.get(machineId);
+                if (fingerprint == null || fingerprint.isChanged(machine)) {
+                    changed.put(machineId, machine);
+                }
+            });
+            storeAll(changed);
+            persisted = true;
+            return result;
+        } finally {
+            for (Map.Entry<UUID, StateMachine<StatesT, EventsT>> entry : machines.entrySet()) {
+                release(entry.getKey(), entry.getValue(), persisted, result);
+            }
+        }
+    }
+
+    @Override
+    public <ResultT> CompletableFuture<ResultT> evaluateAsync(UUID stateMachineId,
+                                                              Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction) {
+
+        return mailboxExecutor.submit(stateMachineId,
+                                      () -> internalEvaluate(stateMachineId, processingFunction, rollbackWrapper));
+    }
+
+    @Override
+    public List<EventsT> retrieveAvailableEvents(UUID stateMachineId) {
+        if (!(persister instanceof StateMachineContextReader)) {
+            return retrieveAvailableEvents(stateMachineId, load(stateMachineId));
+        }
+        StateMachine<StatesT, EventsT> cached = cache.borrow(stateMachineId);
+        if (cached != null) {
+            return retrieveAvailableEvents(stateMachineId, cached);
+        }
+
+        LazyMachine lazyMachine = new LazyMachine(stateMachineId);
+        boolean persisted = false;
+        try {
+            StateMachineContext<StatesT, EventsT> context = readContext(stateMachineId);
+            List<EventsT> events = resolver.getAvailableEvents(context, prototype(), lazyMachine);
+            persisted = true;
+            return events;
+        } finally {
+            if (lazyMachine.machine != null) {
+                release(stateMachineId, lazyMachine.machine, persisted);
+            } else {
+                cache.release(stateMachineId, null);
+            }
+        }
+    }
+
+    private List<EventsT> retrieveAvailableEvents(UUID stateMachineId, StateMachine<StatesT, EventsT> machine) {
+        boolean persisted = false;
+        try {
+            List<EventsT> events = resolver.getAvailableEvents(machine);
+            persisted = true;
+            return events;
+        } finally {
+            release(stateMachineId, machine, persisted);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private StateMachineContext<StatesT, EventsT> readContext(UUID machineId) {
+        try {
+            StateMachineContext<StatesT, EventsT> context =
+                    ((StateMachineContextReader<StatesT, EventsT, UUID>) persister).readContext(machineId);
+            Guard.checkEntityExist(context, PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+            return context;
+        } catch (BaseException baseExc) {
+            throw baseExc;
+        } catch (Exception e) {
+            log.error("Error while read a context of the state machine", e);
+            throw new XStateMachineException(UNABLE_TO_READ_STATE_MACHINE_FROM_STORE, e);
+        }
+    }
+
+    /**
+     * @return a machine built by the factory, the resolver uses it only as a model of transitions
+     */
+    private StateMachine<StatesT, EventsT> prototype() {
+        StateMachine<StatesT, EventsT> result = prototype;
+        if (result == null) {
+            synchronized (this) {
+                result = prototype;
+                if (result == null) {
+                    result = factory.getStateMachine();
+                    prototype = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A processing function which calls the service runs inside of a mailbox
+     * (or holds mailboxes), it doesn't wait for mailboxes, because it would wait
+     * for itself. It uses reentrant locks of the wrapper instead, like the LOCKING mode.
+     */
+    private boolean useMailbox() {
+        return executionMode == ExecutionMode.MAILBOX && !mailboxExecutor.isInsideMailbox();
+    }
+
+    private StateMachine<StatesT, EventsT> restore(UUID machineId) {
         log.debug("Getting a new machine from factory with id " + machineId);
-        StateMachine<StatesT, EventsT> machine = factory.getStateMachine(machineId.toString());
+        StateMachine<StatesT, EventsT> machine = pool.acquire(machineId);
         try {
             return persister.restore(machine, machineId);
         } catch (BaseException baseExc) {
+            pool.release(machine);
             throw baseExc;
         } catch (Exception e) {
+            pool.release(machine);
             log.error("Error while restore state machine", e);
             throw new XStateMachineException(UNABLE_TO_READ_STATE_MACHINE_FROM_STORE, e);
         }
     }
 
-    @Override
-    public StateMachine<StatesT, EventsT> update(UUID machineId, StateMachine<StatesT, EventsT> machine) {
+    private void store(UUID machineId, StateMachine<StatesT, EventsT> machine) {
         try {
             persister.persist(machine, machineId);
-            return machine;
         } catch (Exception e) {
             log.error("unable to persist the state machine during the update: " + machineId.toString(), e);
             throw new XStateMachineException(UNABLE_TO_PERSIST_STATE_MACHINE_DURING_UPDATE, e);
         }
     }
 
-    @Override
-    public <ResultT> ResultT evaluate(UUID stateMachineId,
-                                      Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction) {
+    /**
+     * Persist an old version of a roll-backed machine,
+     * a failure of this persist is added to the original exception.
+     *
+     * @return true if the machine is persisted
+     */
+    private boolean storeRollBacked(UUID machineId, StateMachine<StatesT, EventsT> machine, Exception cause) {
+        try {
+            store(machineId, machine);
+            return true;
+        } catch (RuntimeException persistError) {
+            cause.addSuppressed(persistError);
+            return false;
+        }
+    }
 
-        return internalEvaluate(stateMachineId, processingFunction, rollbackWrapper);
+    /**
+     * Persist all machines at once, if the persister is able to do it,
+     * otherwise one by one.
+     */
+    private void storeAll(Map<UUID, StateMachine<StatesT, EventsT>> machines) {
+        if (machines.isEmpty()) {
+            return;
+        }
+        if (!(persister instanceof BatchStateMachinePersister)) {
+            machines.forEach(this::store);
+            return;
+        }
+        try {
+            ((BatchStateMachinePersister<StatesT, EventsT, UUID>) persister).persistAll(machines);
+        } catch (Exception e) {
+            log.error("unable to persist state machines during the update: " + machines.keySet(), e);
+            throw new XStateMachineException(UNABLE_TO_PERSIST_STATE_MACHINE_DURING_UPDATE, e);
+        }
     }
 
-    @Override
-    public <ResultT> ResultT evaluateTransactional(UUID stateMachineId,
-                                                   Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction) {
+    /**
+     * Borrow a machine from the cache or restore it from the persist,
+     * the machine should be released after using.
+     */
+    private StateMachine<StatesT, EventsT> load(UUID machineId) {
+        StateMachine<StatesT, EventsT> cached = cache.borrow(machineId);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            return restore(machineId);
+        } catch (RuntimeException e) {
+            cache.release(machineId, null);
+            throw e;
+        }
+    }
 
-        return internalEvaluate(stateMachineId, processingFunction, transactionalWrapper);
+    /**
+     * @return fingerprint of the machine, or null if we should persist the machine after each evaluation
+     */
+    private StateMachineFingerprint fingerprint(StateMachine<StatesT, EventsT> machine) {
+        return skipUnchangedPersist ? StateMachineFingerprint.of(machine) : null;
     }
 
-    @Override
-    public List<EventsT> retrieveAvailableEvents(UUID stateMachineId) {
-        return resolver.getAvailableEvents(get(stateMachineId));
+    /**
+     * Persist the machine, unless the evaluation didn't change it.
+     */
+    private void storeIfChanged(UUID machineId,
+                                StateMachine<StatesT, EventsT> machine,
+                                StateMachineFingerprint fingerprint) {
+
+        if (fingerprint != null && !fingerprint.isChanged(machine)) {
+            log.debug("skip the persist of unchanged machine " + machineId);
+            return;
+        }
+        store(machineId, machine);
+    }
+
+    /**
+     * Return a borrowed machine to the cache, or to the pool if the cache doesn't keep it.
+     *
+     * @param persisted true if the machine is equal to its persisted version
+     */
+    private void release(UUID machineId, StateMachine<StatesT, EventsT> machine, boolean persisted) {
+        if (!cache.release(machineId, persisted ? machine : null)) {
+            pool.release(machine);
+        }
+    }
+
+    /**
+     * Same as the release, but a machine exposed by the result of a processing function
+     * is left to the caller, because the next request would change the result.
+     */
+    private void release(UUID machineId, StateMachine<StatesT, EventsT> machine, boolean persisted, Object result) {
+        if (StateMachinePool.isExposedBy(result, machine)) {
+            log.debug("the result exposes the machine {}, it isn't reused", machineId);
+            cache.release(machineId, null);
+            return;
+        }
+        release(machineId, machine, persisted);
     }
 
     private <ResultT> ResultT internalEvaluate(UUID machineId,
                                                Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
                                                StateMachineWrapper<StatesT, EventsT> wrapper) {
 
-        StateMachine<StatesT, EventsT> machine = get(machineId);
+        return internalEvaluate(machineId, processingFunction, wrapper::evaluateWithRollback);
+    }
+
+    /**
+     * @param wrapping applies a processing function to the machine inside of a wrapper
+     */
+    private <ResultT> ResultT internalEvaluate(UUID machineId,
+                                               Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                               BiFunction<StateMachine<StatesT, EventsT>,
+                                                       Function<StateMachine<StatesT, EventsT>, ResultT>,
+                                                       ResultT> wrapping) {
+
+        StateMachine<StatesT, EventsT> machine = load(machineId);
+        StateMachineFingerprint fingerprint = fingerprint(machine);
+        AtomicBoolean applied = new AtomicBoolean();
+        boolean persisted = false;
+        ResultT result = null;
+        try {
+            try {
+                result = wrapping.apply(machine, stateMachine -> {
+                    applied.set(true);
+                    return processingFunction.apply(stateMachine);
+                });
+            } catch (Exception e) {
+                if (!applied.get()) {
+                    persisted = true;
+                    throw e; // the wrapper didn't apply a processing function (e.g. lock timeout)
+                }
+                // the function could persist the machine, so we persist its roll-backed version:
+                persisted = storeRollBacked(machineId, machine, e);
+                throw e;
+            }
+            storeIfChanged(machineId, machine, fingerprint);
+            persisted = true;
+            return result;
+        } finally {
+            release(machineId, machine, persisted, result);
+        }
+    }
+
+    private <ResultT> ResultT internalEvaluateWithPersistInTransaction(UUID machineId,
+                                                                       Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                                                       TxOptions txOptions) {
+
+        StateMachine<StatesT, EventsT> machine = load(machineId);
+        StateMachineFingerprint fingerprint = fingerprint(machine);
+
+        AtomicBoolean applied = new AtomicBoolean();
+        AtomicBoolean persistFailed = new AtomicBoolean();
+        Function<StateMachine<StatesT, EventsT>, ResultT> processingWithPersist = stateMachine -> {
+            applied.set(true);
+            ResultT result = processingFunction.apply(stateMachine);
+            try {
+                storeIfChanged(machineId, stateMachine, fingerprint);
+            } catch (RuntimeException e) {
+                persistFailed.set(true);
+                throw e;
+            }
+            return result;
+        };
+
+        boolean persisted = false;
+        ResultT result = null;
         try {
-            ResultT result = wrapper.evaluateWithRollback(machine, processingFunction);
-            update(machineId, machine);
+            result = transactionalWrapper.evaluateWithRollback(machine, processingWithPersist, txOptions);
+            persisted = true;
             return result;
         } catch (Exception e) {
-            update(machineId, machine); // persist old version of a roll-backed S.M.
+            if (!applied.get()) {
+                persisted = true;
+                throw e; // the wrapper didn't apply a processing function (e.g. lock timeout)
+            }
+            // the persist may not take part in the transaction,
+            // so we persist an old version of a roll-backed S.M.,
+            // unless the persist itself failed:
+            if (!persistFailed.get()) {
+                persisted = storeRollBacked(machineId, machine, e);
+            }
             throw e;
+        } finally {
+            release(machineId, machine, persisted, result);
+        }
+    }
+
+    private <ResultT> ResultT waitResult(CompletableFuture<ResultT> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new XStateMachineException(e.getCause());
+        }
+    }
+
+    /**
+     * Restores the machine from the persist on the first call.
+     */
+    private class LazyMachine implements Supplier<StateMachine<StatesT, EventsT>> {
+
+        private final UUID machineId;
+        private StateMachine<StatesT, EventsT> machine;
+
+        private LazyMachine(UUID machineId) {
+            this.machineId = machineId;
+        }
+
+        @Override
+        public StateMachine<StatesT, EventsT> get() {
+            if (machine == null) {
+                machine = restore(machineId);
+            }
+            return machine;
+        }
+    }
+
+    private static <StatesT, EventsT> TransactionalStateMachineWrapper<StatesT, EventsT> transactional(
+            StateMachineWrapper<StatesT, EventsT> wrapper) {
+
+        if (wrapper instanceof TransactionalStateMachineWrapper) {
+            return (TransactionalStateMachineWrapper<StatesT, EventsT>) wrapper;
+        }
+        return new PlainTransactionalWrapper<>(wrapper);
+    }
+
+    /**
+     * Adapts a wrapper passed through the old constructor,
+     * only the default options of the transaction are supported.
+     */
+    private static class PlainTransactionalWrapper<StatesT, EventsT> implements TransactionalStateMachineWrapper<StatesT, EventsT> {
+
+        private final StateMachineWrapper<StatesT, EventsT> wrapper;
+
+        private PlainTransactionalWrapper(StateMachineWrapper<StatesT, EventsT> wrapper) {
+            this.wrapper = wrapper;
+        }
+
+        @Override
+        public void runWithRollback(StateMachine<StatesT, EventsT> stateMachine,
+                                    Consumer<StateMachine<StatesT, EventsT>> processingFunction) {
+            wrapper.runWithRollback(stateMachine, processingFunction);
+        }
+
+        @Override
+        public <ResultT> ResultT evaluateWithRollback(StateMachine<StatesT, EventsT> machine,
+                                                      Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc) {
+            return wrapper.evaluateWithRollback(machine, processingFunc);
+        }
+
+        @Override
+        public <ResultT> ResultT tryEvaluateWithRollback(StateMachine<StatesT, EventsT> machine,
+                                                         Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc,
+                                                         Duration timeout) {
+            return wrapper.tryEvaluateWithRollback(machine, processingFunc, timeout);
+        }
+
+        @Override
+        public <ResultT> ResultT evaluateAllWithRollback(List<StateMachine<StatesT, EventsT>> machines,
+                                                         Function<List<StateMachine<StatesT, EventsT>>, ResultT> processingFunc) {
+            return wrapper.evaluateAllWithRollback(machines, processingFunc);
+        }
+
+        @Override
+        public <ResultT> ResultT evaluateWithRollback(StateMachine<StatesT, EventsT> machine,
+                                                      Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc,
+                                                      TxOptions txOptions) {
+            if (txOptions != TxOptions.DEFAULT) {
+                throw new StateMachineWrapperException(WRAPPER_DOES_NOT_SUPPORT_TX_OPTIONS);
+            }
+            return wrapper.evaluateWithRollback(machine, processingFunc);
+        }
+    }
+
+    /**
+     * Builder of the service, wrappers, the persister, the factory and the resolver
+     * are mandatory, other options are disabled by default, except the skipUnchangedPersist.
+     */
+    public static class Builder<StatesT, EventsT> {
+
+        private StateMachineWrapper<StatesT, EventsT> rollbackWrapper;
+        private TransactionalStateMachineWrapper<StatesT, EventsT> transactionalWrapper;
+        private StateMachinePersister<StatesT, EventsT, UUID> persister;
+        private StateMachineFactory<StatesT, EventsT> factory;
+        private StateMachineResolver<StatesT, EventsT> resolver;
+        private MailboxExecutor mailboxExecutor;
+        private ExecutionMode executionMode = ExecutionMode.LOCKING;
+        private boolean persistInTransaction;
+        private StateMachineCache<StatesT, EventsT> cache = StateMachineCache.disabled();
+        private StateMachinePool<StatesT, EventsT> pool;
+        private boolean skipUnchangedPersist = true;
+
+        private Builder() {
+        }
+
+        public Builder<StatesT, EventsT> rollbackWrapper(StateMachineWrapper<StatesT, EventsT> rollbackWrapper) {
+            this.rollbackWrapper = rollbackWrapper;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> transactionalWrapper(
+                TransactionalStateMachineWrapper<StatesT, EventsT> transactionalWrapper) {
+            this.transactionalWrapper = transactionalWrapper;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> persister(StateMachinePersister<StatesT, EventsT, UUID> persister) {
+            this.persister = persister;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> factory(StateMachineFactory<StatesT, EventsT> factory) {
+            this.factory = factory;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> resolver(StateMachineResolver<StatesT, EventsT> resolver) {
+            this.resolver = resolver;
+            return this;
+        }
+
+        /**
+         * @param mailboxExecutor executor of mailboxes, by default mailboxes run in the common pool
+         * @return this builder
+         */
+        public Builder<StatesT, EventsT> mailboxExecutor(MailboxExecutor mailboxExecutor) {
+            this.mailboxExecutor = mailboxExecutor;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> executionMode(ExecutionMode executionMode) {
+            this.executionMode = executionMode;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> persistInTransaction(boolean persistInTransaction) {
+            this.persistInTransaction = persistInTransaction;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> cache(StateMachineCache<StatesT, EventsT> cache) {
+            this.cache = cache;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> pool(StateMachinePool<StatesT, EventsT> pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        public Builder<StatesT, EventsT> skipUnchangedPersist(boolean skipUnchangedPersist) {
+            this.skipUnchangedPersist = skipUnchangedPersist;
+            return this;
+        }
+
+        public XStateMachineServiceImpl<StatesT, EventsT> build() {
+            return new XStateMachineServiceImpl<>(this);
         }
     }
 }
@@ -0,0 +1,25 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+import org.springframework.statemachine.StateMachine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * Non-blocking variant of the {@link StateMachineWrapper},
+ * a processing function is executed later in a background thread
+ * and the caller receives a future of the result.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface AsyncStateMachineWrapper<StatesT, EventsT> {
+
+    CompletableFuture<Void> runWithRollbackAsync(StateMachine<StatesT, EventsT> stateMachine,
+                                                 Consumer<StateMachine<StatesT, EventsT>> processingFunction);
+
+    <ResultT> CompletableFuture<ResultT> evaluateWithRollbackAsync(StateMachine<StatesT, EventsT> machine,
+                                                                   Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc);
+}
@@ -0,0 +1,25 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * Strategy of a backup of extended state variables in the rollback wrapper.
+ *
+ * @author Korovin Anatoliy
+ */
+public enum ExtendedStateBackup {
+
+    /**
+     * Copy all variables before the processing function,
+     * the rollback restores the whole extended state.
+     */
+    FULL_COPY,
+
+    /**
+     * Journal only the variables written by the processing function
+     * (and by actions of the machine), the rollback restores only these
+     * variables. Falls back to the FULL_COPY if the extended state
+     * of a machine doesn't support journaling.
+     */
+    DIRTY_TRACKING
+}
@@ -0,0 +1,40 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * Mutual exclusion of processing functions of the same state machine,
+ * a key of the lock is an identifier of the machine.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface MachineLockProvider {
+
+    /**
+     * Evaluate the supplier under the lock of the key,
+     * wait for the lock as long as necessary.
+     *
+     * @param key       key of the lock
+     * @param supplier  function to evaluate
+     * @param <ResultT> type of the result
+     * @return result of the supplier
+     */
+    <ResultT> ResultT evaluate(String key, Supplier<ResultT> supplier);
+
+    /**
+     * Evaluate the supplier under the lock of the key,
+     * if the lock is not acquired in time then throws an exception.
+     *
+     * @param key       key of the lock
+     * @param timeout   max time to wait for the lock
+     * @param unit      time unit of the timeout
+     * @param supplier  function to evaluate
+     * @param <ResultT> type of the result
+     * @return result of the supplier
+     * @throws StateMachineWrapperException if the lock is not acquired in time
+     */
+    <ResultT> ResultT tryEvaluate(String key, long timeout, TimeUnit unit, Supplier<ResultT> supplier);
+}
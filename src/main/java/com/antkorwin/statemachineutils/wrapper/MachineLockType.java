@@ -0,0 +1,25 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * Implementations of the {@link MachineLockProvider},
+ * which can be selected in the {@link WrapperConfig}.
+ *
+ * @author Korovin Anatoliy
+ */
+public enum MachineLockType {
+
+    /**
+     * Reentrant lock per machine, removed when nobody holds it.
+     * Waiting threads are parked without a monitor,
+     * supports timeouts.
+     */
+    REENTRANT,
+
+    /**
+     * Synchronized blocks on mutexes of the XSync,
+     * doesn't support timeouts.
+     */
+    XSYNC
+}
@@ -2,9 +2,15 @@ package com.antkorwin.statemachineutils.wrapper;
 
 import org.springframework.statemachine.StateMachine;
 
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.WRAPPER_DOES_NOT_SUPPORT_TIMEOUT;
+import static java.util.stream.Collectors.toList;
+
 /**
  * Created on 04.06.2018.
  *
@@ -19,4 +25,58 @@ public interface StateMachineWrapper<StatesT, EventsT> {
 
     <ResultT> ResultT evaluateWithRollback(StateMachine<StatesT, EventsT> machine,
                                            Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc);
+
+    /**
+     * Same as evaluateWithRollback, but waits for a lock
+     * of the state machine no longer than the timeout.
+     *
+     * @param machine        state machine
+     * @param processingFunc function that need to applies on the S.M.
+     * @param timeout        max time to wait for the lock of the S.M.
+     * @param <ResultT>      type of the result
+     * @return result of the function
+     * @throws StateMachineWrapperException if the lock is not acquired in time,
+     *                                      or the wrapper doesn't support timeouts
+     */
+    default <ResultT> ResultT tryEvaluateWithRollback(StateMachine<StatesT, EventsT> machine,
+                                                      Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc,
+                                                      Duration timeout) {
+        throw new StateMachineWrapperException(WRAPPER_DOES_NOT_SUPPORT_TIMEOUT);
+    }
+
+    /**
+     * Evaluate a processing function on a few state machines together.
+     * Locks of machines are acquired in the order of their identifiers,
+     * so concurrent calls with the same machines in a different order
+     * don't deadlock. If the function throws an exception then
+     * all machines roll back to previous states.
+     *
+     * By default the function is evaluated inside of nested evaluateWithRollback
+     * calls, one for each machine.
+     *
+     * @param machines       state machines
+     * @param processingFunc function that need to applies on the machines
+     * @param <ResultT>      type of the result
+     * @return result of the function
+     */
+    default <ResultT> ResultT evaluateAllWithRollback(List<StateMachine<StatesT, EventsT>> machines,
+                                                      Function<List<StateMachine<StatesT, EventsT>>, ResultT> processingFunc) {
+
+        List<StateMachine<StatesT, EventsT>> ordered =
+                machines.stream()
+                        .distinct()
+                        .sorted(Comparator.comparing(m -> m.getId() == null ? m.getUuid().toString() : m.getId()))
+                        .collect(toList());
+        if (ordered.isEmpty()) {
+            return processingFunc.apply(machines);
+        }
+
+        Function<StateMachine<StatesT, EventsT>, ResultT> nested = machine -> processingFunc.apply(machines);
+        for (int i = ordered.size() - 1; i > 0; i--) {
+            StateMachine<StatesT, EventsT> next = ordered.get(i);
+            Function<StateMachine<StatesT, EventsT>, ResultT> inner = nested;
+            nested = machine -> evaluateWithRollback(next, inner);
+        }
+        return evaluateWithRollback(ordered.get(0), nested);
+    }
 }
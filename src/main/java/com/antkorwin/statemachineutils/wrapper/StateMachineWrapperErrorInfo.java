@@ -11,7 +11,13 @@ import com.antkorwin.statemachineutils.service.ErrorInfoUnique;
 @ErrorInfoUnique
 public enum StateMachineWrapperErrorInfo implements ErrorInfo {
     STATE_MACHINE_IS_MANDATORY_ARGUMENT("state machine is a mandatory argument for this method in a wrapper."),
-    PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT("processing function is a mandatory argument for this method in a wrapper");
+    PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT("processing function is a mandatory argument for this method in a wrapper"),
+    UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME("unable to acquire a lock of the state machine in time."),
+    TIMEOUT_IS_MANDATORY_ARGUMENT("timeout is a mandatory argument for this method in a wrapper."),
+    LOCK_PROVIDER_DOES_NOT_SUPPORT_TIMEOUT("the lock provider of the wrapper doesn't support timeouts."),
+    TX_OPTIONS_IS_MANDATORY_ARGUMENT("transaction options is a mandatory argument for this method in a wrapper."),
+    WRAPPER_DOES_NOT_SUPPORT_TIMEOUT("the wrapper doesn't support timeouts."),
+    WRAPPER_DOES_NOT_SUPPORT_TX_OPTIONS("the wrapper doesn't support options of the transaction.");
 
     private static final int BASE = 1000;
     private String msg;
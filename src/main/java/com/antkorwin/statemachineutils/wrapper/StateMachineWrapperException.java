@@ -0,0 +1,20 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+import com.antkorwin.commonutils.exceptions.BaseException;
+import com.antkorwin.commonutils.validation.ErrorInfo;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachineWrapperException extends BaseException {
+
+    public StateMachineWrapperException(ErrorInfo errorInfo) {
+        super(errorInfo);
+    }
+
+    public StateMachineWrapperException(ErrorInfo errorInfo, Throwable cause) {
+        super(errorInfo, cause);
+    }
+}
@@ -0,0 +1,28 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+import org.springframework.statemachine.StateMachine;
+
+import java.util.function.Function;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * StateMachineWrapper which executes a processing function in a transaction.
+ *
+ * @author Korovin Anatoliy
+ */
+public interface TransactionalStateMachineWrapper<StatesT, EventsT> extends StateMachineWrapper<StatesT, EventsT> {
+
+    /**
+     * Same as evaluateWithRollback, but with options of the transaction.
+     *
+     * @param machine        state machine
+     * @param processingFunc function that need to applies on the S.M.
+     * @param txOptions      options of the transaction
+     * @param <ResultT>      type of the result
+     * @return result of the function
+     */
+    <ResultT> ResultT evaluateWithRollback(StateMachine<StatesT, EventsT> machine,
+                                           Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc,
+                                           TxOptions txOptions);
+}
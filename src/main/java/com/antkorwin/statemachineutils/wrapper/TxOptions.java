@@ -0,0 +1,87 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Options of a transaction in which the transactional wrapper
+ * executes a processing function. Options are immutable, so build
+ * them once and reuse in each call.
+ * <p>
+ * With the read-only option a JPA transaction manager switches
+ * the session into the manual flush mode, so Hibernate
+ * skips the flush and dirty checking of loaded entities.
+ *
+ * @author Korovin Anatoliy
+ */
+public final class TxOptions {
+
+    public static final TxOptions DEFAULT = builder().build();
+    public static final TxOptions READ_ONLY = builder().readOnly(true).build();
+
+    private final TransactionDefinition definition;
+
+    private TxOptions(TransactionDefinition definition) {
+        this.definition = definition;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public TransactionDefinition getDefinition() {
+        return definition;
+    }
+
+    @Override
+    public String toString() {
+        return "TxOptions(" + definition + ")";
+    }
+
+    public static class Builder {
+
+        private Propagation propagation = Propagation.REQUIRED;
+        private Isolation isolation = Isolation.DEFAULT;
+        private int timeout = TransactionDefinition.TIMEOUT_DEFAULT;
+        private boolean readOnly;
+
+        private Builder() {
+        }
+
+        public Builder propagation(Propagation propagation) {
+            this.propagation = propagation;
+            return this;
+        }
+
+        public Builder isolation(Isolation isolation) {
+            this.isolation = isolation;
+            return this;
+        }
+
+        /**
+         * @param timeout timeout of the transaction in seconds
+         * @return this builder
+         */
+        public Builder timeout(int timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder readOnly(boolean readOnly) {
+            this.readOnly = readOnly;
+            return this;
+        }
+
+        public TxOptions build() {
+            DefaultTransactionDefinition definition = new DefaultTransactionDefinition(propagation.value());
+            definition.setIsolationLevel(isolation.value());
+            definition.setTimeout(timeout);
+            definition.setReadOnly(readOnly);
+            return new TxOptions(definition);
+        }
+    }
+}
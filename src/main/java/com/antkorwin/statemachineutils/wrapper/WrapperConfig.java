@@ -1,11 +1,17 @@
 package com.antkorwin.statemachineutils.wrapper;
 
+import com.antkorwin.statemachineutils.wrapper.impl.ReentrantMachineLockProvider;
+import com.antkorwin.statemachineutils.wrapper.impl.StateMachineAsyncRollbackWrapper;
 import com.antkorwin.statemachineutils.wrapper.impl.StateMachineRollbackWrapper;
 import com.antkorwin.statemachineutils.wrapper.impl.StateMachineTransactionalWrapper;
+import com.antkorwin.statemachineutils.wrapper.impl.XSyncMachineLockProvider;
 import com.antkorwin.xsync.XSync;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
 
 import java.util.UUID;
 
@@ -22,16 +28,42 @@ public class WrapperConfig {
         return new XSync<>();
     }
 
+    /**
+     * A MachineLockProvider bean of the application replaces the provider
+     * selected by the statemachine-utils.wrapper.lock-provider property.
+     */
     @Bean("stateMachineRollbackWrapper")
-    public StateMachineWrapper stateMachineWrapper(XSync<String> stateMachineXSync) {
-        return new StateMachineRollbackWrapper<>(stateMachineXSync);
+    public StateMachineWrapper stateMachineWrapper(
+            ObjectProvider<MachineLockProvider> stateMachineLockProvider,
+            XSync<String> stateMachineXSync,
+            @Value("${statemachine-utils.wrapper.lock-provider:REENTRANT}") MachineLockType lockType,
+            @Value("${statemachine-utils.wrapper.extended-state-backup:FULL_COPY}")
+                    ExtendedStateBackup extendedStateBackup) {
+
+        MachineLockProvider lockProvider = stateMachineLockProvider.getIfAvailable(
+                () -> lockType == MachineLockType.XSYNC
+                      ? new XSyncMachineLockProvider(stateMachineXSync)
+                      : new ReentrantMachineLockProvider());
+
+        return new StateMachineRollbackWrapper<>(lockProvider, extendedStateBackup);
     }
 
     @Bean("stateMachineTransactionalWrapper")
-    public <StatesT, EventsT> StateMachineWrapper stateMachineTransactionalWrapper(
+    public <StatesT, EventsT> TransactionalStateMachineWrapper stateMachineTransactionalWrapper(
+            @Qualifier("stateMachineRollbackWrapper")
+                    StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper,
+            ObjectProvider<PlatformTransactionManager> transactionManager) {
+
+        return new StateMachineTransactionalWrapper<>(stateMachineRollbackWrapper,
+                                                      transactionManager.getIfUnique());
+    }
+
+    @Bean("stateMachineAsyncRollbackWrapper")
+    public <StatesT, EventsT> AsyncStateMachineWrapper stateMachineAsyncRollbackWrapper(
             @Qualifier("stateMachineRollbackWrapper")
-                    StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper) {
+                    StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper,
+            @Value("${statemachine-utils.wrapper.async-pool-size:4}") int poolSize) {
 
-        return new StateMachineTransactionalWrapper<>(stateMachineRollbackWrapper);
+        return new StateMachineAsyncRollbackWrapper<>(stateMachineRollbackWrapper, poolSize);
     }
 }
@@ -0,0 +1,196 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.support.ObservableMap;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Copy-on-write view of extended state variables. The journal is installed
+ * as a delegate of the {@link ObservableMap} in the extended state of a machine,
+ * so all writes (from actions of the machine as well as from a processing function)
+ * pass through it. The journal remembers only the previous values of the keys
+ * which were written, so the rollback costs O(keys written) instead of
+ * O(extended state size).
+ *
+ * @author Korovin Anatoliy
+ */
+public class ExtendedStateJournal extends AbstractMap<Object, Object> {
+
+    private static final Object ABSENT = new Object();
+
+    private final ObservableMap<Object, Object> variables;
+    private final Map<Object, Object> target;
+    private Map<Object, Object> previousValues;
+
+    private ExtendedStateJournal(ObservableMap<Object, Object> variables) {
+        this.variables = variables;
+        this.target = variables.getDelegate();
+    }
+
+    /**
+     * Start journaling writes in the extended state of the machine.
+     *
+     * @param machine state machine
+     * @return journal, or null if the extended state of this machine
+     * is not based on the {@link ObservableMap}
+     */
+    @SuppressWarnings("unchecked")
+    public static ExtendedStateJournal start(StateMachine<?, ?> machine) {
+        Map<Object, Object> variables = machine.getExtendedState().getVariables();
+        if (!(variables instanceof ObservableMap)) {
+            return null;
+        }
+        ExtendedStateJournal journal = new ExtendedStateJournal((ObservableMap<Object, Object>) variables);
+        journal.variables.setDelegate(journal);
+        return journal;
+    }
+
+    /**
+     * Stop journaling and keep all changes in the extended state.
+     */
+    public void commit() {
+        variables.setDelegate(target);
+    }
+
+    /**
+     * Stop journaling and restore previous values of all changed variables.
+     */
+    public void rollback() {
+        variables.setDelegate(target);
+        if (previousValues == null) {
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : previousValues.entrySet()) {
+            if (entry.getValue() == ABSENT) {
+                target.remove(entry.getKey());
+            } else {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * @return true if any variable was written while journaling
+     */
+    public boolean isChanged() {
+        return previousValues != null;
+    }
+
+    @Override
+    public int size() {
+        return target.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return target.containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return target.containsValue(value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return target.get(key);
+    }
+
+    @Override
+    public Object put(Object key, Object value) {
+        remember(key);
+        return target.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (target.containsKey(key)) {
+            remember(key);
+        }
+        return target.remove(key);
+    }
+
+    @Override
+    public void putAll(Map<?, ?> map) {
+        for (Object key : map.keySet()) {
+            remember(key);
+        }
+        target.putAll(map);
+    }
+
+    @Override
+    public void clear() {
+        for (Object key : target.keySet()) {
+            remember(key);
+        }
+        target.clear();
+    }
+
+    @Override
+    public Set<Entry<Object, Object>> entrySet() {
+        return new AbstractSet<Entry<Object, Object>>() {
+            @Override
+            public Iterator<Entry<Object, Object>> iterator() {
+                return new JournalIterator(target.entrySet().iterator());
+            }
+
+            @Override
+            public int size() {
+                return target.size();
+            }
+        };
+    }
+
+    private void remember(Object key) {
+        if (previousValues == null) {
+            previousValues = new HashMap<>();
+        }
+        if (!previousValues.containsKey(key)) {
+            Object previous = target.get(key);
+            previousValues.put(key, previous == null ? ABSENT : previous);
+        }
+    }
+
+    private class JournalIterator implements Iterator<Entry<Object, Object>> {
+
+        private final Iterator<Entry<Object, Object>> iterator;
+        private Entry<Object, Object> current;
+
+        private JournalIterator(Iterator<Entry<Object, Object>> iterator) {
+            this.iterator = iterator;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<Object, Object> next() {
+            Entry<Object, Object> entry = iterator.next();
+            current = entry;
+            return new SimpleEntry<Object, Object>(entry) {
+                @Override
+                public Object setValue(Object value) {
+                    remember(entry.getKey());
+                    super.setValue(value);
+                    return entry.setValue(value);
+                }
+            };
+        }
+
+        @Override
+        public void remove() {
+            remember(current.getKey());
+            iterator.remove();
+        }
+    }
+}
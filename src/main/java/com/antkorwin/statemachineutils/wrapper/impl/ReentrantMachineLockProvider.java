@@ -0,0 +1,92 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import com.antkorwin.statemachineutils.wrapper.MachineLockProvider;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapperException;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * MachineLockProvider with a reentrant lock per key, same as the XSync
+ * but with an ability to wait for a lock with a timeout, and without
+ * synchronized blocks (a waiting thread is parked by the LockSupport).
+ * A lock is kept in the provider only while someone holds it or waits for it.
+ *
+ * @author Korovin Anatoliy
+ */
+public class ReentrantMachineLockProvider implements MachineLockProvider {
+
+    private final ConcurrentHashMap<String, LockEntry> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public <ResultT> ResultT evaluate(String key, Supplier<ResultT> supplier) {
+        LockEntry entry = acquire(key);
+        try {
+            entry.lock.lock();
+            try {
+                return supplier.get();
+            } finally {
+                entry.lock.unlock();
+            }
+        } finally {
+            release(key);
+        }
+    }
+
+    @Override
+    public <ResultT> ResultT tryEvaluate(String key, long timeout, TimeUnit unit, Supplier<ResultT> supplier) {
+        LockEntry entry = acquire(key);
+        try {
+            if (!tryLock(entry.lock, timeout, unit)) {
+                throw new StateMachineWrapperException(UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME);
+            }
+            try {
+                return supplier.get();
+            } finally {
+                entry.lock.unlock();
+            }
+        } finally {
+            release(key);
+        }
+    }
+
+    /**
+     * @return number of keys which are locked or awaited now
+     */
+    public int size() {
+        return locks.size();
+    }
+
+    private boolean tryLock(ReentrantLock lock, long timeout, TimeUnit unit) {
+        try {
+            return lock.tryLock(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StateMachineWrapperException(UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME, e);
+        }
+    }
+
+    private LockEntry acquire(String key) {
+        return locks.compute(key, (k, entry) -> {
+            LockEntry result = entry == null ? new LockEntry() : entry;
+            result.users++;
+            return result;
+        });
+    }
+
+    private void release(String key) {
+        locks.computeIfPresent(key, (k, entry) -> --entry.users == 0 ? null : entry);
+    }
+
+    private static class LockEntry {
+        private final ReentrantLock lock = new ReentrantLock();
+        // changed only inside of compute functions:
+        private int users;
+    }
+}
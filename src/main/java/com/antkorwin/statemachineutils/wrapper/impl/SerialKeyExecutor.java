@@ -0,0 +1,81 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Executor which runs tasks with the same key strictly one after another
+ * (in the order of submission), while tasks with different keys run
+ * in parallel on the shared executor. Tasks are never blocked on a mutex,
+ * each key holds only a tail of its queue, which is removed
+ * as soon as the queue is drained.
+ *
+ * @author Korovin Anatoliy
+ */
+public class SerialKeyExecutor<KeyT> {
+
+    private final Executor executor;
+    private final ConcurrentHashMap<KeyT, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    public SerialKeyExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Enqueue the task after all previously submitted tasks with the same key.
+     *
+     * @param key   key of the serial queue
+     * @param task  task to execute
+     * @param <ResultT> type of the task result
+     * @return future which completes with the result of the task, or exceptionally
+     * if the task failed or the executor rejected it
+     */
+    public <ResultT> CompletableFuture<ResultT> submit(KeyT key, Supplier<ResultT> task) {
+
+        CompletableFuture<ResultT> result = new CompletableFuture<>();
+        CompletableFuture<Void> tail;
+        try {
+            tail = tails.compute(key, (k, previous) -> {
+                // a task rejected by the executor doesn't stop next tasks of the key:
+                CompletableFuture<Void> start = previous == null
+                                                ? CompletableFuture.completedFuture(null)
+                                                : previous.exceptionally(e -> null);
+                return start.thenRunAsync(() -> execute(task, result), executor);
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        tail.whenComplete((r, e) -> {
+            tails.remove(key, tail);
+            if (e != null) {
+                // the executor rejected the task, so it will never run:
+                result.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                                             ? e.getCause()
+                                             : e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return number of keys which have not completed tasks
+     */
+    public int getActiveKeys() {
+        return tails.size();
+    }
+
+    private <ResultT> void execute(Supplier<ResultT> task, CompletableFuture<ResultT> result) {
+        try {
+            result.complete(task.get());
+        } catch (Throwable e) {
+            result.completeExceptionally(e);
+        }
+    }
+}
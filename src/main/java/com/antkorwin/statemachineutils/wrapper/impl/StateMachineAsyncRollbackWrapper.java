@@ -0,0 +1,103 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import com.antkorwin.commonutils.validation.Guard;
+import com.antkorwin.statemachineutils.wrapper.AsyncStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import org.springframework.statemachine.StateMachine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.STATE_MACHINE_IS_MANDATORY_ARGUMENT;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * AsyncStateMachineWrapper implementation, which puts a processing
+ * function in a serial queue of the state machine and returns
+ * immediately. Functions of the same machine are executed one by one,
+ * so the calling thread doesn't wait for a lock of the busy machine.
+ * <p>
+ * Each function is executed by the rollback wrapper, that keeps
+ * the same rollback semantic and mutual exclusion with synchronous
+ * callers of the same machine.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachineAsyncRollbackWrapper<StatesT, EventsT> implements AsyncStateMachineWrapper<StatesT, EventsT> {
+
+    private final StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper;
+    private final SerialKeyExecutor<String> serialKeyExecutor;
+    private final ExecutorService ownExecutor;
+
+    /**
+     * @param stateMachineRollbackWrapper wrapper to execute processing functions
+     * @param poolSize number of threads in the own pool of this wrapper
+     */
+    public StateMachineAsyncRollbackWrapper(StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper,
+                                            int poolSize) {
+        this(stateMachineRollbackWrapper, Executors.newFixedThreadPool(poolSize), true);
+    }
+
+    /**
+     * @param stateMachineRollbackWrapper wrapper to execute processing functions
+     * @param executor shared executor, it isn't stopped by this wrapper
+     */
+    public StateMachineAsyncRollbackWrapper(StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper,
+                                            Executor executor) {
+        this(stateMachineRollbackWrapper, executor, false);
+    }
+
+    private StateMachineAsyncRollbackWrapper(StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper,
+                                             Executor executor,
+                                             boolean ownExecutor) {
+        this.stateMachineRollbackWrapper = stateMachineRollbackWrapper;
+        this.serialKeyExecutor = new SerialKeyExecutor<>(executor);
+        this.ownExecutor = ownExecutor ? (ExecutorService) executor : null;
+    }
+
+    @Override
+    public CompletableFuture<Void> runWithRollbackAsync(StateMachine<StatesT, EventsT> machine,
+                                                        Consumer<StateMachine<StatesT, EventsT>> processingFunction) {
+
+        Guard.checkArgumentExist(machine, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(processingFunction, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
+
+        return serialKeyExecutor.submit(getQueueKey(machine), () -> {
+            stateMachineRollbackWrapper.runWithRollback(machine, processingFunction);
+            return null;
+        });
+    }
+
+    @Override
+    public <ResultT> CompletableFuture<ResultT> evaluateWithRollbackAsync(StateMachine<StatesT, EventsT> machine,
+                                                                          Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc) {
+
+        Guard.checkArgumentExist(machine, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(processingFunc, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
+
+        return serialKeyExecutor.submit(getQueueKey(machine),
+                                        () -> stateMachineRollbackWrapper.evaluateWithRollback(machine, processingFunc));
+    }
+
+    /**
+     * Stop the own thread pool of this wrapper, already submitted
+     * functions will be completed.
+     */
+    public void shutdown() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private String getQueueKey(StateMachine<StatesT, EventsT> machine) {
+        return machine.getId() == null
+               ? machine.getUuid().toString()
+               : machine.getId();
+    }
+}
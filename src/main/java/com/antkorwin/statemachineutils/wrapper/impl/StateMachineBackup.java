@@ -0,0 +1,65 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import com.antkorwin.statemachineutils.wrapper.ExtendedStateBackup;
+import org.springframework.statemachine.StateMachine;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * A backup of the state machine which used by wrappers to roll back
+ * a machine after the error in a processing function.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachineBackup<StatesT, EventsT> {
+
+    private final StateMachineSnapshot<StatesT, EventsT> snapshot;
+    private final ExtendedStateJournal journal;
+
+    private StateMachineBackup(StateMachineSnapshot<StatesT, EventsT> snapshot,
+                               ExtendedStateJournal journal) {
+        this.snapshot = snapshot;
+        this.journal = journal;
+    }
+
+    /**
+     * Take a backup of the state machine.
+     *
+     * @param machine state machine
+     * @param mode    strategy of a backup of extended state
+     * @param <StatesT> type of states
+     * @param <EventsT> type of events
+     * @return backup of the state machine
+     */
+    public static <StatesT, EventsT> StateMachineBackup<StatesT, EventsT> take(StateMachine<StatesT, EventsT> machine,
+                                                                               ExtendedStateBackup mode) {
+        if (mode == ExtendedStateBackup.DIRTY_TRACKING) {
+            ExtendedStateJournal journal = ExtendedStateJournal.start(machine);
+            if (journal != null) {
+                return new StateMachineBackup<>(StateMachineSnapshot.ofStates(machine), journal);
+            }
+        }
+        return new StateMachineBackup<>(StateMachineSnapshot.of(machine), null);
+    }
+
+    /**
+     * Keep all changes of the machine made after the backup.
+     */
+    public void commit() {
+        if (journal != null) {
+            journal.commit();
+        }
+    }
+
+    /**
+     * Restore the machine to the state at the moment of the backup.
+     *
+     * @param machine state machine
+     */
+    public void rollback(StateMachine<StatesT, EventsT> machine) {
+        if (journal != null) {
+            journal.rollback();
+        }
+        snapshot.restore(machine);
+    }
+}
@@ -1,42 +1,70 @@
 package com.antkorwin.statemachineutils.wrapper.impl;
 
 import com.antkorwin.commonutils.validation.Guard;
-import com.antkorwin.statemachineutils.persist.InMemoryStateMachinePersist;
+import com.antkorwin.statemachineutils.wrapper.ExtendedStateBackup;
+import com.antkorwin.statemachineutils.wrapper.MachineLockProvider;
 import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
 import com.antkorwin.xsync.XSync;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.statemachine.StateMachine;
-import org.springframework.statemachine.persist.DefaultStateMachinePersister;
-import org.springframework.statemachine.persist.StateMachinePersister;
 
-import java.util.UUID;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT;
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.STATE_MACHINE_IS_MANDATORY_ARGUMENT;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.TIMEOUT_IS_MANDATORY_ARGUMENT;
+import static java.util.stream.Collectors.toList;
 
 /**
  * Created on 09.06.2018.
  * <p>
  * StateMachineWrapper implementation, which restore a previous state
  * of a machine if throws an exception in processing.
+ * <p>
+ * A backup is taken as a lightweight {@link StateMachineSnapshot},
+ * the expensive reset of the machine happens only on the rollback.
+ * With the {@link ExtendedStateBackup#DIRTY_TRACKING} mode, the wrapper
+ * journals only changed variables of the extended state.
+ * <p>
+ * Processing functions of the same machine are mutually excluded
+ * by a lock from the {@link MachineLockProvider}, the key of the lock
+ * is an identifier of the machine.
  *
  * @author Korovin Anatoliy
  */
 @Slf4j
 public class StateMachineRollbackWrapper<StatesT, EventsT> implements StateMachineWrapper<StatesT, EventsT> {
 
-    private final XSync<String> stateMachineXSync;
-    private final StateMachinePersister storage;
-    private final InMemoryStateMachinePersist persist;
+    private final MachineLockProvider stateMachineLocks;
+    private final ExtendedStateBackup extendedStateBackup;
 
-    @Autowired
+    /**
+     * @param stateMachineXSync locks of machines
+     * @deprecated use the constructor with the {@link MachineLockProvider},
+     * e.g. {@code new StateMachineRollbackWrapper<>(new XSyncMachineLockProvider(xSync))}
+     */
+    @Deprecated
     public StateMachineRollbackWrapper(XSync<String> stateMachineXSync) {
-        this.stateMachineXSync = stateMachineXSync;
-        this.persist = new InMemoryStateMachinePersist();
-        this.storage = new DefaultStateMachinePersister(persist);
+        this(new XSyncMachineLockProvider(stateMachineXSync));
+    }
+
+    public StateMachineRollbackWrapper(MachineLockProvider stateMachineLocks) {
+        this(stateMachineLocks, ExtendedStateBackup.FULL_COPY);
+    }
+
+    @Autowired
+    public StateMachineRollbackWrapper(MachineLockProvider stateMachineLocks,
+                                       ExtendedStateBackup extendedStateBackup) {
+        this.stateMachineLocks = stateMachineLocks;
+        this.extendedStateBackup = extendedStateBackup;
     }
 
     @Override
@@ -46,18 +74,10 @@ public class StateMachineRollbackWrapper<StatesT, EventsT> implements StateMachi
         Guard.checkArgumentExist(machine, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
         Guard.checkArgumentExist(processingFunction, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
 
-        stateMachineXSync.execute(getSynchronizationKey(machine), () -> {
-            UUID id = backupStateMachine(storage, machine);
-            try {
-                processingFunction.accept(machine);
-                removeBackup(id);
-            } catch (Throwable e) {
-                log.warn("StateMachineWrapper rolling back after the error: ", e);
-                restoreStateMachine(storage, machine, id);
-                removeBackup(id);
-                throw e;
-            }
-        });
+        stateMachineLocks.evaluate(getSynchronizationKey(machine), () -> evaluateWithBackup(machine, m -> {
+            processingFunction.accept(m);
+            return null;
+        }));
     }
 
     @Override
@@ -67,19 +87,95 @@ public class StateMachineRollbackWrapper<StatesT, EventsT> implements StateMachi
         Guard.checkArgumentExist(machine, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
         Guard.checkArgumentExist(processingFunc, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
 
-        return stateMachineXSync.evaluate(getSynchronizationKey(machine), () -> {
-            UUID id = backupStateMachine(storage, machine);
+        return stateMachineLocks.evaluate(getSynchronizationKey(machine),
+                                          () -> evaluateWithBackup(machine, processingFunc));
+    }
+
+    @Override
+    public <ResultT> ResultT tryEvaluateWithRollback(StateMachine<StatesT, EventsT> machine,
+                                                     Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc,
+                                                     Duration timeout) {
+
+        Guard.checkArgumentExist(machine, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(processingFunc, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(timeout, TIMEOUT_IS_MANDATORY_ARGUMENT);
+
+        return stateMachineLocks.tryEvaluate(getSynchronizationKey(machine),
+                                             timeout.toNanos(),
+                                             TimeUnit.NANOSECONDS,
+                                             () -> evaluateWithBackup(machine, processingFunc));
+    }
+
+    @Override
+    public <ResultT> ResultT evaluateAllWithRollback(List<StateMachine<StatesT, EventsT>> machines,
+                                                     Function<List<StateMachine<StatesT, EventsT>>, ResultT> processingFunc) {
+
+        Guard.checkArgumentExist(machines, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(processingFunc, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
+        machines.forEach(machine -> Guard.checkArgumentExist(machine, STATE_MACHINE_IS_MANDATORY_ARGUMENT));
+
+        // the canonical order of locks avoids deadlocks between concurrent calls:
+        List<String> keys = machines.stream()
+                                    .map(this::getSynchronizationKey)
+                                    .distinct()
+                                    .sorted()
+                                    .collect(toList());
+
+        return evaluateUnderLocks(keys, 0, () -> evaluateAllWithBackup(machines, processingFunc));
+    }
+
+    private <ResultT> ResultT evaluateUnderLocks(List<String> keys, int index, Supplier<ResultT> supplier) {
+        if (index == keys.size()) {
+            return supplier.get();
+        }
+        return stateMachineLocks.evaluate(keys.get(index), () -> evaluateUnderLocks(keys, index + 1, supplier));
+    }
+
+    private <ResultT> ResultT evaluateAllWithBackup(List<StateMachine<StatesT, EventsT>> machines,
+                                                    Function<List<StateMachine<StatesT, EventsT>>, ResultT> processingFunc) {
+
+        List<StateMachine<StatesT, EventsT>> distinctMachines = new ArrayList<>(new LinkedHashSet<>(machines));
+        List<StateMachineBackup<StatesT, EventsT>> backups = new ArrayList<>(distinctMachines.size());
+        for (StateMachine<StatesT, EventsT> machine : distinctMachines) {
+            backups.add(backupStateMachine(machine));
+        }
+        try {
+            ResultT processingResult = processingFunc.apply(machines);
+            for (int i = backups.size() - 1; i >= 0; i--) {
+                backups.get(i).commit();
+            }
+            return processingResult;
+        } catch (Throwable e) {
+            log.warn("StateMachineWrapper rolling back all machines after the error: ", e);
+            for (int i = backups.size() - 1; i >= 0; i--) {
+                // a failed restore of one machine doesn't stop the restore of others:
+                try {
+                    restoreStateMachine(distinctMachines.get(i), backups.get(i));
+                } catch (RuntimeException restoreError) {
+                    e.addSuppressed(restoreError);
+                }
+            }
+            throw e;
+        }
+    }
+
+    private <ResultT> ResultT evaluateWithBackup(StateMachine<StatesT, EventsT> machine,
+                                                 Function<StateMachine<StatesT, EventsT>, ResultT> processingFunc) {
+
+        StateMachineBackup<StatesT, EventsT> backup = backupStateMachine(machine);
+        try {
+            ResultT processingResult = processingFunc.apply(machine);
+            backup.commit();
+            return processingResult;
+        } catch (Throwable e) {
+            log.warn("StateMachineWrapper rolling back after the error: ", e);
             try {
-                ResultT processingResult = processingFunc.apply(machine);
-                removeBackup(id);
-                return processingResult;
-            } catch (Throwable e) {
-                log.warn("StateMachineWrapper rolling back after the error: ", e);
-                restoreStateMachine(storage, machine, id);
-                removeBackup(id);
-                throw e;
+                restoreStateMachine(machine, backup);
+            } catch (RuntimeException restoreError) {
+                e.addSuppressed(restoreError);
             }
-        });
+            throw e;
+        }
     }
 
     private String getSynchronizationKey(StateMachine<StatesT, EventsT> machine) {
@@ -88,31 +184,22 @@ public class StateMachineRollbackWrapper<StatesT, EventsT> implements StateMachi
                : machine.getId();
     }
 
-    private UUID backupStateMachine(StateMachinePersister storage,
-                                    StateMachine<StatesT, EventsT> stateMachine) {
-        UUID id = UUID.randomUUID();
+    private StateMachineBackup<StatesT, EventsT> backupStateMachine(StateMachine<StatesT, EventsT> stateMachine) {
         try {
-            storage.persist(stateMachine, id);
-            return id;
+            return StateMachineBackup.take(stateMachine, extendedStateBackup);
         } catch (Exception e) {
             log.error("Error while making backup of state machine: {}", e);
             throw new RuntimeException("StateMachine backup error");
         }
     }
 
-    private void restoreStateMachine(StateMachinePersister storage,
-                                     StateMachine<StatesT, EventsT> stateMachine,
-                                     UUID id) {
-        if (id == null) return;
+    private void restoreStateMachine(StateMachine<StatesT, EventsT> stateMachine,
+                                     StateMachineBackup<StatesT, EventsT> backup) {
         try {
-            storage.restore(stateMachine, id);
+            backup.rollback(stateMachine);
         } catch (Exception e) {
             log.error("Error while restoring the state machine from backup");
-            throw new RuntimeException("StateMachine restore error");
+            throw new RuntimeException("StateMachine restore error", e);
         }
     }
-
-    private void removeBackup(UUID id) {
-        this.persist.remove(id);
-    }
 }
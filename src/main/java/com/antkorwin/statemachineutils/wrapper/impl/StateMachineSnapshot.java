@@ -0,0 +1,193 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import org.springframework.statemachine.ExtendedState;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.persist.DefaultStateMachinePersister;
+import org.springframework.statemachine.region.Region;
+import org.springframework.statemachine.state.AbstractState;
+import org.springframework.statemachine.state.HistoryPseudoState;
+import org.springframework.statemachine.state.PseudoState;
+import org.springframework.statemachine.state.State;
+import org.springframework.statemachine.support.AbstractStateMachine;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Lightweight backup of a state machine, which keeps only identifiers
+ * of active states (per region) and a copy of extended state variables.
+ * <p>
+ * Unlike the {@link DefaultStateMachinePersister} a snapshot doesn't build
+ * a {@link StateMachineContext} tree while taking a backup, the context
+ * is built only when we actually need to restore the state machine.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachineSnapshot<StatesT, EventsT> {
+
+    private final String id;
+    private final StatesT state;
+    private final Map<Object, Object> variables;
+    private final Map<StatesT, StatesT> historyStates;
+    private final List<StateMachineSnapshot<StatesT, EventsT>> childs;
+
+    private StateMachineSnapshot(String id,
+                                 StatesT state,
+                                 Map<Object, Object> variables,
+                                 Map<StatesT, StatesT> historyStates,
+                                 List<StateMachineSnapshot<StatesT, EventsT>> childs) {
+        this.id = id;
+        this.state = state;
+        this.variables = variables;
+        this.historyStates = historyStates;
+        this.childs = childs;
+    }
+
+    /**
+     * Take a snapshot of the current state of the state machine.
+     *
+     * @param machine state machine
+     * @param <StatesT> type of states
+     * @param <EventsT> type of events
+     * @return snapshot of the state machine
+     */
+    public static <StatesT, EventsT> StateMachineSnapshot<StatesT, EventsT> of(StateMachine<StatesT, EventsT> machine) {
+        ExtendedState extendedState = machine.getExtendedState();
+        return of(machine, extendedState, copyVariables(extendedState));
+    }
+
+    /**
+     * Take a snapshot of active states of the state machine,
+     * without a copy of extended state variables. Restoring of
+     * this snapshot doesn't change extended state of the machine.
+     *
+     * @param machine state machine
+     * @param <StatesT> type of states
+     * @param <EventsT> type of events
+     * @return snapshot of the state machine
+     */
+    public static <StatesT, EventsT> StateMachineSnapshot<StatesT, EventsT> ofStates(StateMachine<StatesT, EventsT> machine) {
+        return of(machine, null, null);
+    }
+
+    /**
+     * Restore the state machine to the state captured in this snapshot.
+     *
+     * @param machine state machine
+     */
+    public void restore(StateMachine<StatesT, EventsT> machine) {
+        StateMachineContext<StatesT, EventsT> context = toContext();
+        machine.stop();
+        machine.getStateMachineAccessor().doWithAllRegions(access -> access.resetStateMachine(context));
+        machine.start();
+    }
+
+    /**
+     * Build a state machine context from this snapshot.
+     *
+     * @return context of the state machine at the moment of the snapshot
+     */
+    public StateMachineContext<StatesT, EventsT> toContext() {
+        List<StateMachineContext<StatesT, EventsT>> childContexts = new ArrayList<>(childs.size());
+        for (StateMachineSnapshot<StatesT, EventsT> child : childs) {
+            childContexts.add(child.toContext());
+        }
+        return new DefaultStateMachineContext<>(childContexts,
+                                                state,
+                                                null,
+                                                null,
+                                                variables == null ? null : new DefaultExtendedState(variables),
+                                                historyStates,
+                                                id);
+    }
+
+    public StatesT getState() {
+        return state;
+    }
+
+    public Map<Object, Object> getVariables() {
+        return variables == null ? null : Collections.unmodifiableMap(variables);
+    }
+
+    private static <StatesT, EventsT> StateMachineSnapshot<StatesT, EventsT> of(StateMachine<StatesT, EventsT> machine,
+                                                                              ExtendedState rootExtendedState,
+                                                                              Map<Object, Object> rootVariables) {
+        // regions and sub-machines share the extended state of the root machine,
+        // so we don't need to copy the same variables on each level:
+        Map<Object, Object> variables = rootVariables == null || machine.getExtendedState() == rootExtendedState
+                                        ? rootVariables
+                                        : copyVariables(machine.getExtendedState());
+
+        List<StateMachineSnapshot<StatesT, EventsT>> childs = Collections.emptyList();
+        State<StatesT, EventsT> current = machine.getState();
+        StatesT stateId = null;
+
+        if (current != null && current.isSubmachineState()) {
+            StateMachine<StatesT, EventsT> submachine = ((AbstractState<StatesT, EventsT>) current).getSubmachine();
+            stateId = submachine.getState().getId();
+            childs = Collections.singletonList(of(submachine, rootExtendedState, rootVariables));
+        } else if (current != null && current.isOrthogonal()) {
+            Collection<Region<StatesT, EventsT>> regions = ((AbstractState<StatesT, EventsT>) current).getRegions();
+            childs = new ArrayList<>(regions.size());
+            for (Region<StatesT, EventsT> region : regions) {
+                childs.add(of((StateMachine<StatesT, EventsT>) region, rootExtendedState, rootVariables));
+            }
+            stateId = current.getId();
+        } else if (current != null) {
+            stateId = current.getId();
+        }
+
+        return new StateMachineSnapshot<>(machine.getId(), stateId, variables, historyStatesOf(machine), childs);
+    }
+
+    private static Map<Object, Object> copyVariables(ExtendedState extendedState) {
+        return new HashMap<>(extendedState.getVariables());
+    }
+
+    private static <StatesT, EventsT> Map<StatesT, StatesT> historyStatesOf(StateMachine<StatesT, EventsT> machine) {
+
+        if (!(machine instanceof AbstractStateMachine)) {
+            return Collections.emptyMap();
+        }
+
+        Map<StatesT, StatesT> historyStates = Collections.emptyMap();
+
+        State<StatesT, EventsT> history = historyOf(machine);
+        if (history != null) {
+            historyStates = new HashMap<>();
+            historyStates.put(null, history.getId());
+        }
+
+        for (State<StatesT, EventsT> state : machine.getStates()) {
+            if (!state.isSubmachineState()) {
+                continue;
+            }
+            State<StatesT, EventsT> submachineHistory =
+                    historyOf(((AbstractState<StatesT, EventsT>) state).getSubmachine());
+
+            if (submachineHistory != null) {
+                if (historyStates.isEmpty()) {
+                    historyStates = new HashMap<>();
+                }
+                historyStates.put(state.getId(), submachineHistory.getId());
+            }
+        }
+        return historyStates;
+    }
+
+    private static <StatesT, EventsT> State<StatesT, EventsT> historyOf(StateMachine<StatesT, EventsT> machine) {
+        PseudoState<StatesT, EventsT> history = ((AbstractStateMachine<StatesT, EventsT>) machine).getHistoryState();
+        return history == null
+               ? null
+               : ((HistoryPseudoState<StatesT, EventsT>) history).getState();
+    }
+}
@@ -2,37 +2,45 @@ package com.antkorwin.statemachineutils.wrapper.impl;
 
 import com.antkorwin.commonutils.validation.Guard;
 import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.TransactionalStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.TxOptions;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.statemachine.StateMachine;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.TransactionStatus;
-import org.springframework.transaction.support.DefaultTransactionDefinition;
 
 import javax.annotation.PostConstruct;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT;
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.STATE_MACHINE_IS_MANDATORY_ARGUMENT;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.TX_OPTIONS_IS_MANDATORY_ARGUMENT;
 
 /**
  * Created on 07.06.2018.
  * <p>
  * StateMachine rollback wrapper which putting
  * the whole a processing function in a new transaction boundary.
+ * <p>
+ * The wrapper uses a transaction manager of the application if it is
+ * passed in the constructor, otherwise it creates own JpaTransactionManager.
  *
  * @author Korovin Anatoliy
  */
 @Slf4j
-public class StateMachineTransactionalWrapper<StatesT, EventsT> implements StateMachineWrapper<StatesT, EventsT> {
+public class StateMachineTransactionalWrapper<StatesT, EventsT> implements TransactionalStateMachineWrapper<StatesT, EventsT> {
 
     private final StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper;
-    private JpaTransactionManager transactionManager;
+    private PlatformTransactionManager transactionManager;
 
     @PersistenceContext
     private EntityManager em;
@@ -45,10 +53,18 @@ public class StateMachineTransactionalWrapper<StatesT, EventsT> implements State
         this.stateMachineRollbackWrapper = stateMachineRollbackWrapper;
     }
 
+    public StateMachineTransactionalWrapper(StateMachineWrapper<StatesT, EventsT> stateMachineRollbackWrapper,
+                                            PlatformTransactionManager transactionManager) {
+
+        this.stateMachineRollbackWrapper = stateMachineRollbackWrapper;
+        this.transactionManager = transactionManager;
+    }
+
     @PostConstruct
     public void init() {
-        this.transactionManager = new JpaTransactionManager();
-        this.transactionManager.setEntityManagerFactory(em.getEntityManagerFactory());
+        if (this.transactionManager == null) {
+            this.transactionManager = new JpaTransactionManager(em.getEntityManagerFactory());
+        }
     }
 
     @Override
@@ -59,7 +75,7 @@ public class StateMachineTransactionalWrapper<StatesT, EventsT> implements State
         Guard.checkArgumentExist(processingFunction, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
 
         Consumer<StateMachine<StatesT, EventsT>> safety =
-                (machine) -> runInTransaction(() -> processingFunction.accept(machine));
+                (machine) -> runInTransaction(() -> processingFunction.accept(machine), TxOptions.DEFAULT);
 
         stateMachineRollbackWrapper.runWithRollback(stateMachine, safety);
     }
@@ -72,14 +88,56 @@ public class StateMachineTransactionalWrapper<StatesT, EventsT> implements State
         Guard.checkArgumentExist(processingFunction, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
 
         Function<StateMachine<StatesT, EventsT>, ResultT> safety =
-                machine -> evaluateInTransaction(() -> processingFunction.apply(machine));
+                machine -> evaluateInTransaction(() -> processingFunction.apply(machine), TxOptions.DEFAULT);
+
+        return stateMachineRollbackWrapper.evaluateWithRollback(stateMachine, safety);
+    }
+
+    @Override
+    public <ResultT> ResultT evaluateWithRollback(StateMachine<StatesT, EventsT> stateMachine,
+                                                  Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                                  TxOptions txOptions) {
+
+        Guard.checkArgumentExist(stateMachine, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(processingFunction, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(txOptions, TX_OPTIONS_IS_MANDATORY_ARGUMENT);
+
+        Function<StateMachine<StatesT, EventsT>, ResultT> safety =
+                machine -> evaluateInTransaction(() -> processingFunction.apply(machine), txOptions);
 
         return stateMachineRollbackWrapper.evaluateWithRollback(stateMachine, safety);
     }
 
-    private void runInTransaction(Runnable runnable) {
+    @Override
+    public <ResultT> ResultT tryEvaluateWithRollback(StateMachine<StatesT, EventsT> stateMachine,
+                                                     Function<StateMachine<StatesT, EventsT>, ResultT> processingFunction,
+                                                     Duration timeout) {
+
+        Guard.checkArgumentExist(stateMachine, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(processingFunction, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
+
+        Function<StateMachine<StatesT, EventsT>, ResultT> safety =
+                machine -> evaluateInTransaction(() -> processingFunction.apply(machine), TxOptions.DEFAULT);
+
+        return stateMachineRollbackWrapper.tryEvaluateWithRollback(stateMachine, safety, timeout);
+    }
+
+    @Override
+    public <ResultT> ResultT evaluateAllWithRollback(List<StateMachine<StatesT, EventsT>> stateMachines,
+                                                     Function<List<StateMachine<StatesT, EventsT>>, ResultT> processingFunction) {
+
+        Guard.checkArgumentExist(stateMachines, STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+        Guard.checkArgumentExist(processingFunction, PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT);
+
+        Function<List<StateMachine<StatesT, EventsT>>, ResultT> safety =
+                machines -> evaluateInTransaction(() -> processingFunction.apply(machines), TxOptions.DEFAULT);
+
+        return stateMachineRollbackWrapper.evaluateAllWithRollback(stateMachines, safety);
+    }
+
+    private void runInTransaction(Runnable runnable, TxOptions txOptions) {
 
-        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        TransactionStatus status = transactionManager.getTransaction(txOptions.getDefinition());
         try {
             runnable.run();
             transactionManager.commit(status);
@@ -90,9 +148,9 @@ public class StateMachineTransactionalWrapper<StatesT, EventsT> implements State
         }
     }
 
-    private <ResultT> ResultT evaluateInTransaction(Supplier<ResultT> supplier) {
+    private <ResultT> ResultT evaluateInTransaction(Supplier<ResultT> supplier, TxOptions txOptions) {
 
-        TransactionStatus status = transactionManager.getTransaction(new DefaultTransactionDefinition());
+        TransactionStatus status = transactionManager.getTransaction(txOptions.getDefinition());
         try {
             ResultT result = supplier.get();
             transactionManager.commit(status);
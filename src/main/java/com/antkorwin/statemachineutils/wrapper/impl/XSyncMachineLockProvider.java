@@ -0,0 +1,38 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import com.antkorwin.statemachineutils.wrapper.MachineLockProvider;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapperException;
+import com.antkorwin.xsync.XSync;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.LOCK_PROVIDER_DOES_NOT_SUPPORT_TIMEOUT;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * MachineLockProvider based on the XSync, it is a previous locking
+ * of the rollback wrapper. The XSync can't wait for a mutex with
+ * a timeout, so the tryEvaluate method isn't supported.
+ *
+ * @author Korovin Anatoliy
+ */
+public class XSyncMachineLockProvider implements MachineLockProvider {
+
+    private final XSync<String> xSync;
+
+    public XSyncMachineLockProvider(XSync<String> xSync) {
+        this.xSync = xSync;
+    }
+
+    @Override
+    public <ResultT> ResultT evaluate(String key, Supplier<ResultT> supplier) {
+        return xSync.evaluate(key, supplier);
+    }
+
+    @Override
+    public <ResultT> ResultT tryEvaluate(String key, long timeout, TimeUnit unit, Supplier<ResultT> supplier) {
+        throw new StateMachineWrapperException(LOCK_PROVIDER_DOES_NOT_SUPPORT_TIMEOUT);
+    }
+}
@@ -0,0 +1,23 @@
+-- Tables of the statemachine-utils JDBC persist with default names.
+
+CREATE TABLE state_machine_context (
+    id      VARCHAR2(36) PRIMARY KEY,
+    context BLOB NOT NULL,
+    version NUMBER(19) NOT NULL
+);
+
+-- with the statemachine-utils.persist.jdbc.delta.enabled property
+CREATE TABLE state_machine_delta (
+    id    VARCHAR2(36) NOT NULL,
+    seq   NUMBER(19) NOT NULL,
+    delta BLOB NOT NULL,
+    PRIMARY KEY (id, seq)
+);
+
+-- with the statemachine-utils.persist.event-sourcing.enabled property
+CREATE TABLE state_machine_event (
+    id    VARCHAR2(36) NOT NULL,
+    seq   NUMBER(19) NOT NULL,
+    event BLOB NOT NULL,
+    PRIMARY KEY (id, seq)
+);
@@ -0,0 +1,23 @@
+-- Tables of the statemachine-utils JDBC persist with default names.
+
+CREATE TABLE state_machine_context (
+    id      VARCHAR(36) PRIMARY KEY,
+    context BYTEA NOT NULL,
+    version BIGINT NOT NULL
+);
+
+-- with the statemachine-utils.persist.jdbc.delta.enabled property
+CREATE TABLE state_machine_delta (
+    id    VARCHAR(36) NOT NULL,
+    seq   BIGINT NOT NULL,
+    delta BYTEA NOT NULL,
+    PRIMARY KEY (id, seq)
+);
+
+-- with the statemachine-utils.persist.event-sourcing.enabled property
+CREATE TABLE state_machine_event (
+    id    VARCHAR(36) NOT NULL,
+    seq   BIGINT NOT NULL,
+    event BYTEA NOT NULL,
+    PRIMARY KEY (id, seq)
+);
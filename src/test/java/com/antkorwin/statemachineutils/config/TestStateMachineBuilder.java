@@ -0,0 +1,34 @@
+package com.antkorwin.statemachineutils.config;
+
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.config.StateMachineBuilder;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * Builds a state machine from the {@link StateMachineConfig}
+ * without a spring context, it's intended to use in benchmarks.
+ *
+ * @author Korovin Anatoliy
+ */
+public class TestStateMachineBuilder {
+
+    private TestStateMachineBuilder() {
+    }
+
+    public static StateMachine<States, Events> build() {
+        try {
+            StateMachineConfig config = new StateMachineConfig();
+            StateMachineBuilder.Builder<States, Events> builder = StateMachineBuilder.builder();
+            config.configure(builder.configureConfiguration());
+            config.configure(builder.configureStates());
+            config.configure(builder.configureTransitions());
+
+            StateMachine<States, Events> machine = builder.build();
+            machine.start();
+            return machine;
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to build a test state machine", e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import org.junit.Test;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class BinaryContextCodecTest {
+
+    private final BinaryContextCodec<States, Events> codec = new BinaryContextCodec<>(States.class, Events.class);
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        // Arrange
+        DefaultExtendedState extendedState = new DefaultExtendedState();
+        Map<Object, Object> variables = extendedState.getVariables();
+        variables.put("string", "value");
+        variables.put("int", -42);
+        variables.put("long", Long.MAX_VALUE);
+        variables.put("bool", true);
+        variables.put("double", 3.14);
+        variables.put("uuid", UUID.randomUUID());
+        variables.put("state", States.TESTING);
+        variables.put("event", Events.DEPLOY);
+        variables.put("bytes", new byte[]{1, 2, 3});
+        variables.put("enum", DayOfWeek.FRIDAY);
+        variables.put("serializable", new BigDecimal("10.5"));
+        variables.put(7, "integer key");
+
+        Map<String, Object> headers = new HashMap<>();
+        headers.put("header", 1L);
+        headers.put("empty", null);
+
+        StateMachineContext<States, Events> child =
+                new DefaultStateMachineContext<>(States.IN_PROGRESS, null, null, null, null, "child");
+        StateMachineContext<States, Events> context =
+                new DefaultStateMachineContext<>(Collections.singletonList(child), States.TESTING, Events.DEPLOY,
+                                                 headers, extendedState,
+                                                 Collections.singletonMap(null, States.IN_PROGRESS), "machine");
+
+        // Act
+        StateMachineContext<States, Events> result = codec.decode(codec.encode(context));
+
+        // Asserts
+        assertThat(result.getId()).isEqualTo("machine");
+        assertThat(result.getState()).isEqualTo(States.TESTING);
+        assertThat(result.getEvent()).isEqualTo(Events.DEPLOY);
+        assertThat(result.getEventHeaders()).isEqualTo(headers);
+        assertThat(result.getHistoryStates()).containsExactly(entry(null, States.IN_PROGRESS));
+
+        Map<Object, Object> resultVariables = result.getExtendedState().getVariables();
+        assertThat(resultVariables).hasSameSizeAs(variables);
+        variables.forEach((key, value) -> {
+            if (value instanceof byte[]) {
+                assertThat((byte[]) resultVariables.get(key)).isEqualTo((byte[]) value);
+            } else {
+                assertThat(resultVariables).containsEntry(key, value);
+            }
+        });
+        assertThat(resultVariables.get("int")).isInstanceOf(Integer.class);
+
+        assertThat(result.getChilds()).hasSize(1);
+        StateMachineContext<States, Events> resultChild = result.getChilds().get(0);
+        assertThat(resultChild.getId()).isEqualTo("child");
+        assertThat(resultChild.getState()).isEqualTo(States.IN_PROGRESS);
+        assertThat(resultChild.getExtendedState()).isNull();
+        assertThat(resultChild.getEventHeaders()).isNull();
+        assertThat(resultChild.getHistoryStates()).isEmpty();
+    }
+
+    @Test
+    public void testEncodedContextIsSmallerThanJavaSerialization() throws Exception {
+        // Arrange
+        DefaultExtendedState extendedState = new DefaultExtendedState();
+        extendedState.getVariables().put("counter", 1);
+        extendedState.getVariables().put("owner", UUID.randomUUID());
+        StateMachineContext<States, Events> context =
+                new DefaultStateMachineContext<>(Arrays.asList(), States.DONE, null, null,
+                                                 extendedState, null, UUID.randomUUID().toString());
+
+        // Act
+        int binarySize = codec.encode(context).length;
+        int javaSize = new JavaSerializationContextCodec<States, Events>().encode(context).length;
+
+        // Assert
+        assertThat(binarySize * 5).isLessThan(javaSize);
+    }
+
+    @Test
+    public void testTruncatedInputIsRejected() throws Exception {
+        // Arrange
+        DefaultExtendedState extendedState = new DefaultExtendedState();
+        extendedState.getVariables().put("counter", 1);
+        extendedState.getVariables().put("owner", UUID.randomUUID());
+        StateMachineContext<States, Events> context =
+                new DefaultStateMachineContext<>(States.DONE, Events.DEPLOY, null, extendedState, null, "machine");
+        byte[] bytes = codec.encode(context);
+
+        // Act & Asserts
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            assertThatThrownBy(() -> codec.decode(truncated)).isInstanceOf(IOException.class);
+        }
+    }
+
+    @Test
+    public void testMalformedInputIsRejected() {
+        // Arrange
+        byte[] unknownState = {1, 0, 100};
+        byte[] hugeSize = {1, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x7F};
+        byte[] unknownTag = {1, 0, 0, 0, 2, 0, 42};
+
+        // Act & Asserts
+        assertThatThrownBy(() -> codec.decode(unknownState)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> codec.decode(hugeSize)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> codec.decode(unknownTag)).isInstanceOf(IOException.class);
+    }
+
+    private static <K, V> Map.Entry<K, V> entry(K key, V value) {
+        return new AbstractMap.SimpleEntry<>(key, value);
+    }
+}
@@ -0,0 +1,84 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Compares the speed of the {@link BinaryContextCodec} and the {@link JavaSerializationContextCodec}.
+ * <p>
+ * The context of this benchmark is encoded to 118 bytes by the binary codec
+ * and to 603 bytes by the java serialization.
+ *
+ * @author Korovin Anatoliy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextCodecBenchmark {
+
+    @Param({"BINARY", "JAVA"})
+    private String codecType;
+
+    private StateMachineContextCodec<States, Events> codec;
+    private StateMachineContext<States, Events> context;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        codec = "BINARY".equals(codecType)
+                ? new BinaryContextCodec<>(States.class, Events.class)
+                : new JavaSerializationContextCodec<>();
+
+        DefaultExtendedState extendedState = new DefaultExtendedState();
+        extendedState.getVariables().put("counter", 42);
+        extendedState.getVariables().put("owner", UUID.randomUUID());
+        extendedState.getVariables().put("comment", "rejected by QA");
+        StateMachineContext<States, Events> child =
+                new DefaultStateMachineContext<>(States.IN_PROGRESS, null, null, null, null, "child");
+        context = new DefaultStateMachineContext<>(Collections.singletonList(child), States.TESTING,
+                                                   Events.FINISH_FEATURE, null, extendedState,
+                                                   Collections.singletonMap(null, States.IN_PROGRESS),
+                                                   UUID.randomUUID().toString());
+        encoded = codec.encode(context);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return codec.encode(context);
+    }
+
+    @Benchmark
+    public StateMachineContext<States, Events> decode() throws Exception {
+        return codec.decode(encoded);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ContextCodecBenchmark.class.getSimpleName())
+                                       .build()).run();
+    }
+}
@@ -0,0 +1,118 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import org.junit.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created on 18.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class DefaultPersistConfigTest {
+
+    private final ApplicationContextRunner runner =
+            new ApplicationContextRunner().withPropertyValues("statemachine-utils.persist.jdbc.enabled=true",
+                                                              "statemachine-utils.persist.jdbc.create-table=true");
+
+    @Test
+    public void testCodecOfApplication() {
+        runner.withUserConfiguration(JdbcConfig.class, BinaryCodecConfig.class, DefaultPersistConfig.class)
+              .run(context -> {
+                  // Act
+                  byte[] bytes = writeAndReadRow(context.getBean("jdbcPersist", StateMachinePersist.class),
+                                                 context.getBean(JdbcTemplate.class));
+
+                  // Asserts
+                  StateMachineContext<States, Events> decoded =
+                          new BinaryContextCodec<>(States.class, Events.class).decode(bytes);
+                  assertThat(decoded.getState()).isEqualTo(States.DONE);
+              });
+    }
+
+    @Test
+    public void testJavaSerializationCodecByDefault() {
+        runner.withUserConfiguration(JdbcConfig.class, DefaultPersistConfig.class)
+              .run(context -> {
+                  // Act
+                  byte[] bytes = writeAndReadRow(context.getBean("jdbcPersist", StateMachinePersist.class),
+                                                 context.getBean(JdbcTemplate.class));
+
+                  // Asserts
+                  StateMachineContext<States, Events> decoded =
+                          new JavaSerializationContextCodec<States, Events>().decode(bytes);
+                  assertThat(decoded.getState()).isEqualTo(States.DONE);
+              });
+    }
+
+    @Test
+    public void testTablesBySchemaScript() {
+        new ApplicationContextRunner().withPropertyValues("statemachine-utils.persist.jdbc.enabled=true")
+                                      .withUserConfiguration(JdbcConfig.class, DefaultPersistConfig.class)
+                                      .run(context -> {
+                                          // Arrange
+                                          JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+                                          assertThat(tableExists(jdbcTemplate)).isFalse();
+                                          new ResourceDatabasePopulator(new ClassPathResource("statemachine-utils/schema-h2.sql"))
+                                                  .execute(jdbcTemplate.getDataSource());
+
+                                          // Act
+                                          byte[] bytes = writeAndReadRow(context.getBean("jdbcPersist", StateMachinePersist.class),
+                                                                         jdbcTemplate);
+
+                                          // Assert
+                                          assertThat(bytes).isNotEmpty();
+                                      });
+    }
+
+    private boolean tableExists(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?",
+                                           Integer.class,
+                                           JdbcStateMachinePersist.DEFAULT_TABLE_NAME.toUpperCase()) > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private byte[] writeAndReadRow(StateMachinePersist persist, JdbcTemplate jdbcTemplate) throws Exception {
+        UUID id = UUID.randomUUID();
+        persist.write(new DefaultStateMachineContext<>(States.DONE, null, null, new DefaultExtendedState(), null, id.toString()),
+                      id);
+        return jdbcTemplate.queryForObject("SELECT context FROM " + JdbcStateMachinePersist.DEFAULT_TABLE_NAME + " WHERE id = ?",
+                                           byte[].class, id.toString());
+    }
+
+    @Configuration
+    public static class JdbcConfig {
+
+        @Bean
+        public JdbcTemplate jdbcTemplate() {
+            return new JdbcTemplate(new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                                                                 .generateUniqueName(true)
+                                                                 .build());
+        }
+    }
+
+    @Configuration
+    public static class BinaryCodecConfig {
+
+        @Bean
+        public StateMachineContextCodec<States, Events> binaryContextCodec() {
+            return new BinaryContextCodec<>(States.class, Events.class);
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class DeltaStateMachinePersistTest {
+
+    private static final int VARIABLES_NUMBER = 1000;
+
+    private final BinaryContextCodec<States, Events> codec = new BinaryContextCodec<>(States.class, Events.class);
+
+    @Test
+    public void testDeltaContainsOnlyChangedVariables() throws Exception {
+        // Arrange
+        InMemoryStateMachinePersist snapshots = new InMemoryStateMachinePersist();
+        InMemoryStateMachineDeltaLog deltaLog = new InMemoryStateMachineDeltaLog();
+        DeltaStateMachinePersist<States, Events> persist = persist(snapshots, deltaLog, 10);
+        UUID id = UUID.randomUUID();
+        Map<Object, Object> variables = largeVariables();
+        persist.write(context(id, States.BACKLOG, variables), id);
+        int snapshotSize = codec.encode(context(id, States.BACKLOG, variables)).length;
+
+        // Act
+        variables.put("counter", 1);
+        variables.remove("key-0");
+        persist.write(context(id, States.IN_PROGRESS, variables), id);
+
+        // Asserts
+        List<byte[]> deltas = deltaLog.read(id, 0);
+        assertThat(deltas).hasSize(1);
+        assertThat(deltas.get(0).length * 20).isLessThan(snapshotSize);
+
+        StateMachineContext<States, Events> result = new DeltaStateMachinePersist<>(snapshots, deltaLog, codec, 10, 10)
+                .read(id);
+        assertThat(result.getState()).isEqualTo(States.IN_PROGRESS);
+        assertThat(result.getExtendedState().getVariables()).isEqualTo(variables);
+    }
+
+    @Test
+    public void testDeltasAreFoldedInSnapshot() throws Exception {
+        // Arrange
+        InMemoryStateMachinePersist snapshots = new InMemoryStateMachinePersist();
+        InMemoryStateMachineDeltaLog deltaLog = new InMemoryStateMachineDeltaLog();
+        DeltaStateMachinePersist<States, Events> persist = persist(snapshots, deltaLog, 3);
+        UUID id = UUID.randomUUID();
+        Map<Object, Object> variables = new HashMap<>();
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            variables.put("counter", i);
+            persist.write(context(id, States.IN_PROGRESS, variables), id);
+        }
+
+        // Asserts
+        // snapshot, three deltas, snapshot:
+        assertThat(deltaLog.read(id, 0)).isEmpty();
+        assertThat(snapshots.read(id).getExtendedState().getVariables()).containsEntry("counter", 4);
+
+        variables.put("counter", 5);
+        persist.write(context(id, States.TESTING, variables), id);
+        assertThat(deltaLog.read(id, 0)).hasSize(1);
+        StateMachineContext<States, Events> result = persist(snapshots, deltaLog, 3).read(id);
+        assertThat(result.getState()).isEqualTo(States.TESTING);
+        assertThat(result.getExtendedState().getVariables()).containsEntry("counter", 5);
+    }
+
+    @Test
+    public void testDeltasFoldedInSnapshotAreNotAppliedAgain() throws Exception {
+        // Arrange
+        InMemoryStateMachinePersist snapshots = new InMemoryStateMachinePersist();
+        AtomicBoolean crash = new AtomicBoolean();
+        InMemoryStateMachineDeltaLog deltaLog = new InMemoryStateMachineDeltaLog() {
+            @Override
+            public void clear(UUID id, long toSequence) {
+                if (crash.get()) {
+                    throw new RuntimeException("crash after the snapshot");
+                }
+                super.clear(id, toSequence);
+            }
+        };
+        DeltaStateMachinePersist<States, Events> persist = persist(snapshots, deltaLog, 2);
+        UUID id = UUID.randomUUID();
+        Map<Object, Object> variables = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            variables.put("counter", i);
+            persist.write(context(id, States.IN_PROGRESS, variables), id);
+        }
+
+        // Act
+        crash.set(true);
+        variables.put("counter", 3);
+        assertThatThrownBy(() -> persist.write(context(id, States.TESTING, variables), id))
+                .hasMessage("crash after the snapshot");
+        crash.set(false);
+
+        // Asserts
+        assertThat(deltaLog.read(id, 0)).hasSize(2);
+        DeltaStateMachinePersist<States, Events> restarted = persist(snapshots, deltaLog, 2);
+        StateMachineContext<States, Events> result = restarted.read(id);
+        assertThat(result.getState()).isEqualTo(States.TESTING);
+        assertThat(result.getExtendedState().getVariables()).containsEntry("counter", 3);
+
+        variables.put("counter", 4);
+        restarted.write(context(id, States.DONE, variables), id);
+        result = persist(snapshots, deltaLog, 2).read(id);
+        assertThat(result.getState()).isEqualTo(States.DONE);
+        assertThat(result.getExtendedState().getVariables()).containsEntry("counter", 4);
+    }
+
+    @Test
+    public void testMutableVariableIsWrittenInEachDelta() throws Exception {
+        // Arrange
+        InMemoryStateMachinePersist snapshots = new InMemoryStateMachinePersist();
+        InMemoryStateMachineDeltaLog deltaLog = new InMemoryStateMachineDeltaLog();
+        DeltaStateMachinePersist<States, Events> persist = persist(snapshots, deltaLog, 10);
+        UUID id = UUID.randomUUID();
+        List<String> list = new ArrayList<>();
+        Map<Object, Object> variables = new HashMap<>();
+        variables.put("list", list);
+        persist.write(context(id, States.BACKLOG, variables), id);
+
+        // Act
+        list.add("changed in place");
+        persist.write(context(id, States.BACKLOG, variables), id);
+
+        // Assert
+        StateMachineContext<States, Events> result = persist(snapshots, deltaLog, 10).read(id);
+        assertThat(result.getExtendedState().get("list", List.class)).containsExactly("changed in place");
+    }
+
+    @Test
+    public void testJdbcDeltaLog() throws Exception {
+        // Arrange
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                                                                 .generateUniqueName(true)
+                                                                 .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        JdbcStateMachinePersist<States, Events> snapshots = new JdbcStateMachinePersist<>(jdbcTemplate, codec,
+                                                                                           "state_machine_context");
+        snapshots.createTableIfNotExists();
+        JdbcStateMachineDeltaLog deltaLog = new JdbcStateMachineDeltaLog(jdbcTemplate);
+        deltaLog.createTableIfNotExists();
+        DeltaStateMachinePersist<States, Events> persist = persist(snapshots, deltaLog, 10);
+        UUID id = UUID.randomUUID();
+        Map<Object, Object> variables = largeVariables();
+
+        // Act
+        persist.write(context(id, States.BACKLOG, variables), id);
+        for (int i = 0; i < 3; i++) {
+            variables.put("counter", i);
+            persist.write(context(id, States.IN_PROGRESS, variables), id);
+        }
+
+        // Asserts
+        assertThat(deltaLog.read(id, 0)).hasSize(3);
+        StateMachineContext<States, Events> result = new DeltaStateMachinePersist<>(
+                new JdbcStateMachinePersist<>(jdbcTemplate, codec, "state_machine_context"),
+                deltaLog, codec, 10, 10).read(id);
+        assertThat(result.getState()).isEqualTo(States.IN_PROGRESS);
+        assertThat(result.getExtendedState().getVariables()).isEqualTo(variables);
+        database.shutdown();
+    }
+
+    private DeltaStateMachinePersist<States, Events> persist(StateMachinePersist<States, Events, UUID> snapshots,
+                                                             StateMachineDeltaLog deltaLog,
+                                                             int snapshotInterval) {
+        return new DeltaStateMachinePersist<>(snapshots, deltaLog, codec, snapshotInterval, 100);
+    }
+
+    private Map<Object, Object> largeVariables() {
+        Map<Object, Object> variables = new HashMap<>();
+        for (int i = 0; i < VARIABLES_NUMBER; i++) {
+            variables.put("key-" + i, "value-" + i);
+        }
+        return variables;
+    }
+
+    private StateMachineContext<States, Events> context(UUID id, States state, Map<Object, Object> variables) {
+        return new DefaultStateMachineContext<>(state, null, null,
+                                                new DefaultExtendedState(new HashMap<>(variables)),
+                                                null, id.toString());
+    }
+}
@@ -0,0 +1,138 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.config.TestStateMachineBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.persist.StateMachinePersister;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Measures the {@link EventSourcedStateMachinePersister} on the H2 database:
+ * <ul>
+ * <li>restore - a machine with {@link #EVENTS_NUMBER} events in the log, the number
+ * of replayed events (and the time of the restore) is bounded by the snapshot interval;</li>
+ * <li>appendEvent - an event and the persist of the machine, a snapshot is written
+ * once per the snapshot interval;</li>
+ * <li>overwriteContext - the same event and a full update of the context
+ * by the {@link JdbcStateMachinePersist}, to compare with.</li>
+ * </ul>
+ *
+ * @author Korovin Anatoliy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventSourcedPersisterBenchmark {
+
+    private static final int EVENTS_NUMBER = 1000;
+    private static final int VARIABLES_NUMBER = 100;
+
+    @Param({"8", "64", "512"})
+    private int snapshotInterval;
+
+    private EmbeddedDatabase database;
+    private StateMachinePersister<States, Events, UUID> eventSourcedPersister;
+    private StateMachinePersister<States, Events, UUID> contextPersister;
+    private UUID restoredId;
+    private UUID appendedId;
+    private UUID overwrittenId;
+    private StateMachine<States, Events> appendedMachine;
+    private StateMachine<States, Events> overwrittenMachine;
+    private StateMachine<States, Events> restoredMachine;
+
+    @Setup
+    public void setUp() throws Exception {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                                                .generateUniqueName(true)
+                                                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(database);
+        BinaryContextCodec<States, Events> codec = new BinaryContextCodec<>(States.class, Events.class);
+        JdbcStateMachinePersist<States, Events> jdbcPersist = new JdbcStateMachinePersist<>(jdbcTemplate, codec,
+                                                                                            JdbcStateMachinePersist.DEFAULT_TABLE_NAME);
+        jdbcPersist.createTableIfNotExists();
+        JdbcStateMachineEventLog eventLog = new JdbcStateMachineEventLog(jdbcTemplate);
+        eventLog.createTableIfNotExists();
+
+        eventSourcedPersister = new EventSourcedStateMachinePersister<>(jdbcPersist, eventLog, codec, snapshotInterval);
+        contextPersister = new DefaultStateMachinePersisterDecorator<>(jdbcPersist);
+
+        restoredId = UUID.randomUUID();
+        StateMachine<States, Events> machine = newMachine(eventSourcedPersister, restoredId);
+        machine.sendEvent(Events.START_FEATURE);
+        for (int i = 1; i < EVENTS_NUMBER; i++) {
+            machine.sendEvent(Events.INCREMENT);
+            eventSourcedPersister.persist(machine, restoredId);
+        }
+        restoredMachine = TestStateMachineBuilder.build();
+
+        appendedId = UUID.randomUUID();
+        appendedMachine = newMachine(eventSourcedPersister, appendedId);
+        overwrittenId = UUID.randomUUID();
+        overwrittenMachine = newMachine(contextPersister, overwrittenId);
+    }
+
+    @TearDown
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Benchmark
+    public Object restore() throws Exception {
+        return eventSourcedPersister.restore(restoredMachine, restoredId);
+    }
+
+    @Benchmark
+    public Object appendEvent() throws Exception {
+        appendedMachine.sendEvent(Events.INCREMENT);
+        eventSourcedPersister.persist(appendedMachine, appendedId);
+        return appendedMachine;
+    }
+
+    @Benchmark
+    public Object overwriteContext() throws Exception {
+        overwrittenMachine.sendEvent(Events.INCREMENT);
+        contextPersister.persist(overwrittenMachine, overwrittenId);
+        return overwrittenMachine;
+    }
+
+    private StateMachine<States, Events> newMachine(StateMachinePersister<States, Events, UUID> persister,
+                                                    UUID id) throws Exception {
+        StateMachine<States, Events> machine = TestStateMachineBuilder.build();
+        for (int i = 0; i < VARIABLES_NUMBER; i++) {
+            machine.getExtendedState().getVariables().put("variable-" + i, "value-" + i);
+        }
+        persister.persist(machine, id);
+        return persister.restore(TestStateMachineBuilder.build(), id);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(EventSourcedPersisterBenchmark.class.getSimpleName())
+                                       .build()).run();
+    }
+}
@@ -0,0 +1,186 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.commonutils.validation.GuardCheck;
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.config.TestStateMachineBuilder;
+import com.antkorwin.statemachineutils.wrapper.ExtendedStateBackup;
+import com.antkorwin.statemachineutils.wrapper.impl.StateMachineBackup;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class EventSourcedStateMachinePersisterTest {
+
+    private final BinaryContextCodec<States, Events> codec = new BinaryContextCodec<>(States.class, Events.class);
+    private final InMemoryStateMachinePersist snapshots = new InMemoryStateMachinePersist();
+    private final InMemoryStateMachineEventLog eventLog = new InMemoryStateMachineEventLog();
+
+    @Test
+    public void testAppendEventsAndReplay() throws Exception {
+        // Arrange
+        EventSourcedStateMachinePersister<States, Events> persister = persister(10);
+        UUID id = UUID.randomUUID();
+        persister.persist(TestStateMachineBuilder.build(), id);
+        StateMachine<States, Events> machine = persister.restore(TestStateMachineBuilder.build(), id);
+
+        // Act
+        machine.sendEvent(MessageBuilder.withPayload(Events.START_FEATURE).setHeader("user", "admin").build());
+        machine.sendEvent(Events.INCREMENT);
+        machine.sendEvent(Events.INCREMENT);
+        machine.sendEvent(Events.QA_CHECKED_UC); // not accepted
+        persister.persist(machine, id);
+
+        // Asserts
+        List<byte[]> events = eventLog.read(id, 0);
+        assertThat(events).hasSize(3);
+        StateMachineContext<States, Events> first = codec.decode(events.get(0));
+        assertThat(first.getEvent()).isEqualTo(Events.START_FEATURE);
+        assertThat(first.getEventHeaders()).containsEntry("user", "admin");
+        assertThat(sequenceOf(snapshots.read(id))).isEqualTo(0L);
+
+        StateMachine<States, Events> restored = persister(10).restore(TestStateMachineBuilder.build(), id);
+        assertThat(restored.getState().getId()).isEqualTo(States.IN_PROGRESS);
+        assertThat(restored.getExtendedState().get("counter", Integer.class)).isEqualTo(2);
+    }
+
+    @Test
+    public void testSnapshotEveryIntervalEvents() throws Exception {
+        // Arrange
+        EventSourcedStateMachinePersister<States, Events> persister = persister(3);
+        UUID id = UUID.randomUUID();
+        persister.persist(TestStateMachineBuilder.build(), id);
+        StateMachine<States, Events> machine = persister.restore(TestStateMachineBuilder.build(), id);
+
+        // Act
+        for (int i = 0; i < 7; i++) {
+            machine.sendEvent(Events.INCREMENT);
+            persister.persist(machine, id);
+        }
+
+        // Asserts
+        assertThat(eventLog.lastSequence(id)).isEqualTo(7);
+        StateMachineContext<States, Events> snapshot = snapshots.read(id);
+        assertThat(sequenceOf(snapshot)).isEqualTo(6L);
+        assertThat(snapshot.getExtendedState().get("counter", Integer.class)).isEqualTo(6);
+        assertThat(eventLog.read(id, 6)).hasSize(1);
+
+        StateMachine<States, Events> restored = persister(3).restore(TestStateMachineBuilder.build(), id);
+        assertThat(restored.getExtendedState().get("counter", Integer.class)).isEqualTo(7);
+    }
+
+    @Test
+    public void testChangeOfVariablesOutsideTransitionWritesSnapshot() throws Exception {
+        // Arrange
+        EventSourcedStateMachinePersister<States, Events> persister = persister(10);
+        UUID id = UUID.randomUUID();
+        persister.persist(TestStateMachineBuilder.build(), id);
+        StateMachine<States, Events> machine = persister.restore(TestStateMachineBuilder.build(), id);
+
+        // Act
+        machine.sendEvent(Events.INCREMENT);
+        machine.getExtendedState().getVariables().put("comment", "changed by a processing function");
+        persister.persist(machine, id);
+
+        // Asserts
+        assertThat(eventLog.lastSequence(id)).isEqualTo(1);
+        StateMachineContext<States, Events> snapshot = snapshots.read(id);
+        assertThat(sequenceOf(snapshot)).isEqualTo(1L);
+        assertThat(snapshot.getExtendedState().getVariables()).containsEntry("comment",
+                                                                             "changed by a processing function");
+
+        StateMachine<States, Events> restored = persister(10).restore(TestStateMachineBuilder.build(), id);
+        assertThat(restored.getExtendedState().get("counter", Integer.class)).isEqualTo(1);
+        assertThat(restored.getExtendedState().get("comment", String.class)).isEqualTo("changed by a processing function");
+    }
+
+    @Test
+    public void testRollbackDropsNotPersistedEvents() throws Exception {
+        // Arrange
+        EventSourcedStateMachinePersister<States, Events> persister = persister(10);
+        UUID id = UUID.randomUUID();
+        persister.persist(TestStateMachineBuilder.build(), id);
+        StateMachine<States, Events> machine = persister.restore(TestStateMachineBuilder.build(), id);
+        StateMachineBackup<States, Events> backup = StateMachineBackup.take(machine, ExtendedStateBackup.FULL_COPY);
+
+        // Act
+        machine.sendEvent(Events.START_FEATURE);
+        machine.sendEvent(Events.INCREMENT);
+        backup.rollback(machine);
+        persister.persist(machine, id);
+
+        // Asserts
+        assertThat(eventLog.lastSequence(id)).isEqualTo(0);
+        StateMachine<States, Events> restored = persister(10).restore(TestStateMachineBuilder.build(), id);
+        assertThat(restored.getState().getId()).isEqualTo(States.BACKLOG);
+        assertThat(restored.getExtendedState().getVariables()).doesNotContainKey("counter");
+    }
+
+    @Test
+    public void testConcurrentWritersOfJdbcEventLog() throws Exception {
+        // Arrange
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                                                                 .generateUniqueName(true)
+                                                                 .build();
+        JdbcStateMachineEventLog jdbcEventLog = new JdbcStateMachineEventLog(new JdbcTemplate(database));
+        jdbcEventLog.createTableIfNotExists();
+        EventSourcedStateMachinePersister<States, Events> persister =
+                new EventSourcedStateMachinePersister<>(snapshots, jdbcEventLog, codec, 10);
+        UUID id = UUID.randomUUID();
+        persister.persist(TestStateMachineBuilder.build(), id);
+        StateMachine<States, Events> first = persister.restore(TestStateMachineBuilder.build(), id);
+        StateMachine<States, Events> second = persister.restore(TestStateMachineBuilder.build(), id);
+
+        // Act
+        first.sendEvent(Events.INCREMENT);
+        first.sendEvent(Events.INCREMENT);
+        persister.persist(first, id);
+        second.sendEvent(Events.START_FEATURE);
+
+        // Asserts
+        GuardCheck.check(() -> persistUnchecked(persister, second, id),
+                         StateMachinePersistException.class,
+                         PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+
+        assertThat(jdbcEventLog.read(id, 0)).hasSize(2);
+        StateMachine<States, Events> restored = persister.restore(TestStateMachineBuilder.build(), id);
+        assertThat(restored.getState().getId()).isEqualTo(States.BACKLOG);
+        assertThat(restored.getExtendedState().get("counter", Integer.class)).isEqualTo(2);
+        database.shutdown();
+    }
+
+    private EventSourcedStateMachinePersister<States, Events> persister(int snapshotInterval) {
+        return new EventSourcedStateMachinePersister<>(snapshots, eventLog, codec, snapshotInterval);
+    }
+
+    private Object sequenceOf(StateMachineContext<States, Events> snapshot) {
+        return snapshot.getEventHeaders().get(EventSourcedStateMachinePersister.SEQUENCE_HEADER);
+    }
+
+    private void persistUnchecked(EventSourcedStateMachinePersister<States, Events> persister,
+                                  StateMachine<States, Events> machine,
+                                  UUID id) {
+        try {
+            persister.persist(machine, id);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.commonutils.validation.GuardCheck;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class GroupCommitStateMachinePersistTest {
+
+    private static final int MACHINES_NUMBER = 1000;
+
+    @Test
+    public void testConcurrentWritesAreGroupedInBatches() throws Exception {
+        // Arrange
+        CountingBatchPersist storage = new CountingBatchPersist();
+        GroupCommitStateMachinePersist<String, String, UUID> persist =
+                new GroupCommitStateMachinePersist<>(storage, 50, 5);
+        List<UUID> ids = IntStream.range(0, MACHINES_NUMBER)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+
+        // Act
+        ids.parallelStream().forEach(id -> {
+            try {
+                persist.write(context(id), id);
+                // the write is durable when it returns:
+                assertThat(storage.read(id)).isNotNull();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // Asserts
+        for (UUID id : ids) {
+            assertThat(persist.read(id).getId()).isEqualTo(id.toString());
+        }
+        assertThat(storage.batches.get()).isLessThan(MACHINES_NUMBER);
+    }
+
+    @Test
+    public void testSingleWriteIsFlushedAfterDelay() throws Exception {
+        // Arrange
+        CountingBatchPersist storage = new CountingBatchPersist();
+        GroupCommitStateMachinePersist<String, String, UUID> persist =
+                new GroupCommitStateMachinePersist<>(storage, 100, 10);
+        UUID id = UUID.randomUUID();
+
+        // Act
+        persist.write(context(id), id);
+
+        // Asserts
+        assertThat(storage.read(id).getId()).isEqualTo(id.toString());
+        assertThat(storage.batches.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCloseFlushesCurrentBatch() throws Exception {
+        // Arrange
+        CountingBatchPersist storage = new CountingBatchPersist();
+        GroupCommitStateMachinePersist<String, String, UUID> persist =
+                new GroupCommitStateMachinePersist<>(storage, 100, 60_000);
+        UUID id = UUID.randomUUID();
+        UUID afterCloseId = UUID.randomUUID();
+        CompletableFuture<Void> writer = CompletableFuture.runAsync(() -> {
+            try {
+                persist.write(context(id), id);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, Executors.newSingleThreadExecutor());
+        Thread.sleep(100);
+
+        // Act
+        persist.close();
+        writer.get(5, TimeUnit.SECONDS);
+        persist.write(context(afterCloseId), afterCloseId);
+
+        // Asserts
+        assertThat(storage.read(id).getId()).isEqualTo(id.toString());
+        assertThat(storage.read(afterCloseId).getId()).isEqualTo(afterCloseId.toString());
+    }
+
+    @Test
+    public void testErrorOfBatchIsThrownToWriter() throws Exception {
+        // Arrange
+        InMemoryStateMachinePersist failing = new InMemoryStateMachinePersist() {
+            @Override
+            public void write(StateMachineContext context, Object contextObj) throws Exception {
+                throw new IllegalStateException("storage is not available");
+            }
+        };
+        GroupCommitStateMachinePersist<String, String, UUID> persist =
+                new GroupCommitStateMachinePersist<>(failing, 10, 1);
+        UUID id = UUID.randomUUID();
+
+        // Act & Asserts
+        assertThatThrownBy(() -> persist.write(context(id), id))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("storage is not available");
+    }
+
+    @Test
+    public void testSecondWriteOfMachineInBatchIsChecked() throws Exception {
+        // Arrange
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                                                                 .generateUniqueName(true)
+                                                                 .build();
+        JdbcStateMachinePersist<String, String> storage = new JdbcStateMachinePersist<>(new JdbcTemplate(database));
+        storage.createTableIfNotExists();
+        UUID id = UUID.randomUUID();
+        storage.write(context(id), id);
+        StateMachineContext<String, String> firstRead = storage.read(id);
+        StateMachineContext<String, String> secondRead = storage.read(id);
+        GroupCommitStateMachinePersist<String, String, UUID> persist =
+                new GroupCommitStateMachinePersist<>(storage, 100, 1000);
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> write(persist, context(id, "FIRST", firstRead)),
+                                                                   Executors.newSingleThreadExecutor());
+        Thread.sleep(100);
+
+        // Act
+        GuardCheck.check(() -> write(persist, context(id, "SECOND", secondRead)),
+                         StateMachinePersistException.class,
+                         PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+
+        // Asserts
+        first.get(5, TimeUnit.SECONDS);
+        assertThat(storage.read(id).getState()).isEqualTo("FIRST");
+        persist.close();
+        database.shutdown();
+    }
+
+    @Test
+    public void testWriteInTransactionIsNotGrouped() throws Exception {
+        // Arrange
+        EmbeddedDatabase database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                                                                 .generateUniqueName(true)
+                                                                 .build();
+        JdbcStateMachinePersist<String, String> storage = new JdbcStateMachinePersist<>(new JdbcTemplate(database));
+        storage.createTableIfNotExists();
+        GroupCommitStateMachinePersist<String, String, UUID> persist =
+                new GroupCommitStateMachinePersist<>(storage, 100, 60_000);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+        UUID id = UUID.randomUUID();
+
+        // Act
+        transactionTemplate.execute(status -> {
+            write(persist, context(id));
+            status.setRollbackOnly();
+            return null;
+        });
+
+        // Asserts
+        assertThat(storage.read(id)).isNull();
+        persist.close();
+        database.shutdown();
+    }
+
+    private void write(GroupCommitStateMachinePersist<String, String, UUID> persist,
+                       StateMachineContext<String, String> context) {
+        try {
+            persist.write(context, UUID.fromString(context.getId()));
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private StateMachineContext<String, String> context(UUID id, String state, StateMachineContext<String, String> read) {
+        return new DefaultStateMachineContext<>(state, null, read.getEventHeaders(), new DefaultExtendedState(),
+                                                null, id.toString());
+    }
+
+    private StateMachineContext<String, String> context(UUID id) {
+        return new DefaultStateMachineContext<>("STATE", null, null, new DefaultExtendedState(), null, id.toString());
+    }
+
+    private static class CountingBatchPersist implements BatchStateMachinePersist<String, String, UUID> {
+
+        private final Map<UUID, StateMachineContext<String, String>> storage = new ConcurrentHashMap<>();
+        private final AtomicInteger batches = new AtomicInteger();
+
+        @Override
+        public void writeAll(Map<UUID, StateMachineContext<String, String>> contexts) {
+            batches.incrementAndGet();
+            storage.putAll(contexts);
+        }
+
+        @Override
+        public void write(StateMachineContext<String, String> context, UUID contextObj) {
+            storage.put(contextObj, context);
+        }
+
+        @Override
+        public StateMachineContext<String, String> read(UUID contextObj) {
+            return storage.get(contextObj);
+        }
+    }
+}
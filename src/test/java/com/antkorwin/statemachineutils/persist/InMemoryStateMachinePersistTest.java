@@ -0,0 +1,58 @@
+package com.antkorwin.statemachineutils.persist;
+
+import org.junit.Test;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class InMemoryStateMachinePersistTest {
+
+    private static final int MACHINES_NUMBER = 10_000;
+
+    @Test
+    public void testConcurrentWritesOnManyMachines() throws Exception {
+        // Arrange
+        InMemoryStateMachinePersist persist = new InMemoryStateMachinePersist();
+        List<UUID> ids = IntStream.range(0, MACHINES_NUMBER)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+
+        // Act
+        ids.parallelStream().forEach(id -> {
+            try {
+                persist.write(context(id), id);
+                persist.write(context(UUID.randomUUID()), UUID.randomUUID());
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        ids.parallelStream().limit(MACHINES_NUMBER / 2).forEach(persist::remove);
+
+        // Asserts
+        for (int i = 0; i < MACHINES_NUMBER; i++) {
+            UUID id = ids.get(i);
+            StateMachineContext context = persist.read(id);
+            if (i < MACHINES_NUMBER / 2) {
+                assertThat(context).isNull();
+            } else {
+                assertThat(context.getId()).isEqualTo(id.toString());
+            }
+        }
+    }
+
+    private StateMachineContext<String, String> context(UUID id) {
+        return new DefaultStateMachineContext<>("STATE", null, null, new DefaultExtendedState(), null, id.toString());
+    }
+}
@@ -0,0 +1,301 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.commonutils.validation.GuardCheck;
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.config.TestStateMachineBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class JdbcStateMachinePersistTest {
+
+    private EmbeddedDatabase database;
+    private JdbcTemplate jdbcTemplate;
+
+    @Before
+    public void setUp() {
+        database = new EmbeddedDatabaseBuilder().setType(EmbeddedDatabaseType.H2)
+                                                .generateUniqueName(true)
+                                                .build();
+        jdbcTemplate = new JdbcTemplate(database);
+        new JdbcStateMachinePersist<String, String>(jdbcTemplate).createTableIfNotExists();
+    }
+
+    @After
+    public void tearDown() {
+        database.shutdown();
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        // Arrange
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(jdbcTemplate);
+        UUID id = UUID.randomUUID();
+        DefaultExtendedState extendedState = new DefaultExtendedState();
+        extendedState.getVariables().put("counter", 42);
+        StateMachineContext<String, String> child =
+                new DefaultStateMachineContext<>("CHILD", null, null, null, null, "child");
+        StateMachineContext<String, String> context =
+                new DefaultStateMachineContext<>(Collections.singletonList(child), "PARENT", "START",
+                                                 null, extendedState, Collections.singletonMap(null, "CHILD"),
+                                                 id.toString());
+
+        // Act
+        persist.write(context, id);
+        StateMachineContext<String, String> result = new JdbcStateMachinePersist<String, String>(jdbcTemplate).read(id);
+
+        // Asserts
+        assertThat(result.getId()).isEqualTo(id.toString());
+        assertThat(result.getState()).isEqualTo("PARENT");
+        assertThat(result.getEvent()).isEqualTo("START");
+        assertThat(result.getExtendedState().getVariables()).containsEntry("counter", 42);
+        assertThat(result.getHistoryStates()).containsEntry(null, "CHILD");
+        assertThat(result.getChilds()).hasSize(1);
+        assertThat(result.getChilds().get(0).getState()).isEqualTo("CHILD");
+    }
+
+    @Test
+    public void testReadMissingMachine() {
+        // Arrange
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(jdbcTemplate);
+
+        // Act
+        StateMachineContext<String, String> result = persist.read(UUID.randomUUID());
+
+        // Assert
+        assertThat(result).isNull();
+    }
+
+    @Test
+    public void testStaleWriteIsRejected() throws Exception {
+        // Arrange
+        UUID id = UUID.randomUUID();
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(jdbcTemplate);
+        persist.write(context(id, "CREATED"), id);
+        StateMachineContext<String, String> firstRead = persist.read(id);
+        StateMachineContext<String, String> secondRead = persist.read(id);
+
+        // Act
+        persist.write(context(id, "SECOND", secondRead), id);
+
+        // Asserts
+        GuardCheck.check(() -> persist.write(context(id, "FIRST", firstRead), id),
+                         StateMachinePersistException.class,
+                         PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+
+        StateMachineContext<String, String> lastRead = persist.read(id);
+        assertThat(lastRead.getState()).isEqualTo("SECOND");
+        persist.write(context(id, "FIRST", lastRead), id);
+        assertThat(new JdbcStateMachinePersist<String, String>(jdbcTemplate).read(id).getState()).isEqualTo("FIRST");
+    }
+
+    @Test
+    public void testVersionIsAdvancedAfterWrite() throws Exception {
+        // Arrange
+        UUID id = UUID.randomUUID();
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(jdbcTemplate);
+        persist.write(context(id, "CREATED"), id);
+        StateMachineContext<String, String> read = persist.read(id);
+
+        // Act
+        persist.write(context(id, "FIRST", read), id);
+        persist.write(context(id, "SECOND", read), id);
+
+        // Asserts
+        assertThat(StateMachineVersion.of(read).get()).isEqualTo(2L);
+        assertThat(persist.read(id).getState()).isEqualTo("SECOND");
+        assertThat(persist.read(id).getEventHeaders()).containsOnlyKeys(StateMachineVersion.HEADER);
+    }
+
+    @Test
+    public void testVersionIsKeptAfterRollbackOfTransaction() throws Exception {
+        // Arrange
+        UUID id = UUID.randomUUID();
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(jdbcTemplate);
+        persist.write(context(id, "CREATED"), id);
+        StateMachineContext<String, String> read = persist.read(id);
+        TransactionTemplate transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(database));
+
+        // Act
+        transactionTemplate.execute(status -> {
+            persist.write(context(id, "ROLLED_BACK", read), id);
+            status.setRollbackOnly();
+            return null;
+        });
+
+        // Asserts
+        assertThat(StateMachineVersion.of(read).get()).isEqualTo(0L);
+        persist.write(context(id, "FIRST", read), id);
+        assertThat(StateMachineVersion.of(read).get()).isEqualTo(1L);
+        assertThat(persist.read(id).getState()).isEqualTo("FIRST");
+    }
+
+    @Test
+    public void testLostUpdateThroughPersisterIsRejected() throws Exception {
+        // Arrange
+        UUID id = UUID.randomUUID();
+        DefaultStateMachinePersisterDecorator<States, Events, UUID> persister =
+                new DefaultStateMachinePersisterDecorator<>(new JdbcStateMachinePersist<>(jdbcTemplate));
+        StateMachine<States, Events> created = TestStateMachineBuilder.build();
+        persister.persist(created, id);
+        persister.persist(created, id);
+        StateMachine<States, Events> first = persister.restore(TestStateMachineBuilder.build(), id);
+        StateMachine<States, Events> second = persister.restore(TestStateMachineBuilder.build(), id);
+
+        // Act
+        first.sendEvent(Events.START_FEATURE);
+        persister.persist(first, id);
+        first.sendEvent(Events.FINISH_FEATURE);
+        persister.persist(first, id);
+
+        // Asserts
+        second.sendEvent(Events.START_FEATURE);
+        assertThatThrownBy(() -> persister.persist(second, id)).isInstanceOf(StateMachinePersistException.class);
+        StateMachine<States, Events> restored = persister.restore(TestStateMachineBuilder.build(), id);
+        assertThat(restored.getState().getId()).isEqualTo(first.getState().getId());
+    }
+
+    @Test
+    public void testConcurrentCreationIsRejected() throws Exception {
+        // Arrange
+        UUID id = UUID.randomUUID();
+        JdbcStateMachinePersist<String, String> first = new JdbcStateMachinePersist<>(jdbcTemplate);
+        JdbcStateMachinePersist<String, String> second = new JdbcStateMachinePersist<>(jdbcTemplate);
+
+        // Act
+        first.write(context(id, "FIRST"), id);
+
+        // Assert
+        GuardCheck.check(() -> second.write(context(id, "SECOND"), id),
+                         StateMachinePersistException.class,
+                         PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+    }
+
+    @Test
+    public void testWriteAll() throws Exception {
+        // Arrange
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(jdbcTemplate);
+        UUID existed = UUID.randomUUID();
+        UUID created = UUID.randomUUID();
+        persist.write(context(existed, "CREATED"), existed);
+
+        Map<UUID, StateMachineContext<String, String>> contexts = new LinkedHashMap<>();
+        contexts.put(existed, context(existed, "UPDATED", persist.read(existed)));
+        contexts.put(created, context(created, "CREATED"));
+
+        // Act
+        persist.writeAll(contexts);
+
+        // Asserts
+        JdbcStateMachinePersist<String, String> reader = new JdbcStateMachinePersist<>(jdbcTemplate);
+        assertThat(reader.read(existed).getState()).isEqualTo("UPDATED");
+        assertThat(reader.read(created).getState()).isEqualTo("CREATED");
+        assertThat(jdbcTemplate.queryForObject("SELECT version FROM state_machine_context WHERE id = ?",
+                                               Long.class, existed.toString())).isEqualTo(1L);
+    }
+
+    @Test
+    public void testWriteAllWithStaleMachineIsRolledBack() throws Exception {
+        // Arrange
+        UUID stale = UUID.randomUUID();
+        UUID created = UUID.randomUUID();
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(jdbcTemplate);
+        JdbcStateMachinePersist<String, String> other = new JdbcStateMachinePersist<>(jdbcTemplate);
+        persist.write(context(stale, "CREATED"), stale);
+        StateMachineContext<String, String> read = persist.read(stale);
+        other.write(context(stale, "OTHER", other.read(stale)), stale);
+
+        Map<UUID, StateMachineContext<String, String>> contexts = new LinkedHashMap<>();
+        contexts.put(stale, context(stale, "UPDATED", read));
+        contexts.put(created, context(created, "CREATED"));
+
+        // Act
+        GuardCheck.check(() -> persist.writeAll(contexts),
+                         StateMachinePersistException.class,
+                         PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+
+        // Asserts
+        assertThat(persist.read(stale).getState()).isEqualTo("OTHER");
+        assertThat(persist.read(created)).isNull();
+    }
+
+    @Test
+    public void testWriteAllWithoutBatchCountsChecksEachRow() throws Exception {
+        // Arrange
+        UUID stale = UUID.randomUUID();
+        UUID updated = UUID.randomUUID();
+        JdbcStateMachinePersist<String, String> persist = new JdbcStateMachinePersist<>(new NoBatchCountsJdbcTemplate());
+        persist.write(context(stale, "CREATED"), stale);
+        persist.write(context(updated, "CREATED"), updated);
+        StateMachineContext<String, String> read = persist.read(stale);
+        persist.write(context(stale, "OTHER", persist.read(stale)), stale);
+
+        Map<UUID, StateMachineContext<String, String>> contexts = new LinkedHashMap<>();
+        contexts.put(updated, context(updated, "UPDATED", persist.read(updated)));
+        contexts.put(stale, context(stale, "UPDATED", read));
+
+        // Act
+        GuardCheck.check(() -> persist.writeAll(contexts),
+                         StateMachinePersistException.class,
+                         PersisterErrorInfo.STALE_STATE_MACHINE_VERSION);
+
+        // Asserts
+        assertThat(persist.read(stale).getState()).isEqualTo("OTHER");
+        assertThat(persist.read(updated).getState()).isEqualTo("CREATED");
+        contexts.remove(stale);
+        persist.writeAll(contexts);
+        assertThat(persist.read(updated).getState()).isEqualTo("UPDATED");
+    }
+
+    private StateMachineContext<String, String> context(UUID id, String state) {
+        return new DefaultStateMachineContext<>(state, null, null, new DefaultExtendedState(), null, id.toString());
+    }
+
+    private StateMachineContext<String, String> context(UUID id, String state, StateMachineContext<String, String> read) {
+        return new DefaultStateMachineContext<>(state, null, read.getEventHeaders(), new DefaultExtendedState(), null, id.toString());
+    }
+
+    /**
+     * JdbcTemplate of a driver which doesn't report counts of updated rows in a batch.
+     */
+    private class NoBatchCountsJdbcTemplate extends JdbcTemplate {
+
+        NoBatchCountsJdbcTemplate() {
+            super(database);
+        }
+
+        @Override
+        public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+            int[] counts = super.batchUpdate(sql, batchArgs);
+            Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.antkorwin.statemachineutils.persist;
+
+import com.antkorwin.commonutils.validation.GuardCheck;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.support.DefaultExtendedState;
+import org.springframework.statemachine.support.DefaultStateMachineContext;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class MappedFileStateMachinePersistTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentWritesAndRead() throws Exception {
+        // Arrange
+        MappedFileStateMachinePersist<String, String> persist = open(folder.getRoot().toPath());
+        List<UUID> ids = IntStream.range(0, 1000)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+
+        // Act
+        ids.parallelStream().forEach(id -> {
+            try {
+                persist.write(context(id, "FIRST"), id);
+                persist.write(context(id, "SECOND"), id);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // Asserts
+        for (UUID id : ids) {
+            assertThat(persist.read(id).getState()).isEqualTo("SECOND");
+        }
+        assertThat(persist.read(UUID.randomUUID())).isNull();
+        persist.close();
+    }
+
+    @Test
+    public void testIndexIsRebuiltOnStartup() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+        MappedFileStateMachinePersist<String, String> persist = open(directory);
+        List<UUID> ids = IntStream.range(0, 100)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+        for (UUID id : ids) {
+            persist.write(context(id, "FIRST"), id);
+        }
+        for (UUID id : ids) {
+            persist.write(context(id, "SECOND"), id);
+        }
+        persist.close();
+
+        // Act
+        MappedFileStateMachinePersist<String, String> reopened = open(directory);
+
+        // Asserts
+        assertThat(reopened.getSegmentsNumber()).isGreaterThan(1);
+        for (UUID id : ids) {
+            assertThat(reopened.read(id).getState()).isEqualTo("SECOND");
+        }
+        reopened.close();
+    }
+
+    @Test
+    public void testTornRecordIsDroppedOnStartup() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        MappedFileStateMachinePersist<String, String> persist = open(directory);
+        persist.write(context(first, "FIRST"), first);
+        persist.write(context(second, "SECOND"), second);
+        persist.close();
+
+        // break the last byte of the second record:
+        Path segment = Files.list(directory).collect(Collectors.toList()).get(0);
+        byte[] bytes = Files.readAllBytes(segment);
+        int end = bytes.length;
+        while (bytes[end - 1] == 0) {
+            end--;
+        }
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            file.seek(end - 1);
+            file.write(bytes[end - 1] + 1);
+        }
+
+        // Act
+        MappedFileStateMachinePersist<String, String> reopened = open(directory);
+
+        // Asserts
+        assertThat(reopened.read(first).getState()).isEqualTo("FIRST");
+        assertThat(reopened.read(second)).isNull();
+        reopened.write(context(second, "AGAIN"), second);
+        reopened.close();
+
+        MappedFileStateMachinePersist<String, String> recovered = open(directory);
+        assertThat(recovered.read(first).getState()).isEqualTo("FIRST");
+        assertThat(recovered.read(second).getState()).isEqualTo("AGAIN");
+        recovered.close();
+    }
+
+    @Test
+    public void testCorruptedRecordInSealedSegmentIsDroppedOnStartup() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+        MappedFileStateMachinePersist<String, String> persist = open(directory);
+        UUID id = UUID.randomUUID();
+        UUID corrupted = UUID.randomUUID();
+        persist.write(context(corrupted, "CORRUPTED"), corrupted);
+        for (int i = 0; i < 100; i++) {
+            persist.write(context(id, "STATE_" + i), id);
+        }
+        persist.close();
+
+        // break the last byte of the first record in the first segment:
+        Path segment = Files.list(directory).sorted().collect(Collectors.toList()).get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+            int length = file.readInt();
+            file.seek(24 + length - 1);
+            int last = file.read();
+            file.seek(24 + length - 1);
+            file.write(last + 1);
+        }
+
+        // Act
+        MappedFileStateMachinePersist<String, String> reopened = open(directory);
+
+        // Asserts
+        assertThat(reopened.getSegmentsNumber()).isGreaterThan(1);
+        assertThat(reopened.read(corrupted)).isNull();
+        assertThat(reopened.read(id).getState()).isEqualTo("STATE_99");
+        reopened.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+        MappedFileStateMachinePersist<String, String> persist = open(directory);
+        UUID id = UUID.randomUUID();
+        UUID stable = UUID.randomUUID();
+        persist.write(context(stable, "STABLE"), stable);
+        for (int i = 0; i < 100; i++) {
+            persist.write(context(id, "STATE_" + i), id);
+        }
+        int segmentsBefore = persist.getSegmentsNumber();
+
+        // Act
+        persist.compact();
+
+        // Asserts
+        assertThat(segmentsBefore).isGreaterThan(2);
+        assertThat(persist.getSegmentsNumber()).isEqualTo(1);
+        assertThat(Files.list(directory).count()).isEqualTo(1);
+        assertThat(persist.read(id).getState()).isEqualTo("STATE_99");
+        assertThat(persist.read(stable).getState()).isEqualTo("STABLE");
+        persist.close();
+
+        MappedFileStateMachinePersist<String, String> reopened = open(directory);
+        assertThat(reopened.read(id).getState()).isEqualTo("STATE_99");
+        assertThat(reopened.read(stable).getState()).isEqualTo("STABLE");
+        reopened.close();
+    }
+
+    @Test
+    public void testWriteAfterCloseIsRejected() throws Exception {
+        // Arrange
+        Path directory = folder.getRoot().toPath();
+        MappedFileStateMachinePersist<String, String> persist = open(directory);
+        UUID id = UUID.randomUUID();
+        UUID late = UUID.randomUUID();
+        for (int i = 0; i < 100; i++) {
+            persist.write(context(id, "STATE_" + i), id);
+        }
+        int segmentsBefore = persist.getSegmentsNumber();
+
+        // Act
+        persist.close();
+
+        // Asserts
+        GuardCheck.check(() -> write(persist, context(late, "LATE"), late),
+                         StateMachinePersistException.class,
+                         PersisterErrorInfo.STATE_MACHINE_PERSIST_IS_CLOSED);
+        persist.compact();
+        assertThat(persist.getSegmentsNumber()).isEqualTo(segmentsBefore);
+
+        MappedFileStateMachinePersist<String, String> reopened = open(directory);
+        assertThat(reopened.read(id).getState()).isEqualTo("STATE_99");
+        assertThat(reopened.read(late)).isNull();
+        reopened.close();
+    }
+
+    private void write(MappedFileStateMachinePersist<String, String> persist,
+                       StateMachineContext<String, String> context,
+                       UUID id) {
+        try {
+            persist.write(context, id);
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private MappedFileStateMachinePersist<String, String> open(Path directory) throws Exception {
+        return new MappedFileStateMachinePersist<>(directory, new JavaSerializationContextCodec<>(),
+                                                   SEGMENT_SIZE, false, 0);
+    }
+
+    private StateMachineContext<String, String> context(UUID id, String state) {
+        return new DefaultStateMachineContext<>(state, null, null, new DefaultExtendedState(), null, id.toString());
+    }
+}
@@ -3,6 +3,8 @@ package com.antkorwin.statemachineutils.resolver;
 import com.antkorwin.statemachineutils.config.Events;
 import com.antkorwin.statemachineutils.config.StateMachineConfig;
 import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.persist.DefaultStateMachinePersisterDecorator;
+import com.antkorwin.statemachineutils.persist.InMemoryStateMachinePersist;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
@@ -11,10 +13,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.config.StateMachineBuilder;
 import org.springframework.statemachine.config.StateMachineFactory;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -66,4 +74,234 @@ public class StateMachineResolverTest {
                   .containsOnly(Events.DEPLOY,
                                 Events.INCREMENT);
     }
+
+    @Test
+    public void testResolverOnTheSameMachineAfterTransitions() {
+        // Arrange
+        List<Events> backlogEvents = stateMachineResolver.getAvailableEvents(stateMachine);
+        stateMachine.sendEvent(Events.START_FEATURE);
+        stateMachine.sendEvent(Events.DEPLOY);
+        stateMachine.sendEvent(Events.FINISH_FEATURE);
+        // Act
+        List<Events> availableEvents = stateMachineResolver.getAvailableEvents(stateMachine);
+        // Asserts
+        Assertions.assertThat(backlogEvents).contains(Events.START_FEATURE);
+        Assertions.assertThat(availableEvents)
+                  .containsOnly(Events.QA_CHECKED_UC,
+                                Events.QA_REJECTED_UC);
+    }
+
+    @Test
+    public void testResolverWithParentState() throws Exception {
+        // Arrange
+        StateMachine<String, String> machine = hierarchicalMachine();
+        machine.sendEvent("TO_S2");
+        // Act
+        List<String> availableEvents = new StateMachineResolverImpl<String, String>().getAvailableEvents(machine);
+        // Asserts
+        Assertions.assertThat(machine.getState().getIds()).containsOnly("S2", "S21");
+        Assertions.assertThat(availableEvents)
+                  .containsOnly("NEXT", "BACK");
+    }
+
+    @Test
+    public void testResolverWithRegions() throws Exception {
+        // Arrange
+        StateMachine<String, String> machine = hierarchicalMachine();
+        machine.sendEvent("TO_S3");
+        machine.sendEvent("R1_NEXT");
+        // Act
+        List<String> availableEvents = new StateMachineResolverImpl<String, String>().getAvailableEvents(machine);
+        // Asserts
+        Assertions.assertThat(availableEvents)
+                  .containsExactlyInAnyOrder("R2_NEXT", "EXIT_S3");
+    }
+
+    @Test
+    public void testGuardWhichCallsResolver() throws Exception {
+        // Arrange
+        StateMachineResolverImpl<String, String> resolver = new StateMachineResolverImpl<>();
+        List<String> nestedEvents = new ArrayList<>();
+        StateMachineBuilder.Builder<String, String> builder = StateMachineBuilder.builder();
+        builder.configureStates()
+               .withStates().initial("S1").state("S2");
+        builder.configureTransitions()
+               .withExternal().source("S1").target("S2").event("GO")
+               .guard(context -> {
+                   if (nestedEvents.isEmpty()) {
+                       nestedEvents.add("NESTED");
+                       nestedEvents.addAll(resolver.getAvailableEvents(context.getStateMachine()));
+                   }
+                   return "S1".equals(context.getSource().getId()) && "S2".equals(context.getTarget().getId());
+               })
+               .and()
+               .withInternal().source("S1").event("PING");
+        StateMachine<String, String> machine = builder.build();
+        machine.start();
+        // Act
+        List<String> availableEvents = resolver.getAvailableEvents(machine);
+        // Asserts
+        Assertions.assertThat(availableEvents).containsExactly("GO", "PING");
+        Assertions.assertThat(nestedEvents).containsExactly("NESTED", "GO", "PING");
+    }
+
+    @Test
+    public void testMemoizedGuards() throws Exception {
+        // Arrange
+        StateMachineResolverImpl<String, String> resolver = new StateMachineResolverImpl<>(true);
+        AtomicInteger evaluations = new AtomicInteger();
+        StateMachineBuilder.Builder<String, String> builder = StateMachineBuilder.builder();
+        builder.configureStates()
+               .withStates().initial("S1").state("S2");
+        builder.configureTransitions()
+               .withExternal().source("S1").target("S2").event("GO")
+               .guard(context -> {
+                   evaluations.incrementAndGet();
+                   return context.getExtendedState().getVariables().containsKey("ready");
+               })
+               .and()
+               .withExternal().source("S2").target("S1").event("BACK");
+        StateMachine<String, String> machine = builder.build();
+        machine.start();
+
+        // Act & Asserts
+        Assertions.assertThat(resolver.getAvailableEvents(machine)).isEmpty();
+        Assertions.assertThat(resolver.getAvailableEvents(machine)).isEmpty();
+        Assertions.assertThat(evaluations.get()).isEqualTo(1);
+
+        machine.getExtendedState().getVariables().put("ready", true);
+        Assertions.assertThat(resolver.getAvailableEvents(machine)).containsExactly("GO");
+        Assertions.assertThat(resolver.getAvailableEvents(machine)).containsExactly("GO");
+        Assertions.assertThat(evaluations.get()).isEqualTo(2);
+
+        machine.sendEvent("GO");
+        machine.sendEvent("BACK");
+        Assertions.assertThat(resolver.getAvailableEvents(machine)).containsExactly("GO");
+        Assertions.assertThat(evaluations.get()).isEqualTo(4); // the transition and the resolver
+    }
+
+    @Test
+    public void testResolverDoesNotHoldMachine() throws Exception {
+        // Arrange
+        StateMachineResolverImpl<String, String> resolver = new StateMachineResolverImpl<>(true);
+        StateMachine<String, String> machine = hierarchicalMachine();
+        machine.sendEvent("TO_S2");
+        Assertions.assertThat(resolver.getAvailableEvents(machine)).containsOnly("NEXT", "BACK");
+        WeakReference<StateMachine<String, String>> reference = new WeakReference<>(machine);
+
+        // Act
+        machine = null;
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        // Asserts
+        Assertions.assertThat(reference.get()).isNull();
+    }
+
+    @Test
+    public void testResolverWithPersistedContext() throws Exception {
+        // Arrange
+        stateMachine.sendEvent(Events.START_FEATURE);
+        stateMachine.sendEvent(Events.DEPLOY);
+        StateMachineContext<States, Events> context = persistedContext(stateMachine);
+        StateMachine<States, Events> prototype = stateMachineFactory.getStateMachine();
+        // Act
+        List<Events> availableEvents = stateMachineResolver.getAvailableEvents(context, prototype, () -> {
+            throw new AssertionError("the machine shouldn't be restored");
+        });
+        // Asserts
+        Assertions.assertThat(availableEvents)
+                  .containsOnly(Events.FINISH_FEATURE,
+                                Events.DEPLOY,
+                                Events.INCREMENT)
+                  .isEqualTo(stateMachineResolver.getAvailableEvents(stateMachine));
+        Assertions.assertThat(prototype.getState().getId()).isEqualTo(States.BACKLOG);
+    }
+
+    @Test
+    public void testResolverWithPersistedContextOfRegions() throws Exception {
+        // Arrange
+        StateMachine<String, String> machine = hierarchicalMachine();
+        machine.sendEvent("TO_S3");
+        machine.sendEvent("R1_NEXT");
+        StateMachineContext<String, String> context = persistedContext(machine);
+        // Act
+        List<String> availableEvents = new StateMachineResolverImpl<String, String>()
+                .getAvailableEvents(context, hierarchicalMachine(), () -> {
+                    throw new AssertionError("the machine shouldn't be restored");
+                });
+        // Asserts
+        Assertions.assertThat(availableEvents)
+                  .containsExactlyInAnyOrder("R2_NEXT", "EXIT_S3");
+    }
+
+    @Test
+    public void testGuardRestoresMachineFromPersistedContext() throws Exception {
+        // Arrange
+        StateMachineResolverImpl<String, String> resolver = new StateMachineResolverImpl<>();
+        AtomicInteger restores = new AtomicInteger();
+        StateMachineBuilder.Builder<String, String> builder = StateMachineBuilder.builder();
+        builder.configureStates()
+               .withStates().initial("S1").state("S2");
+        builder.configureTransitions()
+               .withExternal().source("S1").target("S2").event("GO")
+               .guard(context -> context.getExtendedState().getVariables().containsKey("ready"))
+               .and()
+               .withExternal().source("S1").target("S2").event("FORCE")
+               .guard(context -> "S1".equals(context.getStateMachine().getState().getId()));
+        StateMachine<String, String> machine = builder.build();
+        machine.start();
+        machine.getExtendedState().getVariables().put("ready", true);
+        StateMachineContext<String, String> context = persistedContext(machine);
+        // Act
+        List<String> availableEvents = resolver.getAvailableEvents(context, builder.build(), () -> {
+            restores.incrementAndGet();
+            return machine;
+        });
+        // Asserts
+        Assertions.assertThat(availableEvents).containsExactly("GO", "FORCE");
+        Assertions.assertThat(restores.get()).isEqualTo(1);
+    }
+
+    private <S, E> StateMachineContext<S, E> persistedContext(StateMachine<S, E> machine) throws Exception {
+        UUID id = UUID.randomUUID();
+        DefaultStateMachinePersisterDecorator<S, E, UUID> persister =
+                new DefaultStateMachinePersisterDecorator<>(new InMemoryStateMachinePersist());
+        persister.persist(machine, id);
+        return persister.readContext(id);
+    }
+
+    private StateMachine<String, String> hierarchicalMachine() throws Exception {
+        StateMachineBuilder.Builder<String, String> builder = StateMachineBuilder.builder();
+        builder.configureStates()
+               .withStates().initial("S1").state("S2").state("S3")
+               .and()
+               .withStates().parent("S2").initial("S21").state("S22")
+               .and()
+               .withStates().parent("S3").region("R1").initial("S31").state("S32")
+               .and()
+               .withStates().parent("S3").region("R2").initial("S33").state("S34");
+        builder.configureTransitions()
+               .withExternal().source("S1").target("S2").event("TO_S2")
+               .and()
+               .withExternal().source("S2").target("S1").event("BACK")
+               .and()
+               .withExternal().source("S21").target("S22").event("NEXT")
+               .and()
+               .withExternal().source("S22").target("S21").event("BACK")
+               .and()
+               .withExternal().source("S1").target("S3").event("TO_S3")
+               .and()
+               .withExternal().source("S31").target("S32").event("R1_NEXT")
+               .and()
+               .withExternal().source("S33").target("S34").event("R2_NEXT")
+               .and()
+               .withExternal().source("S3").target("S1").event("EXIT_S3");
+
+        StateMachine<String, String> machine = builder.build();
+        machine.start();
+        return machine;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,227 @@
+package com.antkorwin.statemachineutils.service;
+
+import com.antkorwin.commonutils.concurrent.NonAtomicInt;
+import com.antkorwin.commonutils.validation.GuardCheck;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapperException;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+import static com.antkorwin.statemachineutils.service.XServiceErrorInfo.STATE_MACHINE_MAILBOX_IS_FULL;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class MailboxExecutorTest {
+
+    private static final int ITERATION_NUMBER = 100_000;
+    private static final int MACHINES_NUMBER = 10;
+
+    private final MailboxExecutor mailboxExecutor = new MailboxExecutor(4, ITERATION_NUMBER);
+
+    @After
+    public void tearDown() {
+        mailboxExecutor.shutdown();
+    }
+
+    @Test
+    public void testTasksOfOneMachineRunSequentially() throws Exception {
+        // Arrange
+        List<UUID> ids = IntStream.range(0, MACHINES_NUMBER)
+                                  .mapToObj(i -> UUID.randomUUID())
+                                  .collect(toList());
+        List<NonAtomicInt> counters = IntStream.range(0, MACHINES_NUMBER)
+                                               .mapToObj(i -> new NonAtomicInt())
+                                               .collect(toList());
+
+        // Act
+        List<CompletableFuture<Integer>> futures =
+                IntStream.range(0, ITERATION_NUMBER)
+                         .parallel()
+                         .mapToObj(i -> mailboxExecutor.submit(ids.get(i % MACHINES_NUMBER), () -> {
+                             counters.get(i % MACHINES_NUMBER).increment();
+                             return i;
+                         }))
+                         .collect(toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        // Asserts
+        for (NonAtomicInt counter : counters) {
+            assertThat(counter.getValue()).isEqualTo(ITERATION_NUMBER / MACHINES_NUMBER);
+        }
+        assertThat(mailboxExecutor.getQueueDepth()).isEqualTo(0);
+    }
+
+    @Test
+    public void testBusyMachineDoesNotBlockOthers() throws Exception {
+        // Arrange
+        UUID busyId = UUID.randomUUID();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        mailboxExecutor.submit(busyId, () -> {
+            started.countDown();
+            return await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        CompletableFuture<Integer> waiting = mailboxExecutor.submit(busyId, () -> 1);
+
+        // Act
+        CompletableFuture<Integer> other = mailboxExecutor.submit(UUID.randomUUID(), () -> 2);
+
+        // Asserts
+        assertThat(other.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(waiting.isDone()).isFalse();
+        assertThat(mailboxExecutor.getQueueDepth(busyId)).isEqualTo(1);
+
+        release.countDown();
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+    }
+
+    @Test
+    public void testRejectWhenMailboxIsFull() throws Exception {
+        // Arrange
+        MailboxExecutor executor = new MailboxExecutor(1, 2);
+        UUID id = UUID.randomUUID();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(id, () -> {
+            started.countDown();
+            return await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+        executor.submit(id, () -> 1);
+        executor.submit(id, () -> 2);
+
+        // Act
+        GuardCheck.check(() -> executor.submit(id, () -> 3),
+                         XStateMachineException.class,
+                         STATE_MACHINE_MAILBOX_IS_FULL);
+
+        // Asserts
+        assertThat(executor.getQueueDepth(id)).isEqualTo(2);
+        release.countDown();
+        executor.shutdown();
+    }
+
+    @Test
+    public void testRejectedDrainFailsTasksOfMailbox() throws Exception {
+        // Arrange
+        AtomicBoolean rejecting = new AtomicBoolean(true);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        MailboxExecutor executor = new MailboxExecutor(command -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("saturated");
+            }
+            pool.execute(command);
+        }, 10);
+        UUID id = UUID.randomUUID();
+
+        // Act
+        CompletableFuture<Integer> rejected = executor.submit(id, () -> 1);
+        rejecting.set(false);
+        CompletableFuture<Integer> next = executor.submit(id, () -> 2);
+
+        // Asserts
+        assertThatThrownBy(() -> rejected.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo(2);
+        assertThat(executor.getQueueDepth()).isEqualTo(0);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testEvaluateExclusivelyHoldsMailboxes() throws Exception {
+        // Arrange
+        UUID firstId = UUID.randomUUID();
+        UUID secondId = UUID.randomUUID();
+        List<String> log = new CopyOnWriteArrayList<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        mailboxExecutor.submit(firstId, () -> {
+            started.countDown();
+            await(release);
+            return log.add("before");
+        });
+        started.await(5, TimeUnit.SECONDS);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+
+        // Act
+        CompletableFuture<Boolean> exclusive = CompletableFuture.supplyAsync(
+                () -> mailboxExecutor.evaluateExclusively(Arrays.asList(secondId, firstId), null, () -> {
+                    assertThat(mailboxExecutor.isInsideMailbox()).isTrue();
+                    return log.add("exclusive");
+                }), callers);
+        waitQueued(firstId, callers).get(5, TimeUnit.SECONDS);
+        CompletableFuture<Boolean> after = mailboxExecutor.submit(firstId, () -> log.add("after"));
+        release.countDown();
+
+        // Asserts
+        CompletableFuture.allOf(exclusive, after).get(5, TimeUnit.SECONDS);
+        assertThat(log).containsExactly("before", "exclusive", "after");
+        assertThat(mailboxExecutor.isInsideMailbox()).isFalse();
+        callers.shutdown();
+    }
+
+    @Test
+    public void testEvaluateExclusivelyWithTimeout() throws Exception {
+        // Arrange
+        UUID id = UUID.randomUUID();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        mailboxExecutor.submit(id, () -> {
+            started.countDown();
+            return await(release);
+        });
+        started.await(5, TimeUnit.SECONDS);
+
+        // Act
+        GuardCheck.check(() -> mailboxExecutor.evaluateExclusively(Collections.singletonList(id),
+                                                                   Duration.ofMillis(100),
+                                                                   () -> 1),
+                         StateMachineWrapperException.class,
+                         UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME);
+
+        // Asserts
+        release.countDown();
+        assertThat(mailboxExecutor.submit(id, () -> 2).get(5, TimeUnit.SECONDS)).isEqualTo(2);
+    }
+
+    /**
+     * @return future which completes when a task (the turn of the exclusive call) waits in the mailbox
+     */
+    private CompletableFuture<Void> waitQueued(UUID id, ExecutorService callers) {
+        return CompletableFuture.runAsync(() -> {
+            while (mailboxExecutor.getQueueDepth(id) == 0) {
+                Thread.yield();
+            }
+        }, callers);
+    }
+
+    private boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.antkorwin.statemachineutils.service;
+
+import org.junit.Test;
+import org.springframework.statemachine.StateMachine;
+
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class StateMachineCacheTest {
+
+    @Test
+    public void testReleasedMachineIsBorrowedAgain() {
+        // Arrange
+        StateMachineCache<String, String> cache = new StateMachineCache<>(10, 60_000);
+        UUID id = UUID.randomUUID();
+        StateMachine<String, String> machine = machine();
+
+        // Act
+        StateMachine<String, String> first = cache.borrow(id);
+        cache.release(id, machine);
+        StateMachine<String, String> second = cache.borrow(id);
+        StateMachine<String, String> concurrent = cache.borrow(UUID.randomUUID());
+
+        // Asserts
+        assertThat(first).isNull();
+        assertThat(second).isSameAs(machine);
+        assertThat(concurrent).isNull();
+        StateMachineCacheStats stats = cache.getStats();
+        assertThat(stats.getHitCount()).isEqualTo(1);
+        assertThat(stats.getMissCount()).isEqualTo(2);
+        assertThat(stats.getSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentBorrowInvalidatesEntry() {
+        // Arrange
+        StateMachineCache<String, String> cache = new StateMachineCache<>(10, 60_000);
+        UUID id = UUID.randomUUID();
+        cache.borrow(id);
+        cache.release(id, machine());
+
+        // Act
+        StateMachine<String, String> first = cache.borrow(id);
+        StateMachine<String, String> second = cache.borrow(id);
+        cache.release(id, machine());
+        cache.release(id, first);
+
+        // Asserts
+        assertThat(first).isNotNull();
+        assertThat(second).isNull();
+        assertThat(cache.borrow(id)).isNull();
+    }
+
+    @Test
+    public void testInvalidate() {
+        // Arrange
+        StateMachineCache<String, String> cache = new StateMachineCache<>(10, 60_000);
+        UUID id = UUID.randomUUID();
+        cache.borrow(id);
+        cache.release(id, machine());
+
+        // Act
+        cache.invalidate(id);
+
+        // Assert
+        assertThat(cache.borrow(id)).isNull();
+    }
+
+    @Test
+    public void testEvictionBySize() {
+        // Arrange
+        StateMachineCache<String, String> cache = new StateMachineCache<>(2, 60_000);
+        UUID first = UUID.randomUUID();
+        UUID second = UUID.randomUUID();
+        UUID third = UUID.randomUUID();
+
+        // Act
+        for (UUID id : new UUID[]{first, second, third}) {
+            cache.borrow(id);
+            cache.release(id, machine());
+        }
+
+        // Asserts
+        assertThat(cache.getStats().getEvictionCount()).isEqualTo(1);
+        assertThat(cache.getStats().getSize()).isEqualTo(2);
+        assertThat(cache.take(first)).isNull();
+        assertThat(cache.take(third)).isNotNull();
+    }
+
+    @Test
+    public void testEvictionByIdleTime() throws InterruptedException {
+        // Arrange
+        StateMachineCache<String, String> cache = new StateMachineCache<>(10, 50);
+        UUID id = UUID.randomUUID();
+        cache.borrow(id);
+        cache.release(id, machine());
+
+        // Act
+        Thread.sleep(100);
+
+        // Asserts
+        assertThat(cache.borrow(id)).isNull();
+        assertThat(cache.getStats().getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testDisabledCache() {
+        // Arrange
+        StateMachineCache<String, String> cache = StateMachineCache.disabled();
+        UUID id = UUID.randomUUID();
+
+        // Act
+        cache.borrow(id);
+        cache.release(id, machine());
+
+        // Assert
+        assertThat(cache.borrow(id)).isNull();
+    }
+
+    @SuppressWarnings("unchecked")
+    private StateMachine<String, String> machine() {
+        return mock(StateMachine.class);
+    }
+}
@@ -6,15 +6,27 @@ import com.antkorwin.statemachineutils.TransactionalTestConfig;
 import com.antkorwin.statemachineutils.config.Events;
 import com.antkorwin.statemachineutils.config.StateMachineConfig;
 import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.persist.BatchStateMachinePersist;
+import com.antkorwin.statemachineutils.persist.DefaultStateMachinePersisterDecorator;
+import com.antkorwin.statemachineutils.persist.EventSourcedStateMachinePersister;
+import com.antkorwin.statemachineutils.persist.InMemoryStateMachineEventLog;
+import com.antkorwin.statemachineutils.persist.InMemoryStateMachinePersist;
+import com.antkorwin.statemachineutils.persist.JavaSerializationContextCodec;
 import com.antkorwin.statemachineutils.persist.PersisterErrorInfo;
 import com.antkorwin.statemachineutils.persist.StateMachineContextEvaluator;
+import com.antkorwin.statemachineutils.resolver.StateMachineResolver;
 import com.antkorwin.statemachineutils.wrapper.EnableStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapperException;
+import com.antkorwin.statemachineutils.wrapper.TransactionalStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.TxOptions;
 import lombok.extern.slf4j.Slf4j;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -24,11 +36,26 @@ import org.springframework.statemachine.StateMachinePersist;
 import org.springframework.statemachine.config.StateMachineFactory;
 import org.springframework.statemachine.persist.StateMachinePersister;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.WRAPPER_DOES_NOT_SUPPORT_TX_OPTIONS;
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
 
 /**
@@ -62,6 +89,17 @@ public class XStateMachineServiceImplTest {
     @Autowired
     private TransactionalTestConfig.TestService testService;
 
+    @Autowired
+    @Qualifier("stateMachineRollbackWrapper")
+    private StateMachineWrapper<States, Events> rollbackWrapper;
+
+    @Autowired
+    @Qualifier("stateMachineTransactionalWrapper")
+    private TransactionalStateMachineWrapper<States, Events> transactionalWrapper;
+
+    @Autowired
+    private StateMachineResolver<States, Events> resolver;
+
     @Before
     public void setUp() throws Exception {
         testService.clear();
@@ -346,6 +384,325 @@ public class XStateMachineServiceImplTest {
     }
 
 
+    @Test
+    public void testEvaluateTransactionalReadOnly() {
+
+        // Act
+        Boolean readOnly = xStateMachineService.evaluateTransactional(PERSISTED_MACHINE_ID, stateMachine -> {
+            stateMachine.sendEvent(Events.START_FEATURE);
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }, TxOptions.READ_ONLY);
+
+        // Asserts
+        assertThat(readOnly).isTrue();
+        StateMachine<States, Events> persistedMachine = xStateMachineService.get(PERSISTED_MACHINE_ID);
+        assertThat(persistedMachine.getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testServiceWithPlainTransactionalWrapper() {
+        // Arrange
+        StateMachineWrapper<States, Events> plainWrapper = rollbackWrapper;
+        XStateMachineService<States, Events> service =
+                new XStateMachineServiceImpl<>(rollbackWrapper, plainWrapper, persister, factory, resolver);
+
+        // Act
+        States state = service.evaluateTransactional(PERSISTED_MACHINE_ID, stateMachine -> {
+            stateMachine.sendEvent(Events.START_FEATURE);
+            return stateMachine.getState().getId();
+        });
+
+        // Asserts
+        assertThat(state).isEqualTo(States.IN_PROGRESS);
+        GuardCheck.check(() -> service.evaluateTransactional(PERSISTED_MACHINE_ID,
+                                                             stateMachine -> stateMachine.getState().getId(),
+                                                             TxOptions.READ_ONLY),
+                         StateMachineWrapperException.class,
+                         WRAPPER_DOES_NOT_SUPPORT_TX_OPTIONS);
+    }
+
+    @Test
+    public void testPersistInTransaction() {
+        // Arrange
+        List<Boolean> persistedInTransaction = new ArrayList<>();
+        XStateMachineService<States, Events> service = persistInTransactionService(persistedInTransaction);
+
+        // Act
+        service.evaluateTransactional(PERSISTED_MACHINE_ID, stateMachine -> {
+            stateMachine.sendEvent(Events.START_FEATURE);
+            return testService.ok();
+        });
+
+        // Asserts
+        assertThat(persistedInTransaction).containsExactly(true);
+        assertThat(service.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.IN_PROGRESS);
+        assertThat(testService.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testPersistInTransactionWithFailInTransaction() {
+        // Arrange
+        List<Boolean> persistedInTransaction = new ArrayList<>();
+        XStateMachineService<States, Events> service = persistInTransactionService(persistedInTransaction);
+        Exception actualException = null;
+
+        // Act
+        try {
+            service.evaluateTransactional(PERSISTED_MACHINE_ID, stateMachine -> {
+                stateMachine.sendEvent(Events.START_FEATURE);
+                testService.ok();
+                testService.fail();
+                return stateMachine;
+            });
+        } catch (Exception e) {
+            actualException = e;
+        }
+
+        // Asserts
+        assertThat(actualException).isInstanceOf(DataIntegrityViolationException.class);
+        // only an old version of the machine after the rollback:
+        assertThat(persistedInTransaction).containsExactly(false);
+        assertThat(service.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.BACKLOG);
+        assertThat(testService.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void testFailedPersistInTransactionIsNotRepeated() {
+        // Arrange
+        List<Exception> writeErrors = new ArrayList<>();
+        XStateMachineService<States, Events> service = failingPersistService(writeErrors, true);
+
+        // Act
+        Exception actualException = null;
+        try {
+            service.evaluateTransactional(PERSISTED_MACHINE_ID, stateMachine -> stateMachine.sendEvent(Events.START_FEATURE));
+        } catch (Exception e) {
+            actualException = e;
+        }
+
+        // Asserts
+        assertThat(writeErrors).hasSize(1);
+        assertThat(actualException).isInstanceOf(XStateMachineException.class)
+                                   .hasCause(writeErrors.get(0));
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.BACKLOG);
+    }
+
+    @Test
+    public void testFailedPersistIsNotRepeated() {
+        // Arrange
+        List<Exception> writeErrors = new ArrayList<>();
+        XStateMachineService<States, Events> service = failingPersistService(writeErrors, false);
+
+        // Act
+        Exception actualException = null;
+        try {
+            service.evaluate(PERSISTED_MACHINE_ID, stateMachine -> stateMachine.sendEvent(Events.START_FEATURE));
+        } catch (Exception e) {
+            actualException = e;
+        }
+
+        // Asserts
+        assertThat(writeErrors).hasSize(1);
+        assertThat(actualException).isInstanceOf(XStateMachineException.class)
+                                   .hasCause(writeErrors.get(0));
+    }
+
+    @Test
+    public void testFailedPersistOfRollbackKeepsOriginalException() {
+        // Arrange
+        List<Exception> writeErrors = new ArrayList<>();
+        XStateMachineService<States, Events> service = failingPersistService(writeErrors, false);
+        RuntimeException expectedException = new RuntimeException("stop!");
+
+        // Act
+        Exception actualException = null;
+        try {
+            service.evaluate(PERSISTED_MACHINE_ID, stateMachine -> {
+                stateMachine.sendEvent(Events.START_FEATURE);
+                throw expectedException;
+            });
+        } catch (Exception e) {
+            actualException = e;
+        }
+
+        // Asserts
+        assertThat(actualException).isSameAs(expectedException);
+        assertThat(writeErrors).hasSize(1);
+        assertThat(actualException.getSuppressed()).hasSize(1);
+        assertThat(actualException.getSuppressed()[0]).hasCause(writeErrors.get(0));
+    }
+
+    @Test
+    public void testRollbackAfterWrapperExceptionInsideProcessingFunction() {
+        // Arrange
+        Function<StateMachine<States, Events>, String> processingFunc = stateMachine -> {
+            stateMachine.sendEvent(Events.START_FEATURE);
+            try {
+                persister.persist(stateMachine, PERSISTED_MACHINE_ID);
+            } catch (Exception e) {
+                Assertions.fail(e.getMessage());
+            }
+            // e.g. a nested tryEvaluate of another machine:
+            throw new StateMachineWrapperException(UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME);
+        };
+
+        // Act
+        GuardCheck.check(() -> xStateMachineService.evaluate(PERSISTED_MACHINE_ID, processingFunc),
+                         StateMachineWrapperException.class,
+                         UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME);
+
+        // Asserts
+        StateMachine<States, Events> persistedMachine = xStateMachineService.get(PERSISTED_MACHINE_ID);
+        assertThat(persistedMachine.getState().getId()).isEqualTo(States.BACKLOG);
+    }
+
+    @Test
+    public void testTryEvaluate() {
+        // Act
+        States state = xStateMachineService.tryEvaluate(PERSISTED_MACHINE_ID, stateMachine -> {
+            stateMachine.sendEvent(Events.START_FEATURE);
+            return stateMachine.getState().getId();
+        }, Duration.ofSeconds(1));
+
+        // Asserts
+        assertThat(state).isEqualTo(States.IN_PROGRESS);
+        StateMachine<States, Events> persistedMachine = xStateMachineService.get(PERSISTED_MACHINE_ID);
+        assertThat(persistedMachine.getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testEvaluateAll() {
+        // Arrange
+        UUID secondId = UUID.randomUUID();
+        xStateMachineService.create(secondId);
+
+        // Act
+        int size = xStateMachineService.evaluateAll(Arrays.asList(PERSISTED_MACHINE_ID, secondId), machines -> {
+            machines.values().forEach(machine -> machine.sendEvent(Events.START_FEATURE));
+            return machines.size();
+        });
+
+        // Asserts
+        assertThat(size).isEqualTo(2);
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.IN_PROGRESS);
+        assertThat(xStateMachineService.get(secondId).getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testEvaluateAllPersistsChangedMachinesInOneBatch() {
+        // Arrange
+        List<Set<UUID>> batches = new ArrayList<>();
+        XStateMachineService<States, Events> service = batchService(batches);
+        UUID secondId = UUID.randomUUID();
+        UUID unchangedId = UUID.randomUUID();
+        xStateMachineService.create(secondId);
+        xStateMachineService.create(unchangedId);
+
+        // Act
+        service.evaluateAll(Arrays.asList(PERSISTED_MACHINE_ID, secondId, unchangedId), machines -> {
+            machines.get(PERSISTED_MACHINE_ID).sendEvent(Events.START_FEATURE);
+            machines.get(secondId).sendEvent(Events.START_FEATURE);
+            return null;
+        });
+
+        // Asserts
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsOnly(PERSISTED_MACHINE_ID, secondId);
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.IN_PROGRESS);
+        assertThat(xStateMachineService.get(secondId).getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testRollbackAllInEvaluateAllWithError() {
+        // Arrange
+        UUID secondId = UUID.randomUUID();
+        xStateMachineService.create(secondId);
+
+        Function<Map<UUID, StateMachine<States, Events>>, String> func = machines -> {
+            machines.get(PERSISTED_MACHINE_ID).sendEvent(Events.START_FEATURE);
+            machines.get(secondId).sendEvent(Events.START_FEATURE);
+            throw new NotFoundException(PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+        };
+
+        // Act
+        GuardCheck.check(() -> xStateMachineService.evaluateAll(Arrays.asList(PERSISTED_MACHINE_ID, secondId), func),
+                         NotFoundException.class,
+                         PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+
+        // Asserts
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.BACKLOG);
+        assertThat(xStateMachineService.get(secondId).getState().getId()).isEqualTo(States.BACKLOG);
+    }
+
+    @Test
+    public void testEvaluateAsyncRunsMachineInSingleWriter() throws Exception {
+        // Arrange
+        int iterations = 200;
+
+        // Act
+        List<CompletableFuture<Boolean>> futures =
+                IntStream.range(0, iterations)
+                         .parallel()
+                         .mapToObj(i -> xStateMachineService.evaluateAsync(PERSISTED_MACHINE_ID,
+                                                                           machine -> machine.sendEvent(Events.INCREMENT)))
+                         .collect(toList());
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        // Asserts
+        StateMachine<States, Events> machine = xStateMachineService.get(PERSISTED_MACHINE_ID);
+        assertThat(machine.getExtendedState().getVariables().get("counter")).isEqualTo(iterations);
+    }
+
+    @Test
+    public void testMailboxModeWithNestedAndExclusiveCalls() throws Exception {
+        // Arrange
+        MailboxExecutor executor = new MailboxExecutor(1, 10);
+        XStateMachineService<States, Events> service = serviceBuilder().mailboxExecutor(executor)
+                                                                       .executionMode(ExecutionMode.MAILBOX)
+                                                                       .build();
+        UUID secondId = UUID.randomUUID();
+        xStateMachineService.create(secondId);
+
+        // Act
+        Object nestedCounter = service.evaluate(PERSISTED_MACHINE_ID, machine -> {
+            // the only thread of the pool runs this function:
+            return service.evaluate(secondId, second -> {
+                second.sendEvent(Events.INCREMENT);
+                return second.getExtendedState().getVariables().get("counter");
+            });
+        });
+        service.evaluateAll(Arrays.asList(PERSISTED_MACHINE_ID, secondId), machines -> {
+            machines.values().forEach(machine -> machine.sendEvent(Events.START_FEATURE));
+            return null;
+        });
+        service.tryEvaluate(secondId, machine -> machine.sendEvent(Events.INCREMENT), Duration.ofSeconds(1));
+
+        // Asserts
+        assertThat(nestedCounter).isEqualTo(1);
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.IN_PROGRESS);
+        StateMachine<States, Events> second = xStateMachineService.get(secondId);
+        assertThat(second.getState().getId()).isEqualTo(States.IN_PROGRESS);
+        assertThat(second.getExtendedState().getVariables().get("counter")).isEqualTo(2);
+        assertThat(executor.getQueueDepth()).isEqualTo(0);
+        executor.shutdown();
+    }
+
+    @Test
+    public void testEvaluateAsyncWithError() {
+        // Act
+        CompletableFuture<Object> future = xStateMachineService.evaluateAsync(PERSISTED_MACHINE_ID, stateMachine -> {
+            stateMachine.sendEvent(Events.START_FEATURE);
+            throw new NotFoundException(PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+        });
+
+        // Asserts
+        Assertions.assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                  .hasCauseInstanceOf(NotFoundException.class);
+
+        StateMachine<States, Events> persistedMachine = xStateMachineService.get(PERSISTED_MACHINE_ID);
+        assertThat(persistedMachine.getState().getId()).isEqualTo(States.BACKLOG);
+    }
+
     @Test
     public void testRetrieveAvailableEvents() {
         // Act
@@ -358,6 +715,302 @@ public class XStateMachineServiceImplTest {
                               Events.INCREMENT);
     }
 
+    @Test
+    public void testRetrieveAvailableEventsWithoutRestore() {
+        // Arrange
+        StateMachinePool<States, Events> pool = new StateMachinePool<>(factory, 2, 0);
+        XStateMachineService<States, Events> service = serviceBuilder().pool(pool).build();
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> {
+            machine.sendEvent(Events.START_FEATURE);
+            return machine.sendEvent(Events.DEPLOY);
+        });
+
+        // Act
+        List<Events> events = service.retrieveAvailableEvents(PERSISTED_MACHINE_ID);
+
+        // Asserts
+        assertThat(events).containsOnly(Events.FINISH_FEATURE,
+                                        Events.DEPLOY,
+                                        Events.INCREMENT);
+        assertThat(pool.getCreatedCount()).isEqualTo(1); // only for the evaluate
+        assertThat(pool.getReusedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testRetrieveAvailableEventsWithWrongId() {
+        GuardCheck.check(() -> xStateMachineService.retrieveAvailableEvents(UUID.randomUUID()),
+                         NotFoundException.class,
+                         PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+    }
+
+    @Test
+    public void testEvaluateWithCache() {
+        // Arrange
+        StateMachineCache<States, Events> cache = new StateMachineCache<>(10, 60_000);
+        XStateMachineService<States, Events> service = serviceBuilder().cache(cache).build();
+
+        // Act
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> machine.sendEvent(Events.START_FEATURE));
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> {
+            machine.sendEvent(Events.DEPLOY);
+            return machine.sendEvent(Events.FINISH_FEATURE);
+        });
+        List<Events> events = service.retrieveAvailableEvents(PERSISTED_MACHINE_ID);
+
+        // Asserts
+        assertThat(cache.getStats().getMissCount()).isEqualTo(1);
+        assertThat(cache.getStats().getHitCount()).isEqualTo(2);
+        assertThat(events).contains(Events.QA_REJECTED_UC);
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.TESTING);
+    }
+
+    @Test
+    public void testCacheStaysCoherentAfterRollbackAndUpdate() {
+        // Arrange
+        StateMachineCache<States, Events> cache = new StateMachineCache<>(10, 60_000);
+        XStateMachineService<States, Events> service = serviceBuilder().cache(cache).build();
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> machine.sendEvent(Events.START_FEATURE));
+
+        // Act
+        GuardCheck.check(() -> service.evaluate(PERSISTED_MACHINE_ID, machine -> {
+                             machine.sendEvent(Events.FINISH_FEATURE);
+                             throw new NotFoundException(PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+                         }),
+                         NotFoundException.class,
+                         PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+
+        States afterRollback = service.evaluate(PERSISTED_MACHINE_ID, machine -> machine.getState().getId());
+
+        StateMachine<States, Events> machine = service.get(PERSISTED_MACHINE_ID);
+        machine.sendEvent(Events.DEPLOY);
+        machine.sendEvent(Events.FINISH_FEATURE);
+        service.update(PERSISTED_MACHINE_ID, machine);
+        States afterUpdate = service.evaluate(PERSISTED_MACHINE_ID, m -> m.getState().getId());
+
+        // Asserts
+        assertThat(afterRollback).isEqualTo(States.IN_PROGRESS);
+        assertThat(afterUpdate).isEqualTo(States.TESTING);
+        assertThat(cache.getStats().getHitCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void testEvaluateWithPool() {
+        // Arrange
+        StateMachinePool<States, Events> pool = new StateMachinePool<>(factory, 2, 1);
+        XStateMachineService<States, Events> service = serviceBuilder().pool(pool).build();
+        UUID secondId = UUID.randomUUID();
+        xStateMachineService.create(secondId);
+
+        // Act
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> {
+            machine.sendEvent(Events.START_FEATURE);
+            return machine.sendEvent(Events.INCREMENT);
+        });
+        Object secondCounter = service.evaluate(secondId,
+                                                machine -> machine.getExtendedState().getVariables().get("counter"));
+        List<Events> events = service.retrieveAvailableEvents(secondId);
+
+        // Asserts
+        assertThat(pool.getCreatedCount()).isEqualTo(0);
+        assertThat(pool.getReusedCount()).isEqualTo(2); // events are resolved from the persisted context
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+        assertThat(secondCounter).isNull();
+        assertThat(events).contains(Events.START_FEATURE);
+
+        StateMachine<States, Events> machine = xStateMachineService.get(PERSISTED_MACHINE_ID);
+        assertThat(machine.getState().getId()).isEqualTo(States.IN_PROGRESS);
+        assertThat(machine.getExtendedState().getVariables().get("counter")).isEqualTo(1);
+    }
+
+    @Test
+    public void testMachineExposedByResultIsNotReturnedToPool() {
+        // Arrange
+        StateMachinePool<States, Events> pool = new StateMachinePool<>(factory, 2, 0);
+        XStateMachineService<States, Events> service = serviceBuilder().pool(pool).build();
+        UUID secondId = UUID.randomUUID();
+        xStateMachineService.create(secondId);
+
+        // Act
+        Map<Object, Object> variables = service.evaluate(PERSISTED_MACHINE_ID, machine -> {
+            machine.sendEvent(Events.START_FEATURE);
+            machine.sendEvent(Events.INCREMENT);
+            return machine.getExtendedState().getVariables();
+        });
+        StateMachine<States, Events> second = service.evaluate(secondId, machine -> machine);
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> machine.sendEvent(Events.INCREMENT));
+
+        // Asserts
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+        assertThat(pool.getReusedCount()).isEqualTo(0);
+        assertThat(variables.get("counter")).isEqualTo(1);
+        assertThat(second.getState().getId()).isEqualTo(States.BACKLOG);
+        assertThat(second.getId()).isEqualTo(secondId.toString());
+    }
+
+    @Test
+    public void testMachineReturnsToPoolWhenNotFound() {
+        // Arrange
+        StateMachinePool<States, Events> pool = new StateMachinePool<>(factory, 2, 0);
+        XStateMachineService<States, Events> service = serviceBuilder().pool(pool).build();
+
+        // Act
+        GuardCheck.check(() -> service.evaluate(UUID.randomUUID(), machine -> machine.sendEvent(Events.START_FEATURE)),
+                         NotFoundException.class,
+                         PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+
+        // Asserts
+        assertThat(pool.getCreatedCount()).isEqualTo(1);
+        assertThat(pool.getIdleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testSkipPersistOfUnchangedMachine() {
+        // Arrange
+        AtomicInteger writes = new AtomicInteger();
+        XStateMachineService<States, Events> service = countingService(writes);
+
+        // Act
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> machine.getState().getId());
+        int afterRead = writes.get();
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> machine.sendEvent(Events.FINISH_FEATURE));
+        int afterNotAcceptedEvent = writes.get();
+        service.evaluate(PERSISTED_MACHINE_ID, machine -> machine.sendEvent(Events.START_FEATURE));
+        int afterAcceptedEvent = writes.get();
+
+        // Asserts
+        assertThat(afterRead).isEqualTo(0);
+        assertThat(afterNotAcceptedEvent).isEqualTo(0);
+        assertThat(afterAcceptedEvent).isEqualTo(1);
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testPersistMachineWithMutableVariables() {
+        // Arrange
+        AtomicInteger writes = new AtomicInteger();
+        XStateMachineService<States, Events> service = countingService(writes);
+        service.evaluate(PERSISTED_MACHINE_ID,
+                         machine -> machine.getExtendedState().getVariables().put("list", new ArrayList<>()));
+
+        // Act
+        service.evaluate(PERSISTED_MACHINE_ID,
+                         machine -> machine.getExtendedState().get("list", List.class).add("changed in place"));
+
+        // Asserts
+        assertThat(writes.get()).isEqualTo(2);
+        assertThat(xStateMachineService.get(PERSISTED_MACHINE_ID).getExtendedState().get("list", List.class))
+                .containsExactly("changed in place");
+    }
+
+    @Test
+    public void testPersistRollbackedMachineEvenIfUnchanged() {
+        // Arrange
+        AtomicInteger writes = new AtomicInteger();
+        XStateMachineService<States, Events> service = countingService(writes);
+
+        // Act
+        GuardCheck.check(() -> service.evaluate(PERSISTED_MACHINE_ID, machine -> {
+                             machine.sendEvent(Events.START_FEATURE);
+                             throw new NotFoundException(PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+                         }),
+                         NotFoundException.class,
+                         PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+
+        // Assert
+        assertThat(writes.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEventSourcedPersister() {
+        // Arrange
+        InMemoryStateMachineEventLog eventLog = new InMemoryStateMachineEventLog();
+        XStateMachineService<States, Events> service = eventSourcedService(eventLog);
+        UUID id = UUID.randomUUID();
+        service.create(id);
+
+        // Act
+        service.evaluate(id, machine -> machine.sendEvent(Events.START_FEATURE));
+        GuardCheck.check(() -> service.evaluate(id, machine -> {
+                             machine.sendEvent(Events.DEPLOY);
+                             throw new NotFoundException(PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+                         }),
+                         NotFoundException.class,
+                         PersisterErrorInfo.COULD_NOT_READ_STATEMACHINE_FROM_PERSIST);
+        service.evaluate(id, machine -> machine.sendEvent(Events.INCREMENT));
+
+        // Asserts
+        assertThat(eventLog.lastSequence(id)).isEqualTo(2);
+        StateMachine<States, Events> machine = service.get(id);
+        assertThat(machine.getState().getId()).isEqualTo(States.IN_PROGRESS);
+        assertThat(machine.getExtendedState().getVariables()).containsEntry("counter", 1)
+                                                             .doesNotContainKey("deployed");
+    }
+
+    private XStateMachineServiceImpl.Builder<States, Events> serviceBuilder() {
+        return XStateMachineServiceImpl.<States, Events>builder()
+                .rollbackWrapper(rollbackWrapper)
+                .transactionalWrapper(transactionalWrapper)
+                .persister(persister)
+                .factory(factory)
+                .resolver(resolver)
+                .mailboxExecutor(new MailboxExecutor(ForkJoinPool.commonPool(), 1));
+    }
+
+    private XStateMachineService<States, Events> persistInTransactionService(List<Boolean> persistedInTransaction) {
+        return serviceBuilder().persister(new HookedPersister(machine -> persistedInTransaction.add(
+                                       TransactionSynchronizationManager.isActualTransactionActive())))
+                               .persistInTransaction(true)
+                               .build();
+    }
+
+    private XStateMachineService<States, Events> failingPersistService(List<Exception> writeErrors,
+                                                                       boolean persistInTransaction) {
+        return serviceBuilder().persister(new HookedPersister(machine -> {
+                                   Exception error = new IllegalStateException("unable to write");
+                                   writeErrors.add(error);
+                                   throw error;
+                               }))
+                               .persistInTransaction(persistInTransaction)
+                               .build();
+    }
+
+    private XStateMachineService<States, Events> countingService(AtomicInteger writes) {
+        return serviceBuilder().persister(new HookedPersister(machine -> writes.incrementAndGet()))
+                               .build();
+    }
+
+    private XStateMachineService<States, Events> batchService(List<Set<UUID>> batches) {
+
+        BatchStateMachinePersist<States, Events, UUID> batchPersist = new BatchStateMachinePersist<States, Events, UUID>() {
+            @Override
+            public void write(StateMachineContext<States, Events> context, UUID contextObj) throws Exception {
+                persist.write(context, contextObj);
+            }
+
+            @Override
+            public StateMachineContext<States, Events> read(UUID contextObj) throws Exception {
+                return persist.read(contextObj);
+            }
+
+            @Override
+            public void writeAll(Map<UUID, StateMachineContext<States, Events>> contexts) throws Exception {
+                batches.add(new HashSet<>(contexts.keySet()));
+                BatchStateMachinePersist.super.writeAll(contexts);
+            }
+        };
+
+        return serviceBuilder().persister(new DefaultStateMachinePersisterDecorator<>(batchPersist))
+                               .build();
+    }
+
+    private XStateMachineService<States, Events> eventSourcedService(InMemoryStateMachineEventLog eventLog) {
+        return serviceBuilder().persister(new EventSourcedStateMachinePersister<>(new InMemoryStateMachinePersist(),
+                                                                                  eventLog,
+                                                                                  new JavaSerializationContextCodec<>(),
+                                                                                  10))
+                               .build();
+    }
+
     private void assertThatMachinesEqual(StateMachine<States, Events> firstMachine,
                                          StateMachine<States, Events> secondMachine) {
         // Arrange
@@ -370,4 +1023,33 @@ public class XStateMachineServiceImplTest {
         // Assert
         assertThat(firstContext).isEqualToComparingFieldByFieldRecursively(secondContext);
     }
+
+    /**
+     * Persister of the context, the hook runs before each persist of a machine.
+     */
+    private class HookedPersister implements StateMachinePersister<States, Events, UUID> {
+
+        private final PersistHook hook;
+
+        private HookedPersister(PersistHook hook) {
+            this.hook = hook;
+        }
+
+        @Override
+        public void persist(StateMachine<States, Events> stateMachine, UUID contextObj) throws Exception {
+            hook.beforePersist(stateMachine);
+            persister.persist(stateMachine, contextObj);
+        }
+
+        @Override
+        public StateMachine<States, Events> restore(StateMachine<States, Events> stateMachine,
+                                                    UUID contextObj) throws Exception {
+            return persister.restore(stateMachine, contextObj);
+        }
+    }
+
+    private interface PersistHook {
+
+        void beforePersist(StateMachine<States, Events> stateMachine) throws Exception;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+package com.antkorwin.statemachineutils.wrapper;
+
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.config.TestStateMachineBuilder;
+import org.junit.Test;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Created on 18.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class WrapperConfigTest {
+
+    @Test
+    public void testLockProviderOfApplication() {
+        // Arrange
+        ApplicationContextRunner before = new ApplicationContextRunner()
+                .withUserConfiguration(CountingLockProviderConfig.class, WrapperConfig.class);
+        ApplicationContextRunner after = new ApplicationContextRunner()
+                .withUserConfiguration(WrapperConfig.class, CountingLockProviderConfig.class);
+
+        // Act & Asserts
+        for (ApplicationContextRunner runner : new ApplicationContextRunner[]{before, after}) {
+            runner.run(context -> {
+                @SuppressWarnings("unchecked")
+                StateMachineWrapper<States, Events> wrapper = context.getBean("stateMachineRollbackWrapper",
+                                                                              StateMachineWrapper.class);
+                wrapper.evaluateWithRollback(TestStateMachineBuilder.build(), machine -> null);
+                assertThat(context.getBean(CountingLockProvider.class).evaluations.get()).isEqualTo(1);
+            });
+        }
+    }
+
+    @Configuration
+    public static class CountingLockProviderConfig {
+
+        @Bean
+        public CountingLockProvider countingLockProvider() {
+            return new CountingLockProvider();
+        }
+
+        @Bean
+        public EntityManagerFactory entityManagerFactory() {
+            return mock(EntityManagerFactory.class); // for the transactional wrapper
+        }
+    }
+
+    private static class CountingLockProvider implements MachineLockProvider {
+
+        private final AtomicInteger evaluations = new AtomicInteger();
+
+        @Override
+        public <ResultT> ResultT evaluate(String key, Supplier<ResultT> supplier) {
+            evaluations.incrementAndGet();
+            return supplier.get();
+        }
+
+        @Override
+        public <ResultT> ResultT tryEvaluate(String key, long timeout, TimeUnit unit, Supplier<ResultT> supplier) {
+            return evaluate(key, supplier);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import com.antkorwin.statemachineutils.wrapper.MachineLockProvider;
+import com.antkorwin.statemachineutils.wrapper.MachineLockType;
+import com.antkorwin.xsync.XSync;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Compares implementations of the {@link MachineLockProvider}
+ * with a hot key (keysNumber = 1) and with spread keys.
+ * <p>
+ * The library targets Java 8, so the benchmark runs on platform threads only.
+ * To compare on virtual threads, run the same critical section
+ * in an {@code Executors.newVirtualThreadPerTaskExecutor()} on JDK 21+,
+ * the XSync pins a carrier thread while it waits in a synchronized block,
+ * the reentrant provider doesn't.
+ *
+ * @author Korovin Anatoliy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(1)
+public class MachineLockProviderBenchmark {
+
+    @Param({"REENTRANT", "XSYNC"})
+    private MachineLockType lockType;
+
+    @Param({"1", "1000"})
+    private int keysNumber;
+
+    private MachineLockProvider lockProvider;
+    private String[] keys;
+
+    @Setup
+    public void setUp() {
+        lockProvider = lockType == MachineLockType.XSYNC
+                       ? new XSyncMachineLockProvider(new XSync<>())
+                       : new ReentrantMachineLockProvider();
+        keys = new String[keysNumber];
+        for (int i = 0; i < keysNumber; i++) {
+            keys[i] = "machine-" + i;
+        }
+    }
+
+    @Benchmark
+    public Object evaluate() {
+        String key = keys[ThreadLocalRandom.current().nextInt(keysNumber)];
+        return lockProvider.evaluate(key, () -> {
+            Blackhole.consumeCPU(100);
+            return key;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MachineLockProviderBenchmark.class.getSimpleName())
+                                       .build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+public class SerialKeyExecutorTest {
+
+    @Test
+    public void testRejectedTaskCompletesExceptionally() throws Exception {
+        // Arrange
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        SerialKeyExecutor<String> executor = new SerialKeyExecutor<>(executorService);
+        executorService.shutdown();
+
+        // Act
+        CompletableFuture<Integer> result = executor.submit("key", () -> 1);
+
+        // Asserts
+        assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        assertThat(executor.getActiveKeys()).isEqualTo(0);
+    }
+
+    @Test
+    public void testTaskRejectedInQueueDoesNotBlockNextTasks() throws Exception {
+        // Arrange
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        AtomicBoolean rejecting = new AtomicBoolean();
+        SerialKeyExecutor<String> executor = new SerialKeyExecutor<>(command -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException("saturated");
+            }
+            executorService.execute(command);
+        });
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Boolean> first = executor.submit("key", () -> await(release));
+        CompletableFuture<Integer> rejected = executor.submit("key", () -> 2);
+
+        // Act
+        rejecting.set(true);
+        release.countDown();
+        assertThat(first.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThatThrownBy(() -> rejected.get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(RejectedExecutionException.class);
+        rejecting.set(false);
+        CompletableFuture<Integer> next = executor.submit("key", () -> 3);
+
+        // Asserts
+        assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo(3);
+        executorService.shutdown();
+    }
+
+    private boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
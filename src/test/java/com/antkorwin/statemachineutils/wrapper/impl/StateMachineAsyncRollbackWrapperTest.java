@@ -0,0 +1,146 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import com.antkorwin.commonutils.concurrent.NonAtomicInt;
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.StateMachineConfig;
+import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.wrapper.AsyncStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.EnableStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Created on 17.10.2026.
+ *
+ * @author Korovin Anatoliy
+ */
+@SpringBootTest
+@RunWith(SpringRunner.class)
+@Import(StateMachineConfig.class)
+@EnableStateMachineWrapper
+public class StateMachineAsyncRollbackWrapperTest {
+
+    private static final int ITERATION_NUMBER = 10000;
+    private static final int MACHINES_NUMBER = 10;
+
+    @Autowired
+    private StateMachineFactory<States, Events> stateMachineFactory;
+
+    @Autowired
+    @Qualifier("stateMachineAsyncRollbackWrapper")
+    private AsyncStateMachineWrapper<States, Events> asyncWrapper;
+
+    @Autowired
+    @Qualifier("stateMachineRollbackWrapper")
+    private StateMachineWrapper<States, Events> rollbackWrapper;
+
+    @Test
+    public void testEvaluateAsync() throws Exception {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+
+        // Act
+        CompletableFuture<States> future = asyncWrapper.evaluateWithRollbackAsync(stateMachine, machine -> {
+            machine.sendEvent(Events.START_FEATURE);
+            return machine.getState().getId();
+        });
+
+        // Assert
+        Assertions.assertThat(future.get(5, TimeUnit.SECONDS)).isEqualTo(States.IN_PROGRESS);
+        Assertions.assertThat(stateMachine.getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testRollbackAsync() throws Exception {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        RuntimeException expectedException = new RuntimeException("stop!");
+
+        // Act
+        CompletableFuture<Void> future = asyncWrapper.runWithRollbackAsync(stateMachine, machine -> {
+            machine.sendEvent(Events.START_FEATURE);
+            throw expectedException;
+        });
+
+        // Assert
+        Assertions.assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS))
+                  .isInstanceOf(ExecutionException.class)
+                  .hasCause(expectedException);
+        Assertions.assertThat(stateMachine.getState().getId()).isEqualTo(States.BACKLOG);
+    }
+
+    @Test
+    public void testCallerIsNotBlockedByBusyMachine() throws Exception {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> busy = asyncWrapper.runWithRollbackAsync(stateMachine, machine -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // Act
+        CompletableFuture<Integer> next = asyncWrapper.evaluateWithRollbackAsync(stateMachine, machine -> 1);
+
+        // Assert
+        Assertions.assertThat(next.isDone()).isFalse();
+        release.countDown();
+        Assertions.assertThat(next.get(5, TimeUnit.SECONDS)).isEqualTo(1);
+        Assertions.assertThat(busy.isDone()).isTrue();
+    }
+
+    @Test
+    public void testConcurrentAsyncAndSyncCallsOnManyMachines() throws Exception {
+        // Arrange
+        List<StateMachine<States, Events>> machines = IntStream.range(0, MACHINES_NUMBER)
+                                                               .mapToObj(i -> stateMachineFactory.getStateMachine())
+                                                               .collect(toList());
+        List<NonAtomicInt> counters = IntStream.range(0, MACHINES_NUMBER)
+                                               .mapToObj(i -> new NonAtomicInt())
+                                               .collect(toList());
+
+        // Act
+        List<CompletableFuture<Void>> futures =
+                IntStream.range(0, ITERATION_NUMBER)
+                         .boxed()
+                         .parallel()
+                         .map(i -> {
+                             StateMachine<States, Events> machine = machines.get(i % MACHINES_NUMBER);
+                             NonAtomicInt counter = counters.get(i % MACHINES_NUMBER);
+                             if (i % 3 == 0) {
+                                 rollbackWrapper.runWithRollback(machine, m -> counter.increment());
+                                 return CompletableFuture.<Void>completedFuture(null);
+                             }
+                             return asyncWrapper.runWithRollbackAsync(machine, m -> counter.increment());
+                         })
+                         .collect(toList());
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        // Assert
+        for (NonAtomicInt counter : counters) {
+            Assertions.assertThat(counter.getValue()).isEqualTo(ITERATION_NUMBER / MACHINES_NUMBER);
+        }
+    }
+}
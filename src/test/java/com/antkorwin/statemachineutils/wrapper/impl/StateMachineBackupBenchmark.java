@@ -0,0 +1,156 @@
+package com.antkorwin.statemachineutils.wrapper.impl;
+
+import com.antkorwin.statemachineutils.config.Events;
+import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.config.TestStateMachineBuilder;
+import com.antkorwin.statemachineutils.persist.InMemoryStateMachinePersist;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
+import org.springframework.statemachine.StateMachinePersist;
+import org.springframework.statemachine.persist.DefaultStateMachinePersister;
+import org.springframework.statemachine.persist.StateMachinePersister;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Created on 17.10.2026.
+ * <p>
+ * Compares strategies of taking a backup in the {@link StateMachineRollbackWrapper}:
+ * <ul>
+ * <li>persistWithRandomKey - the previous one, a full persist in the shared
+ * HashMap storage (as the in-memory persist was before) under the {@code UUID.randomUUID()} key;</li>
+ * <li>persistWithMachineKey - the same persist in the current {@link InMemoryStateMachinePersist},
+ * keyed by the machine uuid;</li>
+ * <li>snapshot - the current one, a {@link StateMachineSnapshot} on the stack.</li>
+ * </ul>
+ * Each strategy is measured in one thread and in 4 threads (the *Contended benchmarks),
+ * each thread works with its own machine. The HashMap storage isn't safe to share
+ * between threads, so the contended random key benchmark locks it on each access.
+ * Run it with the {@link #main} method, or pass `-prof gc` to the JMH runner
+ * to compare allocations per operation.
+ *
+ * @author Korovin Anatoliy
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StateMachineBackupBenchmark {
+
+    private static final InMemoryStateMachinePersist sharedPersist = new InMemoryStateMachinePersist();
+    private static final HashMapPersist legacyPersist = new HashMapPersist(new HashMap<>());
+    private static final HashMapPersist synchronizedLegacyPersist =
+            new HashMapPersist(Collections.synchronizedMap(new HashMap<>()));
+
+    @Param({"0", "100"})
+    private int variablesNumber;
+
+    private StateMachine<States, Events> machine;
+    private StateMachinePersister<States, Events, UUID> persister;
+    private StateMachinePersister<States, Events, UUID> legacyPersister;
+    private StateMachinePersister<States, Events, UUID> synchronizedLegacyPersister;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        machine = TestStateMachineBuilder.build();
+        machine.sendEvent(Events.START_FEATURE);
+        for (int i = 0; i < variablesNumber; i++) {
+            machine.getExtendedState().getVariables().put("variable-" + i, i);
+        }
+        persister = new DefaultStateMachinePersister<>(sharedPersist);
+        legacyPersister = new DefaultStateMachinePersister<>(legacyPersist);
+        synchronizedLegacyPersister = new DefaultStateMachinePersister<>(synchronizedLegacyPersist);
+    }
+
+    @Benchmark
+    public Object persistWithRandomKey() throws Exception {
+        return persistWithRandomKey(legacyPersister, legacyPersist);
+    }
+
+    @Benchmark
+    public Object persistWithMachineKey() throws Exception {
+        UUID id = machine.getUuid();
+        persister.persist(machine, id);
+        sharedPersist.remove(id);
+        return id;
+    }
+
+    @Benchmark
+    public Object snapshot() {
+        return StateMachineSnapshot.of(machine);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object persistWithRandomKeyContended() throws Exception {
+        return persistWithRandomKey(synchronizedLegacyPersister, synchronizedLegacyPersist);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object persistWithMachineKeyContended() throws Exception {
+        return persistWithMachineKey();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object snapshotContended() {
+        return snapshot();
+    }
+
+    private Object persistWithRandomKey(StateMachinePersister<States, Events, UUID> persister,
+                                        HashMapPersist persist) throws Exception {
+        UUID id = UUID.randomUUID();
+        persister.persist(machine, id);
+        persist.storage.remove(id);
+        return id;
+    }
+
+    /**
+     * The in-memory persist as it was before, based on the HashMap.
+     */
+    private static class HashMapPersist implements StateMachinePersist<States, Events, UUID> {
+
+        private final Map<UUID, StateMachineContext<States, Events>> storage;
+
+        private HashMapPersist(Map<UUID, StateMachineContext<States, Events>> storage) {
+            this.storage = storage;
+        }
+
+        @Override
+        public void write(StateMachineContext<States, Events> context, UUID contextObj) {
+            storage.put(contextObj, context);
+        }
+
+        @Override
+        public StateMachineContext<States, Events> read(UUID contextObj) {
+            return storage.get(contextObj);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(StateMachineBackupBenchmark.class.getSimpleName())
+                                       .build()).run();
+    }
+}
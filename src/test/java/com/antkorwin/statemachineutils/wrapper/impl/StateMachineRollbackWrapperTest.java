@@ -6,8 +6,12 @@ import com.antkorwin.commonutils.validation.GuardCheck;
 import com.antkorwin.statemachineutils.config.Events;
 import com.antkorwin.statemachineutils.config.StateMachineConfig;
 import com.antkorwin.statemachineutils.config.States;
+import com.antkorwin.statemachineutils.persist.StateMachineContextEvaluator;
 import com.antkorwin.statemachineutils.wrapper.EnableStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.ExtendedStateBackup;
 import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.StateMachineWrapperException;
+import com.antkorwin.xsync.XSync;
 import lombok.extern.slf4j.Slf4j;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
@@ -17,14 +21,34 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.statemachine.StateMachine;
+import org.springframework.statemachine.StateMachineContext;
 import org.springframework.statemachine.config.StateMachineFactory;
+import org.springframework.statemachine.support.ObservableMap;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.IntStream;
 
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.LOCK_PROVIDER_DOES_NOT_SUPPORT_TIMEOUT;
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT;
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.STATE_MACHINE_IS_MANDATORY_ARGUMENT;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.TIMEOUT_IS_MANDATORY_ARGUMENT;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME;
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 
 /**
  * Created on 20.06.2018.
@@ -39,6 +63,8 @@ import static org.mockito.Mockito.mock;
 public class StateMachineRollbackWrapperTest {
 
     public static final int ITERATION_NUMBER = 100000;
+    public static final int ROLLBACK_ITERATION_NUMBER = 10000;
+    public static final int MACHINES_NUMBER = 100;
 
     @Autowired
     private StateMachineFactory<States, Events> stateMachineFactory;
@@ -200,6 +226,375 @@ public class StateMachineRollbackWrapperTest {
         Assertions.assertThat(sum).isEqualTo(expectedSum);
     }
 
+    @Test
+    public void testRollbackRestoresExtendedState() throws Exception {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        stateMachine.sendEvent(Events.INCREMENT);
+        Exception actualException = null;
+
+        try {
+            // Act
+            stateMachineWrapper.evaluateWithRollback(stateMachine, machine -> {
+                machine.sendEvent(Events.INCREMENT);
+                machine.sendEvent(Events.START_FEATURE);
+                machine.getExtendedState().getVariables().put("temporary", "value");
+                throw new RuntimeException("stop!");
+            });
+        } catch (Exception e) {
+            actualException = e;
+        }
+
+        // Assert
+        Assertions.assertThat(actualException).hasMessage("stop!");
+        Assertions.assertThat(stateMachine.getState().getId()).isEqualTo(States.BACKLOG);
+        Assertions.assertThat(stateMachine.getExtendedState().getVariables())
+                  .containsOnlyKeys("counter")
+                  .containsEntry("counter", 1);
+    }
+
+    @Test
+    public void testConcurrentRollbacksOnManyMachines() throws Exception {
+        // Arrange
+        List<StateMachine<States, Events>> machines = IntStream.range(0, MACHINES_NUMBER)
+                                                               .mapToObj(i -> stateMachineFactory.getStateMachine())
+                                                               .collect(toList());
+        // Act
+        IntStream.range(0, ROLLBACK_ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> {
+                     try {
+                         stateMachineWrapper.runWithRollback(machines.get(i % MACHINES_NUMBER), machine -> {
+                             machine.sendEvent(Events.INCREMENT);
+                             if ((i / MACHINES_NUMBER) % 2 == 1) {
+                                 throw new RuntimeException("rollback");
+                             }
+                         });
+                     } catch (RuntimeException e) {
+                         // expected for odd iterations
+                     }
+                 });
+
+        // Assert
+        for (StateMachine<States, Events> machine : machines) {
+            Assertions.assertThat(machine.getState().getId()).isEqualTo(States.BACKLOG);
+            Assertions.assertThat(machine.getExtendedState().getVariables().get("counter"))
+                      .isEqualTo(ROLLBACK_ITERATION_NUMBER / MACHINES_NUMBER / 2);
+        }
+    }
+
+    @Test
+    public void testDirtyTrackingRollbackRestoresWrittenVariables() throws Exception {
+        // Arrange
+        StateMachineWrapper<States, Events> wrapper =
+                new StateMachineRollbackWrapper<>(new ReentrantMachineLockProvider(), ExtendedStateBackup.DIRTY_TRACKING);
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        Map<Object, Object> variables = stateMachine.getExtendedState().getVariables();
+        variables.put("first", 1);
+        variables.put("second", 2);
+        stateMachine.sendEvent(Events.INCREMENT);
+
+        // Act
+        try {
+            wrapper.runWithRollback(stateMachine, machine -> {
+                machine.sendEvent(Events.INCREMENT);
+                machine.sendEvent(Events.START_FEATURE);
+                machine.getExtendedState().getVariables().put("first", 10);
+                machine.getExtendedState().getVariables().remove("second");
+                machine.getExtendedState().getVariables().put("third", 3);
+                throw new RuntimeException("stop!");
+            });
+        } catch (RuntimeException e) {
+            log.warn("EXC: ", e);
+        }
+
+        // Assert
+        Assertions.assertThat(stateMachine.getState().getId()).isEqualTo(States.BACKLOG);
+        Assertions.assertThat(variables).containsOnlyKeys("first", "second", "counter")
+                  .containsEntry("first", 1)
+                  .containsEntry("second", 2)
+                  .containsEntry("counter", 1);
+        Assertions.assertThat(((ObservableMap<Object, Object>) variables).getDelegate())
+                  .isNotInstanceOf(ExtendedStateJournal.class);
+    }
+
+    @Test
+    public void testDirtyTrackingRollbackAfterBulkChanges() throws Exception {
+        // Arrange
+        StateMachineWrapper<States, Events> wrapper =
+                new StateMachineRollbackWrapper<>(new ReentrantMachineLockProvider(), ExtendedStateBackup.DIRTY_TRACKING);
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        Map<Object, Object> variables = stateMachine.getExtendedState().getVariables();
+        variables.put("first", 1);
+        variables.put("second", 2);
+
+        // Act
+        try {
+            wrapper.runWithRollback(stateMachine, machine -> {
+                Map<Object, Object> vars = machine.getExtendedState().getVariables();
+                vars.entrySet().removeIf(entry -> entry.getKey().equals("first"));
+                vars.clear();
+                vars.putAll(Collections.singletonMap("third", 3));
+                throw new RuntimeException("stop!");
+            });
+        } catch (RuntimeException e) {
+            log.warn("EXC: ", e);
+        }
+
+        // Assert
+        Assertions.assertThat(variables).containsOnlyKeys("first", "second")
+                  .containsEntry("first", 1)
+                  .containsEntry("second", 2);
+    }
+
+    @Test
+    public void testDirtyTrackingCommit() throws Exception {
+        // Arrange
+        StateMachineWrapper<States, Events> wrapper =
+                new StateMachineRollbackWrapper<>(new ReentrantMachineLockProvider(), ExtendedStateBackup.DIRTY_TRACKING);
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+
+        // Act
+        wrapper.runWithRollback(stateMachine, machine -> {
+            machine.sendEvent(Events.INCREMENT);
+            machine.sendEvent(Events.START_FEATURE);
+        });
+
+        // Assert
+        Map<Object, Object> variables = stateMachine.getExtendedState().getVariables();
+        Assertions.assertThat(stateMachine.getState().getId()).isEqualTo(States.IN_PROGRESS);
+        Assertions.assertThat(variables).containsEntry("counter", 1);
+        Assertions.assertThat(((ObservableMap<Object, Object>) variables).getDelegate())
+                  .isNotInstanceOf(ExtendedStateJournal.class);
+    }
+
+    @Test
+    public void testTryEvaluateWithRollback() throws Exception {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+
+        // Act
+        States state = stateMachineWrapper.tryEvaluateWithRollback(stateMachine, machine -> {
+            machine.sendEvent(Events.START_FEATURE);
+            return machine.getState().getId();
+        }, Duration.ofSeconds(1));
+
+        // Assert
+        Assertions.assertThat(state).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testTryEvaluateFailsFastOnBusyMachine() throws Exception {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> busy = CompletableFuture.runAsync(() -> {
+            stateMachineWrapper.runWithRollback(stateMachine, machine -> {
+                locked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        });
+        locked.await();
+
+        // Act
+        GuardCheck.check(() -> stateMachineWrapper.tryEvaluateWithRollback(stateMachine,
+                                                                           machine -> machine.sendEvent(Events.START_FEATURE),
+                                                                           Duration.ofMillis(100)),
+                         StateMachineWrapperException.class,
+                         UNABLE_TO_LOCK_STATE_MACHINE_IN_TIME);
+
+        // Assert
+        release.countDown();
+        busy.get();
+        Assertions.assertThat(stateMachine.getState().getId()).isEqualTo(States.BACKLOG);
+    }
+
+    @Test
+    public void testEvaluateAllWithRollback() throws Exception {
+        // Arrange
+        StateMachine<States, Events> first = stateMachineFactory.getStateMachine();
+        StateMachine<States, Events> second = stateMachineFactory.getStateMachine();
+
+        // Act
+        try {
+            stateMachineWrapper.evaluateAllWithRollback(Arrays.asList(first, second), machines -> {
+                machines.forEach(machine -> machine.sendEvent(Events.START_FEATURE));
+                throw new RuntimeException("stop!");
+            });
+        } catch (RuntimeException e) {
+            log.warn("EXC: ", e);
+        }
+        stateMachineWrapper.evaluateAllWithRollback(Arrays.asList(first, second),
+                                                    machines -> machines.get(1).sendEvent(Events.START_FEATURE));
+
+        // Assert
+        Assertions.assertThat(first.getState().getId()).isEqualTo(States.BACKLOG);
+        Assertions.assertThat(second.getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testFailedRestoreOfOneMachineDoesNotStopRollbackOfOthers() throws Exception {
+        // Arrange
+        StateMachine<States, Events> healthy = stateMachineFactory.getStateMachine();
+        StateMachine<States, Events> broken = spy(stateMachineFactory.getStateMachine());
+        healthy.start();
+        broken.start();
+        RuntimeException error = new RuntimeException("stop!");
+
+        // Act
+        assertThatThrownBy(() -> stateMachineWrapper.evaluateAllWithRollback(Arrays.asList(healthy, broken), machines -> {
+            healthy.sendEvent(Events.START_FEATURE);
+            broken.sendEvent(Events.START_FEATURE);
+            doThrow(new IllegalStateException("unable to restore")).when(broken).getStateMachineAccessor();
+            throw error;
+        })).isSameAs(error);
+
+        // Assert
+        Assertions.assertThat(healthy.getState().getId()).isEqualTo(States.BACKLOG);
+        Assertions.assertThat(error.getSuppressed()).hasSize(1);
+        Assertions.assertThat(error.getSuppressed()[0]).hasMessage("StateMachine restore error")
+                  .hasRootCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testEvaluateAllInDifferentOrderDoesNotDeadlock() throws Exception {
+        // Arrange
+        StateMachine<States, Events> first = stateMachineFactory.getStateMachine();
+        StateMachine<States, Events> second = stateMachineFactory.getStateMachine();
+        NonAtomicInt notAtomic = new NonAtomicInt();
+
+        // Act
+        CompletableFuture<Void> future = CompletableFuture.runAsync(
+                () -> IntStream.range(0, ROLLBACK_ITERATION_NUMBER)
+                               .parallel()
+                               .forEach(i -> {
+                                   List<StateMachine<States, Events>> machines = i % 2 == 0
+                                                                                 ? Arrays.asList(first, second)
+                                                                                 : Arrays.asList(second, first);
+                                   stateMachineWrapper.evaluateAllWithRollback(machines, m -> {
+                                       notAtomic.increment();
+                                       return null;
+                                   });
+                               }));
+
+        // Assert
+        future.get(30, TimeUnit.SECONDS);
+        Assertions.assertThat(notAtomic.getValue()).isEqualTo(ROLLBACK_ITERATION_NUMBER);
+    }
+
+    @Test
+    public void testDefaultEvaluateAllWithRollback() throws Exception {
+        // Arrange
+        List<String> lockedIds = new ArrayList<>();
+        StateMachineWrapper<States, Events> wrapper = new StateMachineWrapper<States, Events>() {
+            @Override
+            public void runWithRollback(StateMachine<States, Events> stateMachine,
+                                        Consumer<StateMachine<States, Events>> processingFunc) {
+                stateMachineWrapper.runWithRollback(stateMachine, processingFunc);
+            }
+
+            @Override
+            public <ResultT> ResultT evaluateWithRollback(StateMachine<States, Events> machine,
+                                                          Function<StateMachine<States, Events>, ResultT> processingFunc) {
+                lockedIds.add(machine.getId());
+                return stateMachineWrapper.evaluateWithRollback(machine, processingFunc);
+            }
+        };
+        StateMachine<States, Events> first = stateMachineFactory.getStateMachine("first");
+        StateMachine<States, Events> second = stateMachineFactory.getStateMachine("second");
+
+        // Act
+        try {
+            wrapper.evaluateAllWithRollback(Arrays.asList(second, first), machines -> {
+                machines.forEach(machine -> machine.sendEvent(Events.START_FEATURE));
+                throw new RuntimeException("stop!");
+            });
+        } catch (RuntimeException e) {
+            log.warn("EXC: ", e);
+        }
+        int size = wrapper.evaluateAllWithRollback(Arrays.asList(second, first, second), machines -> {
+            machines.get(0).sendEvent(Events.START_FEATURE);
+            return machines.size();
+        });
+
+        // Assert
+        Assertions.assertThat(lockedIds).containsExactly("first", "second", "first", "second");
+        Assertions.assertThat(size).isEqualTo(3);
+        Assertions.assertThat(first.getState().getId()).isEqualTo(States.BACKLOG);
+        Assertions.assertThat(second.getState().getId()).isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testXSyncLockProvider() throws Exception {
+        // Arrange
+        StateMachineWrapper<States, Events> wrapper =
+                new StateMachineRollbackWrapper<>(new XSyncMachineLockProvider(new XSync<>()));
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        NonAtomicInt notAtomic = new NonAtomicInt();
+
+        // Act
+        IntStream.range(0, ROLLBACK_ITERATION_NUMBER)
+                 .parallel()
+                 .forEach(i -> wrapper.runWithRollback(stateMachine, machine -> notAtomic.increment()));
+
+        // Assert
+        Assertions.assertThat(notAtomic.getValue()).isEqualTo(ROLLBACK_ITERATION_NUMBER);
+        GuardCheck.check(() -> wrapper.tryEvaluateWithRollback(stateMachine, machine -> 1, Duration.ofSeconds(1)),
+                         StateMachineWrapperException.class,
+                         LOCK_PROVIDER_DOES_NOT_SUPPORT_TIMEOUT);
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void testXSyncConstructor() throws Exception {
+        // Arrange
+        StateMachineWrapper<States, Events> wrapper = new StateMachineRollbackWrapper<>(new XSync<String>());
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+
+        // Act
+        GuardCheck.check(() -> wrapper.runWithRollback(stateMachine, machine -> {
+                             machine.sendEvent(Events.START_FEATURE);
+                             throw new WrongArgumentException(STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+                         }),
+                         WrongArgumentException.class,
+                         STATE_MACHINE_IS_MANDATORY_ARGUMENT);
+
+        // Assert
+        Assertions.assertThat(stateMachine.getState().getId()).isEqualTo(States.BACKLOG);
+        Boolean accepted = wrapper.evaluateWithRollback(stateMachine, machine -> machine.sendEvent(Events.START_FEATURE));
+        Assertions.assertThat(accepted).isTrue();
+    }
+
+    @Test
+    public void testWrongArgsTimeout() {
+        // Act & asserts
+        GuardCheck.check(() -> stateMachineWrapper.tryEvaluateWithRollback(stateMachineFactory.getStateMachine(),
+                                                                           machine -> 1,
+                                                                           null),
+                         WrongArgumentException.class,
+                         TIMEOUT_IS_MANDATORY_ARGUMENT);
+    }
+
+    @Test
+    public void testSnapshotToContext() throws Exception {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        stateMachine.sendEvent(Events.START_FEATURE);
+        stateMachine.sendEvent(Events.DEPLOY);
+
+        // Act
+        StateMachineContext<States, Events> context = StateMachineSnapshot.of(stateMachine).toContext();
+
+        // Assert
+        Assertions.assertThat(context)
+                  .isEqualToComparingFieldByFieldRecursively(StateMachineContextEvaluator.getContext(stateMachine));
+    }
+
     @Test
     public void testWrongArgsStateMachine() {
         // Act & asserts
@@ -7,7 +7,8 @@ import com.antkorwin.statemachineutils.config.Events;
 import com.antkorwin.statemachineutils.config.StateMachineConfig;
 import com.antkorwin.statemachineutils.config.States;
 import com.antkorwin.statemachineutils.wrapper.EnableStateMachineWrapper;
-import com.antkorwin.statemachineutils.wrapper.StateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.TransactionalStateMachineWrapper;
+import com.antkorwin.statemachineutils.wrapper.TxOptions;
 import lombok.extern.slf4j.Slf4j;
 import org.assertj.core.api.Assertions;
 import org.junit.Before;
@@ -21,9 +22,16 @@ import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.statemachine.StateMachine;
 import org.springframework.statemachine.config.StateMachineFactory;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.sql.Connection;
 
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.PROCESSING_FUNCTION_IS_MANDATORY_ARGUMENT;
 import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.STATE_MACHINE_IS_MANDATORY_ARGUMENT;
+import static com.antkorwin.statemachineutils.wrapper.StateMachineWrapperErrorInfo.TX_OPTIONS_IS_MANDATORY_ARGUMENT;
 import static org.mockito.Mockito.mock;
 
 /**
@@ -40,7 +48,7 @@ public class StateMachineTransactionalWrapperTest {
 
     @Autowired
     @Qualifier("stateMachineTransactionalWrapper")
-    private StateMachineWrapper<States, Events> stateMachineTransactionalWrapper;
+    private TransactionalStateMachineWrapper<States, Events> stateMachineTransactionalWrapper;
 
     @Autowired
     private StateMachineFactory<States, Events> stateMachineFactory;
@@ -121,6 +129,77 @@ public class StateMachineTransactionalWrapperTest {
         Assertions.assertThat(testService.size()).isEqualTo(1);
     }
 
+    @Test
+    public void testReadOnlyTransaction() {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+
+        // Act
+        Boolean readOnly = stateMachineTransactionalWrapper.evaluateWithRollback(stateMachine, machine -> {
+            machine.sendEvent(Events.START_FEATURE);
+            testService.size();
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }, TxOptions.READ_ONLY);
+
+        // Assert
+        Assertions.assertThat(readOnly).isTrue();
+        Assertions.assertThat(stateMachine.getState().getId())
+                  .isEqualTo(States.IN_PROGRESS);
+    }
+
+    @Test
+    public void testTransactionIsolation() {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        TxOptions serializable = TxOptions.builder()
+                                          .isolation(Isolation.SERIALIZABLE)
+                                          .timeout(10)
+                                          .build();
+
+        // Act
+        Integer isolation = stateMachineTransactionalWrapper.evaluateWithRollback(stateMachine, machine -> {
+            testService.ok();
+            return TransactionSynchronizationManager.getCurrentTransactionIsolationLevel();
+        }, serializable);
+
+        // Assert
+        Assertions.assertThat(isolation).isEqualTo(Connection.TRANSACTION_SERIALIZABLE);
+        Assertions.assertThat(testService.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTransactionPropagation() {
+        // Arrange
+        StateMachine<States, Events> stateMachine = stateMachineFactory.getStateMachine();
+        TxOptions mandatory = TxOptions.builder()
+                                       .propagation(Propagation.MANDATORY)
+                                       .build();
+        Exception actualException = null;
+
+        // Act
+        try {
+            stateMachineTransactionalWrapper.evaluateWithRollback(stateMachine, machine -> {
+                machine.sendEvent(Events.START_FEATURE);
+                return machine;
+            }, mandatory);
+        } catch (Exception e) {
+            actualException = e;
+        }
+
+        // Assert
+        Assertions.assertThat(actualException).isInstanceOf(IllegalTransactionStateException.class);
+        Assertions.assertThat(stateMachine.getState().getId())
+                  .isEqualTo(States.BACKLOG);
+    }
+
+    @Test
+    public void testEvaluateWithWrongTxOptions() {
+        StateMachine<States, Events> machine = mock(StateMachine.class);
+        // Act & asserts
+        GuardCheck.check(() -> stateMachineTransactionalWrapper.evaluateWithRollback(machine, m -> 123, null),
+                         WrongArgumentException.class,
+                         TX_OPTIONS_IS_MANDATORY_ARGUMENT);
+    }
 
     @Test
     public void testWrongArgsStateMachine() {